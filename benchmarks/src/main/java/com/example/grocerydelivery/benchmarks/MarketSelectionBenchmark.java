@@ -0,0 +1,106 @@
+package com.example.grocerydelivery.benchmarks;
+
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import com.example.grocerydelivery.selection.CheapestPerItemSelector;
+import com.example.grocerydelivery.selection.FewestMarketsSelector;
+import com.example.grocerydelivery.selection.GreedyMarketSelector;
+import com.example.grocerydelivery.selection.LazyGreedyMarketSelector;
+import com.example.grocerydelivery.selection.MarketAssignment;
+import com.example.grocerydelivery.selection.OptimalMarketSelector;
+import com.example.grocerydelivery.selection.QuoteSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the market selection algorithm of the delivery services on synthetic
+ * proposal sets. Run with {@code -prof gc} to get the allocation rate per selection
+ * ({@code gc.alloc.rate.norm}).
+ *
+ * The set-up fails if the lazy-greedy selector does not produce exactly the same
+ * assignment as the full-rescan greedy selector on the generated data.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MarketSelectionBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int markets;
+
+    @Param({"1", "10", "100", "500"})
+    public int items;
+
+    @Param({"1.0"})
+    public double zipfExponent;
+
+    private SyntheticQuotes quotes;
+    private ItemDictionary dictionary;
+    private QuoteSnapshot snapshot;
+    private GreedyMarketSelector greedy;
+    private LazyGreedyMarketSelector lazyGreedy;
+    private OptimalMarketSelector optimal;
+    private CheapestPerItemSelector cheapestPerItem;
+    private FewestMarketsSelector fewestMarkets;
+
+    @Setup
+    public void setUp() {
+        quotes = SyntheticQuotes.generate(markets, items, zipfExponent, 42L);
+        dictionary = new ItemDictionary();
+        snapshot = quotes.toSnapshot(dictionary);
+        greedy = new GreedyMarketSelector();
+        lazyGreedy = new LazyGreedyMarketSelector();
+        optimal = new OptimalMarketSelector(50, 5.0);
+        cheapestPerItem = new CheapestPerItemSelector();
+        fewestMarkets = new FewestMarketsSelector(50);
+
+        MarketAssignment expected = greedy.select(snapshot);
+        MarketAssignment actual = lazyGreedy.select(snapshot);
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("Lazy greedy differs from greedy: " + actual + " vs " + expected);
+        }
+    }
+
+    @Benchmark
+    public MarketAssignment greedy() {
+        return greedy.select(snapshot);
+    }
+
+    @Benchmark
+    public MarketAssignment lazyGreedy() {
+        return lazyGreedy.select(snapshot);
+    }
+
+    @Benchmark
+    public MarketAssignment optimal() {
+        return optimal.select(snapshot);
+    }
+
+    @Benchmark
+    public MarketAssignment cheapestPerItem() {
+        return cheapestPerItem.select(snapshot);
+    }
+
+    @Benchmark
+    public MarketAssignment fewestMarkets() {
+        return fewestMarkets.select(snapshot);
+    }
+
+    @Benchmark
+    public MarketAssignment parseAndGreedy() {
+        return greedy.select(quotes.toSnapshot(dictionary));
+    }
+}
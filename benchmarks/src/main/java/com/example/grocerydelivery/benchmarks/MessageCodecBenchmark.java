@@ -0,0 +1,177 @@
+package com.example.grocerydelivery.benchmarks;
+
+import com.example.grocerydelivery.codec.ClientProposal;
+import com.example.grocerydelivery.codec.Quote;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary message content codec with the pipe/colon string formats it
+ * replaced, for a market quote and a client proposal. The string variants are the old
+ * formats reproduced here: {@code count|total|item:price,...} for a quote and
+ * {@code STATUS|total|item:price,...|unavailable,...} for a proposal, written with a
+ * StringBuilder and read with split and parseDouble. Both sides produce the bytes that
+ * go into the ACL message, so the string variants include the UTF-8 conversion.
+ *
+ * Run with {@code -prof gc} to get the allocation per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageCodecBenchmark {
+
+    @Param({"3", "50", "500"})
+    public int items;
+
+    private Quote quote;
+    private ClientProposal proposal;
+    private byte[] quoteBinary;
+    private byte[] quoteString;
+    private byte[] proposalBinary;
+    private byte[] proposalString;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42L);
+        Map<String, Double> prices = new LinkedHashMap<>();
+        List<String> unavailable = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            String item = "item-" + i;
+            // Cents as they appear in the configurations, plus the sums they add up to
+            prices.put(item, random.nextInt(10000) / 100.0);
+            if (i % 10 == 9) {
+                unavailable.add("missing-" + i);
+            }
+        }
+        quote = new Quote(prices);
+        proposal = new ClientProposal(unavailable.isEmpty(), quote.getTotal() + 10.0, prices, unavailable);
+
+        quoteBinary = quote.encode();
+        quoteString = encodeQuoteString();
+        proposalBinary = proposal.encode();
+        proposalString = encodeProposalString();
+
+        if (!Quote.decode(quoteBinary).getPrices().equals(prices)
+                || !decodeQuoteString().equals(prices)
+                || ClientProposal.decode(proposalBinary).getTotalPrice() != proposal.getTotalPrice()) {
+            throw new IllegalStateException("Codecs do not round-trip the prices");
+        }
+    }
+
+    @Benchmark
+    public byte[] quoteEncodeBinary() {
+        return quote.encode();
+    }
+
+    @Benchmark
+    public byte[] quoteEncodeString() {
+        return encodeQuoteString();
+    }
+
+    @Benchmark
+    public Quote quoteDecodeBinary() {
+        return Quote.decode(quoteBinary);
+    }
+
+    @Benchmark
+    public Map<String, Double> quoteDecodeString() {
+        return decodeQuoteString();
+    }
+
+    @Benchmark
+    public byte[] proposalEncodeBinary() {
+        return proposal.encode();
+    }
+
+    @Benchmark
+    public byte[] proposalEncodeString() {
+        return encodeProposalString();
+    }
+
+    @Benchmark
+    public ClientProposal proposalDecodeBinary() {
+        return ClientProposal.decode(proposalBinary);
+    }
+
+    @Benchmark
+    public Object[] proposalDecodeString() {
+        return decodeProposalString();
+    }
+
+    private byte[] encodeQuoteString() {
+        StringBuilder content = new StringBuilder();
+        content.append(quote.getCount()).append("|").append(quote.getTotal()).append("|");
+        boolean first = true;
+        for (Map.Entry<String, Double> entry : quote.getPrices().entrySet()) {
+            if (!first) {
+                content.append(",");
+            }
+            content.append(entry.getKey()).append(":").append(entry.getValue());
+            first = false;
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Map<String, Double> decodeQuoteString() {
+        String[] parts = new String(quoteString, StandardCharsets.UTF_8).split("\\|", 3);
+        Map<String, Double> prices = new LinkedHashMap<>();
+        for (String itemPrice : parts[2].split(",")) {
+            String[] itemParts = itemPrice.split(":");
+            if (itemParts.length == 2) {
+                prices.put(itemParts[0], Double.parseDouble(itemParts[1]));
+            }
+        }
+        return prices;
+    }
+
+    private byte[] encodeProposalString() {
+        StringBuilder content = new StringBuilder();
+        content.append(proposal.isSuccess() ? "SUCCESS" : "FAILURE");
+        content.append("|").append(proposal.getTotalPrice()).append("|");
+        boolean first = true;
+        for (Map.Entry<String, Double> entry : proposal.getItemPrices().entrySet()) {
+            if (!first) {
+                content.append(",");
+            }
+            content.append(entry.getKey()).append(":").append(entry.getValue());
+            first = false;
+        }
+        content.append("|").append(String.join(",", proposal.getUnavailableItems()));
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Object[] decodeProposalString() {
+        String[] parts = new String(proposalString, StandardCharsets.UTF_8).split("\\|", 4);
+        double totalPrice = Double.parseDouble(parts[1]);
+        Map<String, Double> prices = new LinkedHashMap<>();
+        for (String itemPrice : parts[2].split(",")) {
+            String[] itemParts = itemPrice.split(":");
+            if (itemParts.length == 2) {
+                prices.put(itemParts[0], Double.parseDouble(itemParts[1]));
+            }
+        }
+        List<String> unavailable = parts[3].isEmpty() ? new ArrayList<>() : Arrays.asList(parts[3].split(","));
+        return new Object[] {parts[0], totalPrice, prices, unavailable};
+    }
+}
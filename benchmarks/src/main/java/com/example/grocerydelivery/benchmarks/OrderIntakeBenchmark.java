@@ -0,0 +1,209 @@
+package com.example.grocerydelivery.benchmarks;
+
+import com.example.grocerydelivery.agents.DeliveryAgent;
+import com.example.grocerydelivery.agents.MarketAgent;
+import com.example.grocerydelivery.codec.ClientProposal;
+import jade.core.Agent;
+import jade.core.AID;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.ServiceException;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.event.MessageEvent;
+import jade.core.event.MessageListener;
+import jade.core.event.NotificationHelper;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.AgentContainer;
+import jade.wrapper.AgentController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures one order from the client REQUEST to the delivery PROPOSE on an in-process
+ * JADE platform with one delivery agent and {@code markets} markets, and counts the ACL
+ * messages the platform delivers per order (including the market negotiation and the
+ * client's closing REJECT). The message count is printed when the trial ends.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderIntakeBenchmark {
+
+    private static final String[] ITEMS = {"milk", "coffee", "rice", "bread"};
+
+    @Param({"2"})
+    public int markets;
+
+    private AgentContainer container;
+    private BenchClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Runtime runtime = Runtime.instance();
+        runtime.setCloseVM(false);
+        Profile profile = new ProfileImpl(true);
+        profile.setParameter(Profile.GUI, "false");
+        container = runtime.createMainContainer(profile);
+
+        String[] marketNames = new String[markets];
+        for (int m = 0; m < markets; m++) {
+            marketNames[m] = "BenchMarket" + m;
+            Object[][] prices = new Object[ITEMS.length][2];
+            for (int i = 0; i < ITEMS.length; i++) {
+                prices[i][0] = ITEMS[i];
+                prices[i][1] = 1.0 + m + i;
+            }
+            Map<String, Object> params = new HashMap<>();
+            params.put("name", marketNames[m]);
+            params.put("inventory", ITEMS.clone());
+            params.put("prices", prices);
+            container.createNewAgent(marketNames[m], MarketAgent.class.getName(), new Object[]{params}).start();
+        }
+
+        Map<String, Object> deliveryParams = new HashMap<>();
+        deliveryParams.put("name", "BenchDelivery");
+        deliveryParams.put("fee", 10.0);
+        deliveryParams.put("connectedMarkets", marketNames);
+        container.createNewAgent("BenchDelivery", DeliveryAgent.class.getName(),
+                new Object[]{deliveryParams}).start();
+
+        client = new BenchClient(new AID("BenchDelivery", AID.ISLOCALNAME));
+        AgentController controller = container.acceptNewAgent("BenchClient", client);
+        controller.start();
+
+        // Let registrations and subscriptions settle before counting
+        order();
+        Thread.sleep(500);
+        client.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.out.printf("%nmessages per order: %.2f (%d messages, %d orders)%n",
+                client.messagesPerOrder(), client.messages.get(), client.orders.get());
+        container.kill();
+    }
+
+    @Benchmark
+    public String order() throws Exception {
+        CompletableFuture<String> proposal = new CompletableFuture<>();
+        client.putO2AObject(proposal, false);
+        return proposal.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Client that sends one order per object it is handed, completes the object with
+     * the delivery's proposal, rejects the proposal and counts all delivered messages.
+     */
+    public static class BenchClient extends Agent {
+
+        private final AID delivery;
+        private final Map<String, CompletableFuture<String>> pending = new HashMap<>();
+        final AtomicLong messages = new AtomicLong();
+        final AtomicLong orders = new AtomicLong();
+
+        BenchClient(AID delivery) {
+            this.delivery = delivery;
+            // Enabled before start so orders handed over during setup are not dropped
+            setEnabledO2ACommunication(true, 0);
+        }
+
+        @Override
+        protected void setup() {
+            try {
+                NotificationHelper notifications = (NotificationHelper) getHelper(NotificationHelper.SERVICE_NAME);
+                notifications.registerMessageListener(new MessageCounter());
+            } catch (ServiceException e) {
+                throw new IllegalStateException("Notification service not available", e);
+            }
+
+            addBehaviour(new CyclicBehaviour(this) {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void action() {
+                    Object next = getO2AObject();
+                    if (next != null) {
+                        String conversationId = "bench-" + UUID.randomUUID();
+                        pending.put(conversationId, (CompletableFuture<String>) next);
+                        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+                        request.addReceiver(delivery);
+                        request.setConversationId(conversationId);
+                        request.setContent(String.join(",", ITEMS));
+                        send(request);
+                        return;
+                    }
+
+                    ACLMessage msg = receive();
+                    if (msg == null) {
+                        block();
+                        return;
+                    }
+                    if (msg.getPerformative() == ACLMessage.PROPOSE) {
+                        CompletableFuture<String> proposal = pending.remove(msg.getConversationId());
+                        if (proposal != null) {
+                            ACLMessage reject = msg.createReply();
+                            reject.setPerformative(ACLMessage.REJECT_PROPOSAL);
+                            send(reject);
+                            orders.incrementAndGet();
+                            proposal.complete(ClientProposal.from(msg).toString());
+                        }
+                    }
+                }
+            });
+        }
+
+        void reset() {
+            messages.set(0);
+            orders.set(0);
+        }
+
+        double messagesPerOrder() {
+            long completed = orders.get();
+            return completed == 0 ? 0.0 : (double) messages.get() / completed;
+        }
+
+        /**
+         * Counts every message posted to a local agent's queue.
+         */
+        private final class MessageCounter implements MessageListener {
+            @Override
+            public void sentMessage(MessageEvent event) {
+            }
+
+            @Override
+            public void postedMessage(MessageEvent event) {
+                messages.incrementAndGet();
+            }
+
+            @Override
+            public void receivedMessage(MessageEvent event) {
+            }
+
+            @Override
+            public void routedMessage(MessageEvent event) {
+            }
+        }
+    }
+}
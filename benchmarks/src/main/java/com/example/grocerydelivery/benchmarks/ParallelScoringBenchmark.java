@@ -0,0 +1,90 @@
+package com.example.grocerydelivery.benchmarks;
+
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import com.example.grocerydelivery.selection.GreedyMarketSelector;
+import com.example.grocerydelivery.selection.LazyGreedyMarketSelector;
+import com.example.grocerydelivery.selection.MarketAssignment;
+import com.example.grocerydelivery.selection.ParallelGreedyMarketSelector;
+import com.example.grocerydelivery.selection.QuoteSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sequential and fork/join market scoring to find the market count where
+ * the parallel path starts to pay off. {@code parallelism} defaults to the number of
+ * cores of the machine; the crossover should be measured on the target hardware.
+ *
+ * The set-up fails if the parallel selector does not produce exactly the same
+ * assignment as the sequential greedy selectors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelScoringBenchmark {
+
+    @Param({"512", "2048", "8192", "32768", "131072"})
+    public int markets;
+
+    @Param({"10", "100"})
+    public int items;
+
+    @Param({"0"})
+    public int parallelism;
+
+    private QuoteSnapshot snapshot;
+    private ForkJoinPool pool;
+    private GreedyMarketSelector greedy;
+    private LazyGreedyMarketSelector lazyGreedy;
+    private ParallelGreedyMarketSelector parallel;
+
+    @Setup
+    public void setUp() {
+        snapshot = SyntheticQuotes.generate(markets, items, 1.0, 42L).toSnapshot(new ItemDictionary());
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        greedy = new GreedyMarketSelector();
+        lazyGreedy = new LazyGreedyMarketSelector();
+        // Threshold 0 forces the parallel path for every market count
+        parallel = new ParallelGreedyMarketSelector(0, pool);
+
+        MarketAssignment expected = greedy.select(snapshot);
+        if (!expected.equals(parallel.select(snapshot)) || !expected.equals(lazyGreedy.select(snapshot))) {
+            throw new IllegalStateException("Parallel scoring differs from sequential greedy");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public MarketAssignment sequentialGreedy() {
+        return greedy.select(snapshot);
+    }
+
+    @Benchmark
+    public MarketAssignment sequentialLazyGreedy() {
+        return lazyGreedy.select(snapshot);
+    }
+
+    @Benchmark
+    public MarketAssignment parallelGreedy() {
+        return parallel.select(snapshot);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.grocerydelivery.benchmarks;
+
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import com.example.grocerydelivery.catalog.PriceTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the price lookups of a market: the boxed {@code HashMap<String, Double>} it
+ * used to keep and the {@link PriceTable}, by name and by dictionary id. Each operation
+ * looks up the items of one CFP, half of which the market does not carry. Run with
+ * {@code -prof gc} to see that the table lookups do not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PriceTableBenchmark {
+
+    @Param({"1000", "100000"})
+    public int skus;
+
+    @Param({"50"})
+    public int cfpItems;
+
+    private Map<String, Double> hashMap;
+    private PriceTable table;
+    private String[] cfp;
+    private int[] cfpIds;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42L);
+        ItemDictionary dictionary = new ItemDictionary();
+        hashMap = new HashMap<>();
+        for (int i = 0; i < skus; i++) {
+            hashMap.put("sku-" + i, random.nextInt(10000) / 100.0);
+        }
+        table = PriceTable.of(dictionary, hashMap);
+
+        cfp = new String[cfpItems];
+        cfpIds = new int[cfpItems];
+        for (int i = 0; i < cfpItems; i++) {
+            // Fresh strings as decoded from a message, every other one not carried
+            cfp[i] = new String((i % 2 == 0 ? "sku-" : "other-") + random.nextInt(skus));
+            cfpIds[i] = dictionary.lookup(cfp[i]);
+        }
+    }
+
+    @Benchmark
+    public double hashMap() {
+        double total = 0.0;
+        for (String item : cfp) {
+            Double price = hashMap.get(item);
+            if (price != null) {
+                total += price;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double priceTableByName() {
+        double total = 0.0;
+        for (String item : cfp) {
+            double price = table.price(item);
+            if (!Double.isNaN(price)) {
+                total += price;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double priceTableById() {
+        double total = 0.0;
+        for (int id : cfpIds) {
+            double price = table.price(id);
+            if (!Double.isNaN(price)) {
+                total += price;
+            }
+        }
+        return total;
+    }
+}
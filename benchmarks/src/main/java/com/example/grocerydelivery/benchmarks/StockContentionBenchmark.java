@@ -0,0 +1,101 @@
+package com.example.grocerydelivery.benchmarks;
+
+import com.example.grocerydelivery.catalog.StockLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many delivery services accepting baskets of the same popular items at one market:
+ * every thread reserves a basket of {@code basketSize} items drawn from the
+ * {@code hotItems} most popular ones and puts it back, so stock never runs out.
+ * Compares the lock-free {@link StockLedger} with a HashMap guarded by one lock.
+ *
+ * The thread count defaults to 8; pass {@code -t} to match the number of delivery
+ * agents and cores of the target machine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class StockContentionBenchmark {
+
+    @Param({"1", "16", "1024"})
+    public int hotItems;
+
+    @Param({"3"})
+    public int basketSize;
+
+    private String[] items;
+    private StockLedger ledger;
+    private Map<String, Long> lockedStock;
+
+    @Setup
+    public void setUp() {
+        items = new String[hotItems];
+        Map<String, Long> stock = new HashMap<>();
+        for (int i = 0; i < hotItems; i++) {
+            items[i] = "sku-" + i;
+            stock.put(items[i], Long.MAX_VALUE / 2);
+        }
+        ledger = new StockLedger(stock);
+        lockedStock = new HashMap<>(stock);
+    }
+
+    @Benchmark
+    public boolean stockLedger() {
+        List<String> basket = basket();
+        boolean reserved = ledger.reserve(basket);
+        ledger.release(basket);
+        return reserved;
+    }
+
+    @Benchmark
+    public boolean lockedMap() {
+        List<String> basket = basket();
+        synchronized (lockedStock) {
+            for (String item : basket) {
+                if (lockedStock.get(item) <= 0) {
+                    return false;
+                }
+            }
+            for (String item : basket) {
+                lockedStock.merge(item, -1L, Long::sum);
+            }
+        }
+        synchronized (lockedStock) {
+            for (String item : basket) {
+                lockedStock.merge(item, 1L, Long::sum);
+            }
+        }
+        return true;
+    }
+
+    private List<String> basket() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] basket = new String[basketSize];
+        for (int i = 0; i < basketSize; i++) {
+            basket[i] = items[random.nextInt(hotItems)];
+        }
+        return Arrays.asList(basket);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.grocerydelivery.benchmarks;
+
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import com.example.grocerydelivery.selection.QuoteSnapshot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic market proposals for a basket.
+ *
+ * Item availability is Zipf-distributed: the item of rank {@code k} (starting at 1)
+ * is carried by a market with probability {@code 1 / k^exponent}, so a few staples
+ * are offered everywhere while the long tail is only found in a handful of markets.
+ * Prices are uniform between 1.00 and 50.00. A fixed seed keeps runs comparable.
+ */
+public final class SyntheticQuotes {
+
+    private final String[] basket;
+    private final Map<String, Map<String, Double>> marketItemPrices;
+
+    private SyntheticQuotes(String[] basket, Map<String, Map<String, Double>> marketItemPrices) {
+        this.basket = basket;
+        this.marketItemPrices = marketItemPrices;
+    }
+
+    /**
+     * Generates proposals from {@code markets} markets for a basket of {@code items} items.
+     */
+    public static SyntheticQuotes generate(int markets, int items, double exponent, long seed) {
+        Random random = new Random(seed);
+
+        String[] basket = new String[items];
+        double[] availability = new double[items];
+        for (int k = 0; k < items; k++) {
+            basket[k] = "item-" + k;
+            availability[k] = 1.0 / Math.pow(k + 1, exponent);
+        }
+
+        Map<String, Map<String, Double>> marketItemPrices = new LinkedHashMap<>();
+        for (int m = 0; m < markets; m++) {
+            Map<String, Double> itemPrices = new LinkedHashMap<>();
+            for (int k = 0; k < items; k++) {
+                if (random.nextDouble() < availability[k]) {
+                    itemPrices.put(basket[k], (100 + random.nextInt(4901)) / 100.0);
+                }
+            }
+            // Markets with none of the items refuse the CFP and never reach selection
+            if (!itemPrices.isEmpty()) {
+                marketItemPrices.put("market-" + m + "@bench", itemPrices);
+            }
+        }
+
+        return new SyntheticQuotes(basket, marketItemPrices);
+    }
+
+    public String[] getBasket() {
+        return basket;
+    }
+
+    public Map<String, Map<String, Double>> getMarketItemPrices() {
+        return marketItemPrices;
+    }
+
+    /**
+     * Parses the proposals into a snapshot, the way a delivery agent does.
+     */
+    public QuoteSnapshot toSnapshot(ItemDictionary dictionary) {
+        QuoteSnapshot.Builder builder = QuoteSnapshot.builder(dictionary, basket);
+        for (Map.Entry<String, Map<String, Double>> market : marketItemPrices.entrySet()) {
+            builder.beginMarket(market.getKey());
+            for (Map.Entry<String, Double> offer : market.getValue().entrySet()) {
+                builder.offer(offer.getKey(), offer.getValue());
+            }
+        }
+        return builder.build();
+    }
+}
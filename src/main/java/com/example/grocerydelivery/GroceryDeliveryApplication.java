@@ -1,6 +1,7 @@
 package com.example.grocerydelivery;
 
 import com.example.grocerydelivery.config.ConfigLoader;
+import com.example.grocerydelivery.utils.StartupTimeline;
 import jade.core.Profile;
 import jade.core.ProfileImpl;
 import jade.core.Runtime;
@@ -16,6 +17,9 @@ import java.util.Map;
  * This class starts the JADE platform and creates the necessary agents.
  */
 public class GroceryDeliveryApplication {
+    
+    /** Maximum time to wait for all agents of a startup phase to register. */
+    private static final long STARTUP_PHASE_TIMEOUT_MS = 30000;
 
     public static void main(String[] args) {
         try {
@@ -30,6 +34,8 @@ public class GroceryDeliveryApplication {
             AgentContainer mainContainer = rt.createMainContainer(profile);
             
             System.out.println("JADE platform started successfully!");
+            StartupTimeline timeline = StartupTimeline.shared();
+            timeline.platformStarted();
             
             // Load configuration from config.json
             String configPath = "config.json";
@@ -47,6 +53,7 @@ public class GroceryDeliveryApplication {
             
             // Create market agents
             List<Map<String, Object>> markets = config.getMarkets();
+            timeline.expect(StartupTimeline.MARKETS, markets.size());
             for (Map<String, Object> marketParams : markets) {
                 String marketName = (String) marketParams.get("name");
                 
@@ -59,8 +66,12 @@ public class GroceryDeliveryApplication {
                 marketAgent.start();
             }
             
+            // Delivery services can only quote once their markets are registered
+            timeline.await(StartupTimeline.MARKETS, STARTUP_PHASE_TIMEOUT_MS);
+            
             // Create delivery agents
             List<Map<String, Object>> deliveryServices = config.getDeliveryServices();
+            timeline.expect(StartupTimeline.DELIVERIES, deliveryServices.size());
             for (Map<String, Object> deliveryParams : deliveryServices) {
                 String deliveryName = (String) deliveryParams.get("name");
                 
@@ -73,10 +84,14 @@ public class GroceryDeliveryApplication {
                 deliveryAgent.start();
             }
             
+            // Clients start ordering as soon as all delivery services are registered
+            timeline.await(StartupTimeline.DELIVERIES, STARTUP_PHASE_TIMEOUT_MS);
+            
             // Create client agents
             List<Map<String, Object>> clients = config.getClients();
             for (Map<String, Object> clientParams : clients) {
                 String clientName = (String) clientParams.get("name");
+                clientParams.put("expectedDeliveryServices", deliveryServices.size());
                 
                 Object[] clientArgs = new Object[]{clientParams};
                 
@@ -2,19 +2,16 @@ package com.example.grocerydelivery.agents;
 
 import com.example.grocerydelivery.behaviours.ClientOrderBehaviour;
 import com.example.grocerydelivery.behaviours.ClientWaitBehaviour;
+import com.example.grocerydelivery.directory.DirectoryCache;
+import com.example.grocerydelivery.utils.ClientDecisionMetrics;
 import com.example.grocerydelivery.utils.LoggerUtil;
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.OneShotBehaviour;
-import jade.domain.DFService;
-import jade.domain.FIPAAgentManagement.DFAgentDescription;
-import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
 import org.apache.logging.log4j.Logger;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -22,8 +19,15 @@ import java.util.Map;
  * and have them delivered to their home.
  */
 public class ClientAgent extends Agent {
+    
+    /** Maximum time to wait for the delivery services to register. */
+    private static final long READINESS_TIMEOUT_MS = 10000;
+    
     private String clientName;
     private String[] shoppingList;
+    private final DirectoryCache deliveryDirectory = new DirectoryCache("grocery-delivery");
+    private ClientOrderBehaviour.DecisionPolicy decisionPolicy;
+    private final ClientDecisionMetrics decisionMetrics = new ClientDecisionMetrics();
     private Logger logger;
 
     @Override
@@ -43,16 +47,26 @@ public class ClientAgent extends Agent {
             
             logger.info("{} started with shopping list: {}", clientName, Arrays.toString(shoppingList));
             
-            // Add delay to ensure other agents are registered
+            // Deadlines of the order phases and the optional good-enough rule
+            decisionPolicy = new ClientOrderBehaviour.DecisionPolicy(
+                ((Number) params.getOrDefault("proposalTimeoutMs", 
+                    ClientOrderBehaviour.DecisionPolicy.DEFAULT_PROPOSAL_TIMEOUT_MS)).longValue(),
+                ((Number) params.getOrDefault("confirmationTimeoutMs", 
+                    ClientOrderBehaviour.DecisionPolicy.DEFAULT_CONFIRMATION_TIMEOUT_MS)).longValue(),
+                ((Number) params.getOrDefault("goodEnoughAfter", 0)).intValue(),
+                ((Number) params.getOrDefault("goodEnoughPercent", 0.0)).doubleValue());
+            
+            // Wait until the delivery services are registered in the DF
+            int expectedDeliveryServices = ((Number) params.getOrDefault("expectedDeliveryServices", 0)).intValue();
             addBehaviour(new ClientWaitBehaviour(this, clientName, 
-                // After waiting, directly start the order process
+                // Once they are, directly start the order process
                 new OneShotBehaviour() {
                     @Override
                     public void action() {
                         // Start the order process by finding delivery services and sending orders
                         findAndStartOrder();
                     }
-                }));
+                }, deliveryDirectory, expectedDeliveryServices, READINESS_TIMEOUT_MS));
             
         } else {
             logger = LoggerUtil.getLogger("Unknown", "Agent");
@@ -68,26 +82,15 @@ public class ClientAgent extends Agent {
         try {
             logger.info("{}: Finding delivery services for order...", clientName);
             
-            // Search for delivery services
-            DFAgentDescription template = new DFAgentDescription();
-            ServiceDescription sd = new ServiceDescription();
-            sd.setType("grocery-delivery");
-            template.addServices(sd);
+            // Look up delivery services in the subscription-fed cache
+            AID[] deliveryArray = deliveryDirectory.lookup(this);
             
-            DFAgentDescription[] result = DFService.search(this, template);
-            
-            if (result.length > 0) {
-                // Convert DFAgentDescription to AID
-                List<AID> deliveryAIDs = new ArrayList<>();
-                for (DFAgentDescription dfd : result) {
-                    deliveryAIDs.add(dfd.getName());
-                }
-                
-                logger.info("{}: Found {} delivery services", clientName, deliveryAIDs.size());
+            if (deliveryArray.length > 0) {
+                logger.info("{}: Found {} delivery services", clientName, deliveryArray.length);
                 
                 // Start the order process
-                AID[] deliveryArray = deliveryAIDs.toArray(new AID[0]);
-                addBehaviour(new ClientOrderBehaviour(this, clientName, shoppingList, deliveryArray));
+                addBehaviour(new ClientOrderBehaviour(this, clientName, shoppingList, deliveryArray,
+                        decisionPolicy, decisionMetrics));
                 
             } else {
                 logger.warn("{}: No delivery services found!", clientName);
@@ -105,8 +108,21 @@ public class ClientAgent extends Agent {
         return logger;
     }
     
+    /**
+     * Gets how often each rule decided this client's order phases.
+     */
+    public ClientDecisionMetrics getDecisionMetrics() {
+        return decisionMetrics;
+    }
+    
     @Override
     protected void takeDown() {
+        if (clientName == null) {
+            return;
+        }
+        logger.info("{}: Decision metrics: {}", clientName, decisionMetrics);
+        logger.info("{}: {} delivery service lookups from cache (DF round trips avoided), {} DF searches", 
+                   clientName, deliveryDirectory.getHitCount(), deliveryDirectory.getSearchCount());
         logger.info("{} terminated.", clientName);
     }
 } 
\ No newline at end of file
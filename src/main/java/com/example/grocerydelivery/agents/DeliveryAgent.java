@@ -1,17 +1,38 @@
 package com.example.grocerydelivery.agents;
 
-import com.example.grocerydelivery.behaviours.DeliveryClientRequestsServerBehaviour;
+import com.example.grocerydelivery.behaviours.ConversationExpiryBehaviour;
+import com.example.grocerydelivery.behaviours.DeliveryContractNetInitiatorBehaviour;
+import com.example.grocerydelivery.behaviours.DeliveryMessageDispatcherBehaviour;
 import com.example.grocerydelivery.behaviours.DeliveryOrderProcessingBehaviour;
+import com.example.grocerydelivery.behaviours.MarketCatalogSubscriptionBehaviour;
+import com.example.grocerydelivery.behaviours.MarketPriceSubscriptionBehaviour;
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import com.example.grocerydelivery.catalog.MarketItemIndex;
+import com.example.grocerydelivery.catalog.PriceBook;
+import com.example.grocerydelivery.conversation.ConversationTable;
+import com.example.grocerydelivery.conversation.MarketLatencyTracker;
+import com.example.grocerydelivery.directory.DirectoryCache;
+import com.example.grocerydelivery.selection.AssignmentCache;
+import com.example.grocerydelivery.selection.LazyGreedyMarketSelector;
+import com.example.grocerydelivery.selection.MarketAssignment;
+import com.example.grocerydelivery.selection.MarketSelectionStrategies;
+import com.example.grocerydelivery.selection.MarketSelectionStrategy;
+import com.example.grocerydelivery.selection.QuoteSnapshot;
 import com.example.grocerydelivery.utils.LoggerUtil;
+import com.example.grocerydelivery.utils.RecoveryMetrics;
+import com.example.grocerydelivery.utils.StartupTimeline;
 import jade.core.AID;
 import jade.core.Agent;
+import jade.core.behaviours.Behaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +44,22 @@ public class DeliveryAgent extends Agent {
     private String deliveryServiceName;
     private double deliveryFee;
     private List<AID> connectedMarkets = new ArrayList<>();
+    private MarketSelectionStrategy selectionStrategy = new LazyGreedyMarketSelector();
+    private AssignmentCache assignmentCache;
+    private final MarketItemIndex marketItemIndex = new MarketItemIndex(ItemDictionary.shared());
+    private final DirectoryCache marketDirectory = new DirectoryCache(MarketAgent.SERVICE_TYPE);
+    private boolean localQuotes = false;
+    private final PriceBook priceBook = new PriceBook(ItemDictionary.shared());
+    private final Map<AID, Behaviour> priceSubscriptions = new HashMap<>();
+    private final Map<String, DeliveryContractNetInitiatorBehaviour> inFlightNegotiations = new HashMap<>();
+    private DeliveryMessageDispatcherBehaviour messageDispatcher;
+    private long conversationTtl = ConversationTable.DEFAULT_TTL_MS;
+    private ConversationTable conversationTable;
+    private MarketLatencyTracker marketLatency = new MarketLatencyTracker();
+    private final RecoveryMetrics recoveryMetrics = new RecoveryMetrics();
+    private boolean earlyClose = false;
+    private int earlyCloseQuorum = 0;
+    private long earlyCloseGraceMs = 250;
     private Logger logger;
     
     @Override
@@ -49,6 +86,53 @@ public class DeliveryAgent extends Agent {
                     connectedMarkets.add(new AID(marketName, AID.ISLOCALNAME));
                 }
             }
+            
+            // Process market selection strategy
+            String strategyName = (String) params.getOrDefault("selectionStrategy", MarketSelectionStrategies.GREEDY);
+            try {
+                selectionStrategy = MarketSelectionStrategies.create(strategyName, params);
+            } catch (IllegalArgumentException e) {
+                logger.warn("{}, using {}", e.getMessage(), selectionStrategy.getName());
+            }
+            logger.info("Using market selection strategy: {}", selectionStrategy.getName());
+            
+            // Cache assignments of baskets quoted again from unchanged prices
+            int cacheSize = ((Number) params.getOrDefault("assignmentCacheSize", 0)).intValue();
+            if (cacheSize > 0) {
+                assignmentCache = new AssignmentCache(cacheSize);
+                logger.info("Caching up to {} market assignments", cacheSize);
+            }
+            
+            // Expire client conversations that stay in one state for too long
+            conversationTtl = ((Number) params.getOrDefault("conversationTtlMs", conversationTtl)).longValue();
+            
+            // Derive CFP reply deadlines from the observed market latencies
+            try {
+                marketLatency = new MarketLatencyTracker(
+                    ((Number) params.getOrDefault("replyPercentile", MarketLatencyTracker.DEFAULT_PERCENTILE)).doubleValue(),
+                    ((Number) params.getOrDefault("replyMultiplier", MarketLatencyTracker.DEFAULT_MULTIPLIER)).doubleValue(),
+                    ((Number) params.getOrDefault("replyFloorMs", MarketLatencyTracker.DEFAULT_FLOOR_MS)).longValue(),
+                    ((Number) params.getOrDefault("replyCeilingMs", MarketLatencyTracker.DEFAULT_CEILING_MS)).longValue(),
+                    ((Number) params.getOrDefault("slowMarketMisses", MarketLatencyTracker.DEFAULT_SLOW_AFTER_MISSES)).intValue(),
+                    ((Number) params.getOrDefault("slowMarketCooldownMs", MarketLatencyTracker.DEFAULT_SLOW_COOLDOWN_MS)).longValue());
+            } catch (IllegalArgumentException e) {
+                logger.warn("{}, using the default reply deadlines", e.getMessage());
+            }
+            
+            // Close a negotiation once the basket is covered instead of waiting for every market
+            earlyClose = (Boolean) params.getOrDefault("earlyClose", false);
+            earlyCloseQuorum = ((Number) params.getOrDefault("earlyCloseQuorum", earlyCloseQuorum)).intValue();
+            earlyCloseGraceMs = ((Number) params.getOrDefault("earlyCloseGraceMs", earlyCloseGraceMs)).longValue();
+            if (earlyClose) {
+                logger.info("Closing negotiations early once the basket is covered (quorum {}, grace {} ms)", 
+                           earlyCloseQuorum, earlyCloseGraceMs);
+            }
+            
+            // Quote from a local price book and only confirm with the chosen markets
+            localQuotes = (Boolean) params.getOrDefault("localQuotes", false);
+            if (localQuotes) {
+                logger.info("Quoting orders from the local price book");
+            }
         } else {
             // Default values if no args provided
             deliveryServiceName = "DefaultDelivery";
@@ -57,6 +141,7 @@ public class DeliveryAgent extends Agent {
             logger.warn("No parameters provided, using defaults: {} with fee {}", 
                        deliveryServiceName, deliveryFee);
         }
+        conversationTable = new ConversationTable(conversationTtl, System.currentTimeMillis());
         
         // Register the delivery service in the DF
         DFAgentDescription dfd = new DFAgentDescription();
@@ -70,18 +155,36 @@ public class DeliveryAgent extends Agent {
         try {
             DFService.register(this, dfd);
             logger.info("Registered with DF as grocery-delivery service: {}", deliveryServiceName);
+            StartupTimeline.shared().registered(StartupTimeline.DELIVERIES);
         } catch (FIPAException e) {
             logger.error("Failed to register with DF", e);
         }
         
-        // Add behavior to handle client requests
-        addBehaviour(new DeliveryClientRequestsServerBehaviour(this, deliveryServiceName));
-        logger.debug("Added DeliveryClientRequestsServerBehaviour");
+        // Keep the market directory and item-to-market index current from the DF,
+        // and with local quotes subscribe to the prices of every market that joins
+        addBehaviour(new MarketCatalogSubscriptionBehaviour(this, deliveryServiceName, marketItemIndex,
+                marketDirectory, localQuotes ? new PriceSubscriptions() : null));
+        logger.debug("Added MarketCatalogSubscriptionBehaviour");
         
         // Add behavior to process orders
-        addBehaviour(new DeliveryOrderProcessingBehaviour(this, deliveryServiceName, deliveryFee));
+        DeliveryOrderProcessingBehaviour orderProcessing =
+                new DeliveryOrderProcessingBehaviour(this, deliveryServiceName, deliveryFee);
+        addBehaviour(orderProcessing);
         logger.debug("Added DeliveryOrderProcessingBehaviour");
         
+        // Add the single intake for client and market messages; negotiations register
+        // their conversations with it, client messages go to order processing
+        messageDispatcher = new DeliveryMessageDispatcherBehaviour(this, deliveryServiceName);
+        messageDispatcher.registerPerformative(ACLMessage.REQUEST, orderProcessing);
+        messageDispatcher.registerPerformative(ACLMessage.ACCEPT_PROPOSAL, orderProcessing);
+        messageDispatcher.registerPerformative(ACLMessage.REJECT_PROPOSAL, orderProcessing);
+        addBehaviour(messageDispatcher);
+        logger.debug("Added DeliveryMessageDispatcherBehaviour");
+        
+        // Add behavior to expire conversations of clients that stopped answering
+        addBehaviour(new ConversationExpiryBehaviour(this, deliveryServiceName, conversationTable));
+        logger.debug("Added ConversationExpiryBehaviour");
+        
         logger.info("Delivery agent {} setup completed", deliveryServiceName);
     }
     
@@ -95,6 +198,25 @@ public class DeliveryAgent extends Agent {
             logger.error("Failed to deregister from DF", e);
         }
         
+        logger.info("Message dispatcher: {} messages dispatched, {} late market replies dropped",
+                   messageDispatcher.getDispatchedCount(), messageDispatcher.getDroppedCount());
+        logger.info("Conversations: {} open (negotiating {}, proposed {}), {} opened, {} closed, "
+                   + "{} expired while negotiating, {} expired after the proposal",
+                   conversationTable.size(), conversationTable.count(ConversationTable.State.NEGOTIATING),
+                   conversationTable.count(ConversationTable.State.PROPOSED), conversationTable.getOpenedCount(),
+                   conversationTable.getClosedCount(), conversationTable.getExpiredCount(ConversationTable.State.NEGOTIATING),
+                   conversationTable.getExpiredCount(ConversationTable.State.PROPOSED));
+        logger.info("Market latency: {}; {} missed reply deadlines, {} CFPs to slow markets skipped",
+                   marketLatency, marketLatency.getMissCount(), marketLatency.getSkippedCount());
+        logger.info("Failed market recovery: {}", recoveryMetrics);
+        logger.info("Market directory: {} lookups from cache (DF round trips avoided), {} DF searches",
+                   marketDirectory.getHitCount(), marketDirectory.getSearchCount());
+        if (assignmentCache != null) {
+            logger.info("Assignment cache: {} hits, {} misses, {} evictions, {} of {} entries used",
+                       assignmentCache.getHitCount(), assignmentCache.getMissCount(), 
+                       assignmentCache.getEvictionCount(), assignmentCache.size(), assignmentCache.getMaximumSize());
+        }
+        
         logger.info("Delivery agent {} terminating", deliveryServiceName);
     }
     
@@ -119,10 +241,145 @@ public class DeliveryAgent extends Agent {
         return connectedMarkets;
     }
     
+    /**
+     * Gets the strategy this service uses to choose markets for an order.
+     */
+    public MarketSelectionStrategy getSelectionStrategy() {
+        return selectionStrategy;
+    }
+    
+    /**
+     * Gets the cached list of markets registered in the DF.
+     */
+    public DirectoryCache getMarketDirectory() {
+        return marketDirectory;
+    }
+    
+    /**
+     * Gets the index of which markets carry which items.
+     */
+    public MarketItemIndex getMarketItemIndex() {
+        return marketItemIndex;
+    }
+    
+    /**
+     * Chooses the markets for an order with the configured strategy, reusing the
+     * cached assignment if the same basket was quoted from the same prices before.
+     * 
+     * @param snapshot The parsed market quotes
+     * @return The assignment
+     */
+    public MarketAssignment selectMarkets(QuoteSnapshot snapshot) {
+        return assignmentCache != null 
+                ? assignmentCache.select(snapshot, selectionStrategy) 
+                : selectionStrategy.select(snapshot);
+    }
+    
+    /**
+     * Gets the assignment cache, or null if caching is disabled.
+     */
+    public AssignmentCache getAssignmentCache() {
+        return assignmentCache;
+    }
+    
+    /**
+     * Whether orders are quoted from the local price book.
+     */
+    public boolean isLocalQuotes() {
+        return localQuotes;
+    }
+    
+    /**
+     * Gets the local replica of the subscribed market prices.
+     */
+    public PriceBook getPriceBook() {
+        return priceBook;
+    }
+    
+    /**
+     * Gets the market negotiations that identical orders can still join, by
+     * normalized shopping list and market set.
+     */
+    public Map<String, DeliveryContractNetInitiatorBehaviour> getInFlightNegotiations() {
+        return inFlightNegotiations;
+    }
+    
+    /**
+     * Gets the client conversations this agent is working on.
+     */
+    public ConversationTable getConversationTable() {
+        return conversationTable;
+    }
+    
+    /**
+     * Whether negotiations close once the proposals cover the basket.
+     */
+    public boolean isEarlyClose() {
+        return earlyClose;
+    }
+    
+    /**
+     * Gets the number of market responses after which a covered basket closes the
+     * negotiation, 0 to only use the grace period.
+     */
+    public int getEarlyCloseQuorum() {
+        return earlyCloseQuorum;
+    }
+    
+    /**
+     * Gets the time a covered basket waits for more responses before the negotiation closes.
+     */
+    public long getEarlyCloseGraceMs() {
+        return earlyCloseGraceMs;
+    }
+    
+    /**
+     * Gets the counters of the re-negotiations after market failures.
+     */
+    public RecoveryMetrics getRecoveryMetrics() {
+        return recoveryMetrics;
+    }
+    
+    /**
+     * Gets the observed response latency of the markets.
+     */
+    public MarketLatencyTracker getMarketLatency() {
+        return marketLatency;
+    }
+    
+    /**
+     * Gets the dispatcher that routes this agent's messages to their handlers.
+     */
+    public DeliveryMessageDispatcherBehaviour getMessageDispatcher() {
+        return messageDispatcher;
+    }
+    
     /**
      * Gets the logger for this agent.
      */
     public Logger getLogger() {
         return logger;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Starts and stops price subscriptions as markets join and leave the DF.
+     */
+    private class PriceSubscriptions implements MarketCatalogSubscriptionBehaviour.Listener {
+        @Override
+        public void marketRegistered(AID market) {
+            Behaviour subscription = new MarketPriceSubscriptionBehaviour(
+                    DeliveryAgent.this, deliveryServiceName, market, priceBook);
+            priceSubscriptions.put(market, subscription);
+            addBehaviour(subscription);
+        }
+        
+        @Override
+        public void marketDeregistered(AID market) {
+            Behaviour subscription = priceSubscriptions.remove(market);
+            if (subscription != null) {
+                removeBehaviour(subscription);
+            }
+            priceBook.remove(market);
+        }
+    }
+}
@@ -1,25 +1,53 @@
 package com.example.grocerydelivery.agents;
 
 import com.example.grocerydelivery.behaviours.MarketContractNetResponderBehaviour;
+import com.example.grocerydelivery.behaviours.MarketPriceFeedBehaviour;
+import com.example.grocerydelivery.behaviours.MarketPriceUpdateBehaviour;
+import com.example.grocerydelivery.behaviours.StockHoldExpiryBehaviour;
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import com.example.grocerydelivery.catalog.MappedPriceCatalog;
+import com.example.grocerydelivery.catalog.PriceCatalog;
+import com.example.grocerydelivery.catalog.PriceTable;
+import com.example.grocerydelivery.catalog.StockHolds;
+import com.example.grocerydelivery.catalog.StockLedger;
 import com.example.grocerydelivery.utils.LoggerUtil;
+import com.example.grocerydelivery.utils.StartupTimeline;
 import jade.core.Agent;
 import jade.domain.DFService;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
 import jade.lang.acl.MessageTemplate;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeSet;
 
 /**
  * MarketAgent represents a grocery store in the system that offers products at specific prices.
  * It registers its services in the DF and handles requests from DeliveryAgents.
  */
 public class MarketAgent extends Agent {
+
+    /** DF service type of markets. */
+    public static final String SERVICE_TYPE = "grocery-market";
+    /** DF service property holding the comma-separated item catalog. */
+    public static final String CATALOG_PROPERTY = "catalog";
+    /** DF service property set to "true" by markets that track stock quantities. */
+    public static final String STOCK_PROPERTY = "stock-tracked";
+
     private String marketName;
-    private Map<String, Double> inventory = new HashMap<>();
+    private PriceCatalog inventory = PriceTable.of(ItemDictionary.shared(), Collections.emptyMap());
+    private StockLedger stock = StockLedger.unlimited();
+    private StockHolds holds;
+    private long priceVersion = 0;
+    private MarketPriceFeedBehaviour priceFeed;
     private Logger logger;
 
     @Override
@@ -50,22 +78,49 @@ public class MarketAgent extends Agent {
                 }
             }
             
+            Map<String, Double> stocked = new LinkedHashMap<>();
             if (inventoryArray != null && prices != null) {
                 for (String item : inventoryArray) {
                     Double price = prices.get(item);
                     if (price != null) {
-                        inventory.put(item, price);
+                        stocked.put(item, price);
                         logger.debug("Added to inventory: {} at price {}", item, price);
                     }
                 }
             }
+            // Keep the prices in a compact table keyed by the ids of the shared dictionary
+            inventory = PriceTable.of(ItemDictionary.shared(), stocked);
+            
+            // A catalog file replaces the configured inventory and stays off the heap
+            String catalogFile = (String) params.get("catalogFile");
+            if (catalogFile != null) {
+                try {
+                    inventory = MappedPriceCatalog.open(Paths.get(catalogFile));
+                    logger.info("Mapped catalog file {}", catalogFile);
+                } catch (IOException e) {
+                    logger.error("Failed to map catalog file {}, using the configured inventory", catalogFile, e);
+                }
+            }
             
             logger.info("Market has {} items in inventory", inventory.size());
+            
+            // Stock quantities, items without a quantity are unlimited
+            @SuppressWarnings("unchecked")
+            Map<String, Long> stockParam = (Map<String, Long>) params.get("stock");
+            if (stockParam != null) {
+                stock = new StockLedger(stockParam);
+                logger.info("Market tracks stock of {} items", stock.size());
+            }
+            
+            // Hold quoted stock until the proposal is answered or the hold expires
+            long holdTtl = ((Number) params.getOrDefault("holdTtlMs", StockHolds.DEFAULT_TTL_MS)).longValue();
+            holds = new StockHolds(stock, holdTtl, System.currentTimeMillis());
         } else {
             // Default values if no args provided
             marketName = "DefaultMarket";
             logger = LoggerUtil.getLogger(marketName, "Agent");
             logger.warn("No parameters provided, using defaults: {}", marketName);
+            holds = new StockHolds(stock, StockHolds.DEFAULT_TTL_MS, System.currentTimeMillis());
         }
         
         // Register in the DF
@@ -78,6 +133,21 @@ public class MarketAgent extends Agent {
         addBehaviour(new MarketContractNetResponderBehaviour(this, template));
         logger.debug("Added MarketContractNetResponderBehaviour");
         
+        // Add behavior to push prices to subscribed delivery agents
+        priceFeed = new MarketPriceFeedBehaviour(this);
+        addBehaviour(priceFeed);
+        logger.debug("Added MarketPriceFeedBehaviour");
+        
+        // Add behavior to change prices on request while the market runs
+        addBehaviour(new MarketPriceUpdateBehaviour(this));
+        logger.debug("Added MarketPriceUpdateBehaviour");
+        
+        // Add behavior to give back the stock of expired holds
+        if (stock.size() > 0) {
+            addBehaviour(new StockHoldExpiryBehaviour(this, marketName, holds));
+            logger.debug("Added StockHoldExpiryBehaviour");
+        }
+        
         logger.info("Market agent {} setup completed", marketName);
     }
     
@@ -86,27 +156,73 @@ public class MarketAgent extends Agent {
      */
     private void registerInDF() {
         try {
-            // Create agent description
-            DFAgentDescription dfd = new DFAgentDescription();
-            dfd.setName(getAID());
-            
-            // Market service description
-            ServiceDescription sd = new ServiceDescription();
-            sd.setType("grocery-market");
-            sd.setName(marketName);
-            
-            dfd.addServices(sd);
-            
             // Register the service in the DF
-            DFService.register(this, dfd);
+            DFService.register(this, createDescription());
             
             logger.info("Registered in DF as a grocery market");
+            StartupTimeline.shared().registered(StartupTimeline.MARKETS);
             
         } catch (FIPAException e) {
             logger.error("Failed to register in DF", e);
         }
     }
     
+    /**
+     * Creates the DF description of this market, including its item catalog so
+     * delivery agents only send CFPs to markets that carry requested items.
+     */
+    private DFAgentDescription createDescription() {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        
+        // Market service description
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(SERVICE_TYPE);
+        sd.setName(marketName);
+        // A mapped catalog is too large to list, delivery agents then send it every CFP
+        if (!hasMappedCatalog()) {
+            sd.addProperties(new Property(CATALOG_PROPERTY, String.join(",", new TreeSet<>(inventory.toMap().keySet()))));
+        }
+        // Delivery agents do not share one negotiation between clients of a stocked market
+        if (stock.size() > 0) {
+            sd.addProperties(new Property(STOCK_PROPERTY, "true"));
+        }
+        
+        dfd.addServices(sd);
+        return dfd;
+    }
+    
+    /**
+     * Sets or removes the price of an item, e.g. on a request handled by the
+     * MarketPriceUpdateBehaviour. The change is pushed to subscribed delivery agents,
+     * and if the item set changes the catalog in the DF is updated.
+     * 
+     * @param item The item
+     * @param price The new price, or null if the market no longer carries the item
+     */
+    public void updateInventory(String item, Double price) {
+        PriceCatalog previous = inventory;
+        inventory = previous.with(item, price != null ? price : Double.NaN);
+        if (inventory == previous) {
+            return;
+        }
+        boolean catalogChanged = inventory.size() != previous.size() && !hasMappedCatalog();
+        
+        priceVersion++;
+        if (priceFeed != null) {
+            priceFeed.publish(priceVersion, Collections.singletonMap(item, price));
+        }
+        
+        if (catalogChanged) {
+            try {
+                DFService.modify(this, createDescription());
+                logger.info("Updated catalog in DF, {} items", inventory.size());
+            } catch (FIPAException e) {
+                logger.error("Failed to update catalog in DF", e);
+            }
+        }
+    }
+    
     @Override
     protected void takeDown() {
         // Deregister from the DF
@@ -117,6 +233,8 @@ public class MarketAgent extends Agent {
             logger.error("Failed to deregister from DF", e);
         }
         
+        logger.info("Stock: {}", stock);
+        logger.info("Stock holds: {}", holds);
         logger.info("Market agent {} terminating", marketName);
     }
     
@@ -131,10 +249,46 @@ public class MarketAgent extends Agent {
      * Gets the price of a specific item.
      * 
      * @param item The item to check
-     * @return The price, or null if not available
+     * @return The price, or NaN if not available
+     */
+    public double getPrice(String item) {
+        return inventory.price(item);
+    }
+    
+    /**
+     * Gets the stock quantities of this market.
+     */
+    public StockLedger getStock() {
+        return stock;
+    }
+    
+    /**
+     * Gets the holds on quoted stock of this market.
+     */
+    public StockHolds getStockHolds() {
+        return holds;
+    }
+    
+    /**
+     * Gets a copy of all item prices of this market.
+     */
+    public Map<String, Double> getInventory() {
+        return inventory.toMap();
+    }
+    
+    /**
+     * Whether the prices come from a memory-mapped catalog file. Such a catalog is not
+     * published in the DF nor sent to price subscribers.
+     */
+    public boolean hasMappedCatalog() {
+        return inventory instanceof MappedPriceCatalog;
+    }
+    
+    /**
+     * Gets the version of the prices, incremented on every price change.
      */
-    public Double getPrice(String item) {
-        return inventory.get(item);
+    public long getPriceVersion() {
+        return priceVersion;
     }
     
     /**
@@ -1,6 +1,10 @@
 package com.example.grocerydelivery.behaviours;
 
+import com.example.grocerydelivery.codec.ClientProposal;
+import com.example.grocerydelivery.codec.Payment;
+import com.example.grocerydelivery.utils.ClientDecisionMetrics;
 import com.example.grocerydelivery.utils.LoggerUtil;
+import com.example.grocerydelivery.utils.StartupTimeline;
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
@@ -16,6 +20,11 @@ import java.util.*;
  * 2. Receive and evaluate proposals
  * 3. Select the best delivery service
  * 4. Send payment and await delivery confirmation
+ *
+ * Collecting proposals and waiting for the confirmation each have a deadline, so a
+ * slow or dead delivery service cannot stall the client. Proposal collection can also
+ * end early through the good-enough rule of the {@link DecisionPolicy}. The rule that
+ * ended each phase is recorded in the client's {@link ClientDecisionMetrics}.
  */
 public class ClientOrderBehaviour extends Behaviour {
     
@@ -29,21 +38,34 @@ public class ClientOrderBehaviour extends Behaviour {
     private final String[] shoppingList;
     private final AID[] deliveryServices;
     private final String conversationId;
+    private final DecisionPolicy policy;
+    private final ClientDecisionMetrics metrics;
     private final Logger logger;
     
     private int state = STATE_SEND_REQUESTS;
     private int numResponses = 0;
     private boolean done = false;
     
+    // Start and deadline of the current phase
+    private long phaseStarted;
+    private long deadline;
+    
+    // Good-enough rule: lowest total of the SUCCESS proposals so far
+    private double bestSuccessTotal = Double.MAX_VALUE;
+    private boolean goodEnough = false;
+    
     // Store delivery service proposals
     private final Map<AID, DeliveryProposal> proposals = new HashMap<>();
     private AID selectedDeliveryService = null;
     
-    public ClientOrderBehaviour(Agent agent, String clientName, String[] shoppingList, AID[] deliveryServices) {
+    public ClientOrderBehaviour(Agent agent, String clientName, String[] shoppingList, AID[] deliveryServices,
+                                DecisionPolicy policy, ClientDecisionMetrics metrics) {
         super(agent);
         this.clientName = clientName;
         this.shoppingList = shoppingList;
         this.deliveryServices = deliveryServices;
+        this.policy = policy;
+        this.metrics = metrics;
         this.conversationId = "order-" + UUID.randomUUID().toString();
         this.logger = LoggerUtil.getLogger(
             "ClientOrder_" + clientName, "Behaviour");
@@ -59,10 +81,18 @@ public class ClientOrderBehaviour extends Behaviour {
                 break;
                 
             case STATE_COLLECT_PROPOSALS:
-                // Collect proposals from delivery services
+                // Collect proposals from delivery services until a rule decides
                 collectProposals();
                 if (numResponses >= deliveryServices.length) {
-                    state = STATE_SELECT_DELIVERY;
+                    decide(ClientDecisionMetrics.Rule.ALL_RESPONSES);
+                } else if (goodEnough) {
+                    decide(ClientDecisionMetrics.Rule.GOOD_ENOUGH);
+                } else if (System.currentTimeMillis() >= deadline) {
+                    logger.warn("{}: Proposal deadline passed with {} of {} proposals", 
+                               clientName, numResponses, deliveryServices.length);
+                    decide(ClientDecisionMetrics.Rule.PROPOSAL_DEADLINE);
+                } else {
+                    block(deadline - System.currentTimeMillis());
                 }
                 break;
                 
@@ -77,11 +107,28 @@ public class ClientOrderBehaviour extends Behaviour {
                 break;
                 
             case STATE_DONE:
+                logger.info("{}: Decision metrics: {}", clientName, metrics);
                 done = true;
                 break;
         }
     }
     
+    /**
+     * Ends proposal collection and records the rule that ended it.
+     */
+    private void decide(ClientDecisionMetrics.Rule rule) {
+        long elapsed = System.currentTimeMillis() - phaseStarted;
+        metrics.record(rule, elapsed);
+        logger.info("{}: {} decided proposal collection after {} ms with {} of {} proposals", 
+                   clientName, rule, elapsed, numResponses, deliveryServices.length);
+        state = STATE_SELECT_DELIVERY;
+    }
+    
+    private void startPhase(long timeoutMs) {
+        phaseStarted = System.currentTimeMillis();
+        deadline = phaseStarted + timeoutMs;
+    }
+    
     private void sendOrderRequests() {
         logger.info("{}: Sending order requests to {} delivery services", 
                    clientName, deliveryServices.length);
@@ -102,6 +149,8 @@ public class ClientOrderBehaviour extends Behaviour {
         
         // Send the message
         myAgent.send(request);
+        StartupTimeline.shared().firstOrder();
+        startPhase(policy.proposalTimeoutMs);
     }
     
     private void collectProposals() {
@@ -111,59 +160,60 @@ public class ClientOrderBehaviour extends Behaviour {
             MessageTemplate.MatchPerformative(ACLMessage.PROPOSE)
         );
         
-        // Check for responses
-        ACLMessage response = myAgent.receive(mt);
-        
-        if (response != null) {
+        // Take all responses that arrived
+        ACLMessage response;
+        while (!goodEnough && (response = myAgent.receive(mt)) != null) {
             // Process the proposal
             AID sender = response.getSender();
-            String content = response.getContent();
             
-            // Parse the proposal content (format: STATUS|totalPrice|item1:price1,item2:price2,...|unavailable1,unavailable2,...)
-            DeliveryProposal proposal = parseProposal(content);
-            proposals.put(sender, proposal);
+            // Read the proposal content (status, total price, item prices, unavailable items)
+            DeliveryProposal proposal = parseProposal(response);
             
-            logger.info("{}: Received proposal from {} - Status: {}, Total price: {}", 
-                       clientName, sender.getLocalName(), proposal.status, proposal.totalPrice);
+            // A second proposal from the same delivery service replaces its first one
+            if (proposals.put(sender, proposal) != null) {
+                logger.info("{}: Received updated proposal from {} - Status: {}, Total price: {}", 
+                           clientName, sender.getLocalName(), proposal.status, proposal.totalPrice);
+                // The best SUCCESS seen before this one, without the replaced proposal
+                bestSuccessTotal = Double.MAX_VALUE;
+                for (Map.Entry<AID, DeliveryProposal> known : proposals.entrySet()) {
+                    if (!known.getKey().equals(sender) && "SUCCESS".equals(known.getValue().status)) {
+                        bestSuccessTotal = Math.min(bestSuccessTotal, known.getValue().totalPrice);
+                    }
+                }
+            } else {
+                logger.info("{}: Received proposal from {} - Status: {}, Total price: {}", 
+                           clientName, sender.getLocalName(), proposal.status, proposal.totalPrice);
+                
+                numResponses++;
+            }
+            if (!"SUCCESS".equals(proposal.status)) {
+                continue;
+            }
             
-            numResponses++;
-        } else {
-            block();
+            // Good enough: a new SUCCESS proposal is priced within the margin of the best
+            // SUCCESS seen before it, so the prices have settled and waiting is unlikely to pay off
+            if (policy.isGoodEnough(numResponses, proposal.totalPrice, bestSuccessTotal)) {
+                logger.info("{}: Proposal of {} from {} is within {}% of the best SUCCESS total {}", 
+                           clientName, proposal.totalPrice, sender.getLocalName(), 
+                           policy.goodEnoughPercent, bestSuccessTotal);
+                goodEnough = true;
+            }
+            bestSuccessTotal = Math.min(bestSuccessTotal, proposal.totalPrice);
         }
     }
     
-    private DeliveryProposal parseProposal(String content) {
+    private DeliveryProposal parseProposal(ACLMessage response) {
         DeliveryProposal proposal = new DeliveryProposal();
         
         try {
-            String[] parts = content.split("\\|", 4);
-            
-            // Parse status
-            proposal.status = parts[0];
-            
-            // Parse total price
-            if (parts.length > 1 && !parts[1].isEmpty()) {
-                proposal.totalPrice = Double.parseDouble(parts[1]);
-            }
-            
-            // Parse available items and prices
-            if (parts.length > 2 && !parts[2].isEmpty()) {
-                for (String itemPrice : parts[2].split(",")) {
-                    String[] itemParts = itemPrice.split(":");
-                    if (itemParts.length == 2) {
-                        String item = itemParts[0];
-                        double price = Double.parseDouble(itemParts[1]);
-                        proposal.availableItems.put(item, price);
-                    }
-                }
-            }
-            
-            // Parse unavailable items
-            if (parts.length > 3 && !parts[3].isEmpty()) {
-                proposal.unavailableItems.addAll(Arrays.asList(parts[3].split(",")));
-            }
-        } catch (Exception e) {
-            logger.error("{}: Error parsing proposal content: {}", clientName, content, e);
+            ClientProposal content = ClientProposal.from(response);
+            proposal.status = content.isSuccess() ? "SUCCESS" : "FAILURE";
+            proposal.totalPrice = content.getTotalPrice();
+            proposal.availableItems.putAll(content.getItemPrices());
+            proposal.unavailableItems.addAll(content.getUnavailableItems());
+        } catch (IllegalArgumentException e) {
+            logger.error("{}: Error reading proposal from {}: {}", 
+                        clientName, response.getSender().getLocalName(), e.getMessage());
             // Set default values for a failed parsing
             proposal.status = "FAILURE";
             proposal.totalPrice = Double.MAX_VALUE;
@@ -234,7 +284,7 @@ public class ClientOrderBehaviour extends Behaviour {
             ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
             accept.addReceiver(selectedDeliveryService);
             accept.setConversationId(conversationId);
-            accept.setContent("PAYMENT:" + bestPrice); // Simulating payment
+            new Payment(bestPrice).writeTo(accept); // Simulating payment
             
             myAgent.send(accept);
             
@@ -253,6 +303,7 @@ public class ClientOrderBehaviour extends Behaviour {
             }
             
             state = STATE_WAIT_CONFIRMATION;
+            startPhase(policy.confirmationTimeoutMs);
         } else {
             logger.warn("{}: No suitable delivery service found!", clientName);
             state = STATE_DONE;
@@ -266,12 +317,23 @@ public class ClientOrderBehaviour extends Behaviour {
                 MessageTemplate.MatchConversationId(conversationId),
                 MessageTemplate.MatchSender(selectedDeliveryService)
             ),
-            MessageTemplate.MatchPerformative(ACLMessage.INFORM)
+            MessageTemplate.or(
+                MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                MessageTemplate.MatchPerformative(ACLMessage.FAILURE)
+            )
         );
         
         // Check for confirmation
         ACLMessage confirmation = myAgent.receive(mt);
         
+        if (confirmation != null && confirmation.getPerformative() == ACLMessage.FAILURE) {
+            logger.warn("{}: {} refused the payment: {}", 
+                       clientName, selectedDeliveryService.getLocalName(), confirmation.getContent());
+            metrics.record(ClientDecisionMetrics.Rule.REFUSED, System.currentTimeMillis() - phaseStarted);
+            state = STATE_DONE;
+            return;
+        }
+        
         if (confirmation != null) {
             // Process the confirmation
             String content = confirmation.getContent();
@@ -279,10 +341,39 @@ public class ClientOrderBehaviour extends Behaviour {
             logger.info("{}: Received confirmation from {}: {}", 
                        clientName, selectedDeliveryService.getLocalName(), content);
             
+            metrics.record(ClientDecisionMetrics.Rule.CONFIRMED, System.currentTimeMillis() - phaseStarted);
+            
             // Order process complete
             state = STATE_DONE;
+            return;
+        }
+        
+        // Reject proposals that arrived after the decision
+        ACLMessage lateProposal = myAgent.receive(MessageTemplate.and(
+            MessageTemplate.MatchConversationId(conversationId),
+            MessageTemplate.MatchPerformative(ACLMessage.PROPOSE)
+        ));
+        if (lateProposal != null) {
+            // The selected service may still update the proposal the payment was for
+            if (lateProposal.getSender().equals(selectedDeliveryService)) {
+                logger.warn("{}: {} updated its proposal after the payment, new total: {}", 
+                           clientName, selectedDeliveryService.getLocalName(), parseProposal(lateProposal).totalPrice);
+                return;
+            }
+            logger.info("{}: Rejecting late proposal from {}", clientName, lateProposal.getSender().getLocalName());
+            ACLMessage reject = lateProposal.createReply();
+            reject.setPerformative(ACLMessage.REJECT_PROPOSAL);
+            myAgent.send(reject);
+            return;
+        }
+        
+        if (System.currentTimeMillis() >= deadline) {
+            logger.warn("{}: No confirmation from {} within {} ms", 
+                       clientName, selectedDeliveryService.getLocalName(), policy.confirmationTimeoutMs);
+            metrics.record(ClientDecisionMetrics.Rule.CONFIRMATION_DEADLINE, System.currentTimeMillis() - phaseStarted);
+            state = STATE_DONE;
         } else {
-            block();
+            block(deadline - System.currentTimeMillis());
         }
     }
     
@@ -291,6 +382,52 @@ public class ClientOrderBehaviour extends Behaviour {
         return done;
     }
     
+    /**
+     * Deadlines and the good-enough rule of an order.
+     */
+    public static final class DecisionPolicy {
+        
+        /** Default time to collect proposals, longer than the delivery services' CFP window. */
+        public static final long DEFAULT_PROPOSAL_TIMEOUT_MS = 15000;
+        
+        /** Default time to wait for the delivery confirmation after paying. */
+        public static final long DEFAULT_CONFIRMATION_TIMEOUT_MS = 10000;
+        
+        final long proposalTimeoutMs;
+        final long confirmationTimeoutMs;
+        final int goodEnoughAfter;
+        final double goodEnoughPercent;
+        
+        /**
+         * @param proposalTimeoutMs Time to collect proposals
+         * @param confirmationTimeoutMs Time to wait for the confirmation
+         * @param goodEnoughAfter Proposals needed before the good-enough rule applies, 0 disables it
+         * @param goodEnoughPercent How far above or below the best SUCCESS proposal so far a
+         *                          new SUCCESS proposal may be priced to stop collecting
+         */
+        public DecisionPolicy(long proposalTimeoutMs, long confirmationTimeoutMs, 
+                              int goodEnoughAfter, double goodEnoughPercent) {
+            this.proposalTimeoutMs = proposalTimeoutMs;
+            this.confirmationTimeoutMs = confirmationTimeoutMs;
+            this.goodEnoughAfter = goodEnoughAfter;
+            this.goodEnoughPercent = goodEnoughPercent;
+        }
+        
+        /**
+         * Whether a new SUCCESS proposal is good enough to stop collecting.
+         *
+         * @param responses Proposals received so far
+         * @param total Total of the new SUCCESS proposal
+         * @param bestSuccessTotal Lowest total of the earlier SUCCESS proposals,
+         *                         Double.MAX_VALUE if there were none
+         */
+        boolean isGoodEnough(int responses, double total, double bestSuccessTotal) {
+            return goodEnoughAfter > 0 && responses >= goodEnoughAfter
+                    && bestSuccessTotal != Double.MAX_VALUE
+                    && Math.abs(total - bestSuccessTotal) <= bestSuccessTotal * goodEnoughPercent / 100;
+        }
+    }
+    
     /**
      * Internal class to store delivery service proposals
      */
@@ -1,45 +1,91 @@
 package com.example.grocerydelivery.behaviours;
 
 import com.example.grocerydelivery.agents.ClientAgent;
+import com.example.grocerydelivery.directory.DirectoryCache;
 import com.example.grocerydelivery.utils.LoggerUtil;
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
-import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.WakerBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Behavior for a ClientAgent to wait before searching for delivery services.
- * This ensures all other agents are properly registered in the DF.
+ * Behavior for a ClientAgent to wait until the delivery services are registered in
+ * the DF before searching for them. It subscribes to the DF and starts the next
+ * behaviour as soon as the expected number of delivery services is registered, or
+ * when the timeout elapses, whichever comes first. The subscription stays open
+ * afterwards to keep the client's cache of delivery services current.
  */
-public class ClientWaitBehaviour extends OneShotBehaviour {
+public class ClientWaitBehaviour extends SubscriptionInitiator {
     
     private final String clientName;
     private final ClientAgent agent;
     private final Behaviour nextBehaviour;
+    private final int expectedDeliveryServices;
+    private final DirectoryCache directory;
     private final Logger logger;
     
-    public ClientWaitBehaviour(Agent agent, String clientName, Behaviour nextBehaviour) {
+    private final WakerBehaviour timeout;
+    private boolean ready = false;
+    
+    /**
+     * @param directory The cache of delivery services to keep current
+     * @param expectedDeliveryServices Number of delivery services to wait for; 0 or less
+     *                                 waits for the first one
+     * @param timeoutMillis Maximum time to wait before starting anyway
+     */
+    public ClientWaitBehaviour(Agent agent, String clientName, Behaviour nextBehaviour, DirectoryCache directory,
+                               int expectedDeliveryServices, long timeoutMillis) {
+        super(agent, DFService.createSubscriptionMessage(agent, agent.getDefaultDF(), directory.createTemplate(), null));
         this.agent = (ClientAgent) agent;
         this.clientName = clientName;
         this.nextBehaviour = nextBehaviour;
+        this.directory = directory;
+        this.expectedDeliveryServices = Math.max(expectedDeliveryServices, 1);
         this.logger = LoggerUtil.getLogger(
             "ClientWait_" + clientName, "Behaviour");
+        
+        this.timeout = new WakerBehaviour(agent, timeoutMillis) {
+            @Override
+            protected void onWake() {
+                logger.warn("{}: only {} of {} delivery services registered after {} ms, ordering anyway", 
+                           clientName, directory.size(), ClientWaitBehaviour.this.expectedDeliveryServices, timeoutMillis);
+                startNext();
+            }
+        };
+    }
+    
+    @Override
+    public void onStart() {
+        super.onStart();
+        logger.info("{} waiting for {} delivery services to register...", clientName, expectedDeliveryServices);
+        agent.addBehaviour(timeout);
     }
     
     @Override
-    public void action() {
+    protected void handleInform(ACLMessage inform) {
         try {
-            logger.info("{} waiting for delivery services to register...", clientName);
-            Thread.sleep(10000);
-        } catch (InterruptedException e) {
-            logger.error("Wait interrupted", e);
+            directory.apply(DFService.decodeNotification(inform.getContent()));
+        } catch (FIPAException e) {
+            logger.error("Failed to decode DF notification", e);
+            return;
+        }
+        
+        if (!ready && directory.size() >= expectedDeliveryServices) {
+            logger.info("{}: {} delivery services registered", clientName, directory.size());
+            startNext();
         }
     }
     
-    @Override
-    public int onEnd() {
-        // Search for delivery services after delay
+    private void startNext() {
+        if (ready) {
+            return;
+        }
+        ready = true;
+        agent.removeBehaviour(timeout);
         agent.addBehaviour(nextBehaviour);
-        return super.onEnd();
     }
-} 
\ No newline at end of file
+}
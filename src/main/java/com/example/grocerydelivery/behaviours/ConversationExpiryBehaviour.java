@@ -0,0 +1,51 @@
+package com.example.grocerydelivery.behaviours;
+
+import com.example.grocerydelivery.conversation.ConversationTable;
+import com.example.grocerydelivery.utils.LoggerUtil;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+
+/**
+ * Advances the expiry timer of a delivery agent's conversation table once per tick
+ * and logs the conversations that expired together with the live gauges.
+ */
+public class ConversationExpiryBehaviour extends TickerBehaviour {
+
+    private final ConversationTable conversations;
+    private final Logger logger;
+
+    public ConversationExpiryBehaviour(Agent agent, String serviceName, ConversationTable conversations) {
+        super(agent, ConversationTable.TICK_MS);
+        this.conversations = conversations;
+        this.logger = LoggerUtil.getLogger(
+            "ConversationExpiry_" + serviceName, "Behaviour");
+        logger.info("ConversationExpiryBehaviour initialized for {}, time-to-live {} ms",
+                   serviceName, conversations.getTtlMillis());
+    }
+
+    @Override
+    protected void onTick() {
+        long now = System.currentTimeMillis();
+        List<ConversationTable.Entry> expired = conversations.expire(now);
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        for (ConversationTable.Entry entry : expired) {
+            logger.info("Conversation {} expired in state {} after {} ms (open {} ms)",
+                       entry.getKey(), entry.getState(), now - entry.getUpdatedAt(), now - entry.getCreatedAt());
+        }
+        logger.info("Live conversations: {} (negotiating {}, proposed {}, paid {}), expired so far: "
+                   + "negotiating {}, proposed {}, paid {}",
+                   conversations.size(),
+                   conversations.count(ConversationTable.State.NEGOTIATING),
+                   conversations.count(ConversationTable.State.PROPOSED),
+                   conversations.count(ConversationTable.State.PAID),
+                   conversations.getExpiredCount(ConversationTable.State.NEGOTIATING),
+                   conversations.getExpiredCount(ConversationTable.State.PROPOSED),
+                   conversations.getExpiredCount(ConversationTable.State.PAID));
+    }
+}
@@ -1,13 +1,22 @@
 package com.example.grocerydelivery.behaviours;
 
 import com.example.grocerydelivery.agents.DeliveryAgent;
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import com.example.grocerydelivery.codec.Cfp;
+import com.example.grocerydelivery.codec.ClientProposal;
+import com.example.grocerydelivery.codec.Quote;
+import com.example.grocerydelivery.conversation.ConversationTable;
+import com.example.grocerydelivery.conversation.MarketLatencyTracker;
+import com.example.grocerydelivery.selection.MarketAssignment;
+import com.example.grocerydelivery.selection.MarketSelectionStrategy;
+import com.example.grocerydelivery.selection.QuoteSnapshot;
 import com.example.grocerydelivery.utils.LoggerUtil;
+import com.example.grocerydelivery.utils.RecoveryMetrics;
 import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.SimpleBehaviour;
 import jade.domain.FIPANames;
 import jade.lang.acl.ACLMessage;
-import jade.proto.ContractNetInitiator;
 import org.apache.logging.log4j.Logger;
 
 import java.util.*;
@@ -15,8 +24,42 @@ import java.util.*;
 /**
  * Behavior for DeliveryAgent to initiate Contract Net Protocol with MarketAgents
  * to find the best prices for a grocery order.
+ *
+ * The replies of the markets are routed to it by the DeliveryMessageDispatcherBehaviour
+ * under the market conversation id, so the negotiation never scans the mailbox. Like
+ * JADE's ContractNetInitiator it collects responses until every market answered or
+ * the CFP's reply-by date passed, then sends the acceptances and collects the result
+ * notifications of the accepted markets. The response time of every market, and every
+ * missed reply-by date, goes to the agent's MarketLatencyTracker, which sets the
+ * reply-by date of the next CFPs.
+ *
+ * With early close enabled the responses phase also ends once the proposals cover the
+ * whole shopping list and either enough markets answered or a grace period passed. The
+ * markets that answer afterwards get a REJECT_PROPOSAL, and the time saved is reported
+ * against what their proposals would have saved on the items total.
+ *
+ * When an accepted market answers with FAILURE, a second, smaller round re-negotiates
+ * only its items with the markets that offered them before, and the clients get an
+ * updated proposal. If that round fails too, the items become unavailable.
+ *
+ * A quoted assignment is only accepted where the markets confirm it: the quoted items
+ * a chosen market does not propose again at the quoted price, and all items of a
+ * chosen market that refuses or does not answer, are handled like the items of a
+ * failed market.
  */
-public class DeliveryContractNetInitiatorBehaviour extends ContractNetInitiator {
+public class DeliveryContractNetInitiatorBehaviour extends SimpleBehaviour
+        implements DeliveryMessageDispatcherBehaviour.Handler {
+
+    private static final int STATE_RESPONSES = 0;
+    private static final int STATE_RESULTS = 1;
+    private static final int STATE_RECOVERY = 2;
+    private static final int STATE_DONE = 3;
+    
+    /** Time the accepted markets get to confirm, and the reply window without a reply-by date. */
+    private static final long REPLY_TIMEOUT_MS = 10000;
+    
+    /** Extra time for late proposals when no market proposed within the reply window. */
+    private static final long LATE_RESPONSE_GRACE_MS = 2000;
 
     private final String[] shoppingList;
     private final double deliveryFee;
@@ -24,22 +67,82 @@ public class DeliveryContractNetInitiatorBehaviour extends ContractNetInitiator
     private final String clientConversationId;
     private final Logger logger;
     
-    // Price calculation results
+    // Protocol state, fed by the dispatcher
+    private final ACLMessage cfp;
+    private final Queue<ACLMessage> inbox = new ArrayDeque<>();
+    private final Set<AID> pendingReplies = new HashSet<>();
+    private final List<ACLMessage> responses = new ArrayList<>();
+    private final List<ACLMessage> resultNotifications = new ArrayList<>();
+    private int state = STATE_RESPONSES;
+    private long deadline;
+    private long replyBy;
+    private long cfpSentAt;
+    private boolean graceWindowUsed = false;
+    
+    // Early close of the responses phase once the basket is covered
+    private final Set<String> uncoveredItems = new HashSet<>();
+    private final Set<AID> lateResponders = new HashSet<>();
+    private final Map<String, Double> bestLatePrices = new HashMap<>();
+    private double forgoneTotal = 0;
+    private int marketCount;
+    private long coveredAt = 0;
+    private long closedEarlyAt = 0;
+    private long lastLateResponseAt = 0;
+    private int lateProposalCount = 0;
+    
+    // Re-negotiation of the items of accepted markets that failed
+    private final Map<AID, Quote> offers = new LinkedHashMap<>();
+    private final Map<String, List<String>> roundFailures = new LinkedHashMap<>();
+    private final Set<String> failedMarkets = new HashSet<>();
+    private final List<ACLMessage> recoveryResponses = new ArrayList<>();
+    private String activeConversationId;
+    private ACLMessage recoveryCfp;
+    private long firstFailureAt;
+    private boolean proposalSent = false;
+    
+    // Assignment computed from the local price book, null for a full negotiation
+    private final MarketAssignment quotedAssignment;
+    private final AID[] quotedMarkets;
+    
+    // Other client conversations sharing this negotiation (single-flight coalescing)
+    private final List<Waiter> waiters = new ArrayList<>();
+    private String coalescingKey;
+    
+    // Market selection result
     private double bestTotalPrice = Double.MAX_VALUE;
-    private List<Map.Entry<AID, String>> selectedMarkets = new ArrayList<>();
-    private Map<String, Double> finalItemPrices = new HashMap<>();
-    private Set<String> unavailableItems = new HashSet<>();
+    private MarketAssignment assignment = new MarketAssignment();
     
     public DeliveryContractNetInitiatorBehaviour(Agent agent, ACLMessage cfp, 
                                                 String[] shoppingList, 
                                                 double deliveryFee, 
                                                 AID clientAID,
                                                 String conversationId) {
-        super(agent, cfp);
+        this(agent, cfp, shoppingList, deliveryFee, clientAID, conversationId, null, new AID[0]);
+    }
+    
+    /**
+     * Creates a negotiation that only confirms an assignment already quoted from the
+     * local price book. The client gets the quote as soon as the behaviour starts.
+     * 
+     * @param quotedAssignment The quoted assignment, or null for a full negotiation
+     * @param quotedMarkets Every market the assignment was quoted from; the items the
+     *                      chosen markets do not confirm are re-negotiated with them
+     */
+    public DeliveryContractNetInitiatorBehaviour(Agent agent, ACLMessage cfp, 
+                                                String[] shoppingList, 
+                                                double deliveryFee, 
+                                                AID clientAID,
+                                                String conversationId,
+                                                MarketAssignment quotedAssignment,
+                                                AID[] quotedMarkets) {
+        super(agent);
+        this.cfp = cfp;
         this.shoppingList = shoppingList;
         this.deliveryFee = deliveryFee;
         this.clientAID = clientAID;
         this.clientConversationId = conversationId;
+        this.quotedAssignment = quotedAssignment;
+        this.quotedMarkets = quotedMarkets;
         
         String deliveryName = ((DeliveryAgent)myAgent).getDeliveryServiceName();
         this.logger = LoggerUtil.getLogger(
@@ -62,8 +165,8 @@ public class DeliveryContractNetInitiatorBehaviour extends ContractNetInitiator
             cfp.addReceiver(market);
         }
         
-        // Set the content (comma-separated list of items)
-        cfp.setContent(String.join(",", shoppingList));
+        // Set the content (the requested items)
+        Cfp.of(shoppingList).writeTo(cfp);
         
         // Always generate a new unique conversation ID for market communications
         // Store the original client conversation ID in the reply-with field
@@ -75,20 +178,503 @@ public class DeliveryContractNetInitiatorBehaviour extends ContractNetInitiator
             cfp.setReplyWith("client-conversation-" + conversationId);
         }
         
-        // Set a reply deadline (10 seconds)
-        cfp.setReplyByDate(new Date(System.currentTimeMillis() + 10000));
+        // Give the markets as long to reply as their observed latency says they need
+        long replyTimeout = ((DeliveryAgent) agent).getMarketLatency().replyTimeoutMillis(marketAgents);
+        cfp.setReplyByDate(new Date(System.currentTimeMillis() + replyTimeout));
         
         // Get a logger for this static method
         Logger staticLogger = LoggerUtil.getLogger("DeliveryContractNet_Static", "Behaviour");
-        staticLogger.debug("Created CFP message for {} markets with new conversation ID: {}, linked to client conversation: {}, protocol: {}", 
-                          marketAgents.length, marketConversationId, conversationId, cfp.getProtocol());
+        staticLogger.debug("Created CFP message for {} markets with new conversation ID: {}, linked to client conversation: {}, protocol: {}, reply within {} ms", 
+                          marketAgents.length, marketConversationId, conversationId, cfp.getProtocol(), replyTimeout);
         
         return cfp;
     }
 
+    /**
+     * Lets identical concurrent orders share this negotiation. The behaviour registers
+     * itself under the key in the agent's in-flight negotiations until it has sent
+     * its proposal.
+     * 
+     * @param key The normalized shopping list and market set
+     */
+    public void enableCoalescing(String key) {
+        this.coalescingKey = key;
+        ((DeliveryAgent) myAgent).getInFlightNegotiations().put(key, this);
+    }
+    
+    /**
+     * Adds a client conversation that gets the same proposal as the original client.
+     */
+    public void addWaiter(AID client, String conversationId) {
+        waiters.add(new Waiter(client, conversationId));
+        logger.info("Client conversation {} joined negotiation of conversation {} ({} clients waiting)", 
+                   conversationId, clientConversationId, waiters.size() + 1);
+    }
+
+    @Override
+    public void handle(ACLMessage msg) {
+        inbox.add(msg);
+        restart();
+    }
+
+    @Override
+    public void onStart() {
+        activeConversationId = cfp.getConversationId();
+        ((DeliveryAgent) myAgent).getMessageDispatcher().registerConversation(activeConversationId, this);
+        
+        if (quotedAssignment != null) {
+            // Quote the client right away, the markets only confirm the chosen items
+            assignment = quotedAssignment;
+            bestTotalPrice = assignment.getItemsTotal() + deliveryFee;
+            logger.info("Quoted {} markets from the price book, items total {} (conversation: {})", 
+                       assignment.getSelections().size(), assignment.getItemsTotal(), clientConversationId);
+            sendProposalToClient(assignment.isComplete());
+        }
+        
+        Iterator<?> receivers = cfp.getAllReceiver();
+        while (receivers.hasNext()) {
+            pendingReplies.add((AID) receivers.next());
+        }
+        marketCount = pendingReplies.size();
+        if (isEarlyCloseEnabled()) {
+            for (String item : shoppingList) {
+                uncoveredItems.add(item.trim());
+            }
+        }
+        Date replyByDate = cfp.getReplyByDate();
+        replyBy = replyByDate != null ? replyByDate.getTime() : System.currentTimeMillis() + REPLY_TIMEOUT_MS;
+        deadline = replyBy;
+        cfpSentAt = System.nanoTime();
+        myAgent.send(cfp);
+    }
+
     @Override
-    @SuppressWarnings("rawtypes")
-    protected void handlePropose(ACLMessage propose, Vector v) {
+    public void action() {
+        ACLMessage msg;
+        while ((msg = inbox.poll()) != null) {
+            // Markets that answer after an early close only get a rejection
+            if (lateResponders.remove(msg.getSender())) {
+                handleLateResponse(msg);
+                continue;
+            }
+            // Only the first reply of each market in the current round and phase counts
+            if (!activeConversationId.equals(msg.getConversationId()) || !pendingReplies.remove(msg.getSender())) {
+                logger.debug("Ignoring unexpected {} from {} (conversation: {})", 
+                           ACLMessage.getPerformative(msg.getPerformative()), msg.getSender().getLocalName(), clientConversationId);
+                continue;
+            }
+            if (state == STATE_RESPONSES) {
+                recordLatency(msg.getSender());
+                handleResponse(msg);
+            } else if (state == STATE_RECOVERY) {
+                recordLatency(msg.getSender());
+                recoveryResponses.add(msg);
+            } else {
+                handleResultNotification(msg);
+            }
+        }
+        
+        long now = System.currentTimeMillis();
+        if (state == STATE_RESPONSES && canCloseEarly(now)) {
+            closeEarly(now);
+        }
+        
+        long remaining = deadline - now;
+        if (!pendingReplies.isEmpty() && remaining > 0) {
+            // With the basket covered, wake up when the early close grace period ends
+            if (state == STATE_RESPONSES && coveredAt > 0) {
+                remaining = Math.min(remaining, Math.max(1, coveredAt + earlyCloseGraceMillis() - now));
+            }
+            block(remaining);
+            return;
+        }
+        
+        if (state == STATE_RESPONSES) {
+            // Without any proposal, give the silent markets a grace window to still join.
+            // The behaviour just blocks, so the agent keeps serving other conversations
+            if (!graceWindowUsed && !pendingReplies.isEmpty() && !hasProposal()) {
+                graceWindowUsed = true;
+                deadline = System.currentTimeMillis() + LATE_RESPONSE_GRACE_MS;
+                logger.warn("No market proposals received, waiting {} ms for late responses (conversation: {})", 
+                           LATE_RESPONSE_GRACE_MS, clientConversationId);
+                block(LATE_RESPONSE_GRACE_MS);
+                return;
+            }
+            if (!pendingReplies.isEmpty()) {
+                logger.warn("{} markets did not answer the CFP in time (conversation: {})", 
+                           pendingReplies.size(), clientConversationId);
+                MarketLatencyTracker latency = ((DeliveryAgent) myAgent).getMarketLatency();
+                for (AID market : pendingReplies) {
+                    if (latency.recordMiss(market, now)) {
+                        logger.warn("Market {} keeps missing its reply deadline, skipping it for a while", 
+                                   market.getLocalName());
+                    }
+                }
+            }
+            List<ACLMessage> acceptances = new ArrayList<>();
+            handleAllResponses(responses, acceptances);
+            
+            // Wait for the result notifications of the accepted markets
+            pendingReplies.clear();
+            for (ACLMessage acceptance : acceptances) {
+                myAgent.send(acceptance);
+                if (acceptance.getPerformative() == ACLMessage.ACCEPT_PROPOSAL) {
+                    Iterator<?> accepted = acceptance.getAllReceiver();
+                    while (accepted.hasNext()) {
+                        pendingReplies.add((AID) accepted.next());
+                    }
+                }
+            }
+            state = STATE_RESULTS;
+            deadline = System.currentTimeMillis() + REPLY_TIMEOUT_MS;
+            if (!pendingReplies.isEmpty()) {
+                return;
+            }
+        } else if (state == STATE_RECOVERY) {
+            finishRecovery();
+            if (!pendingReplies.isEmpty()) {
+                return;
+            }
+        }
+        
+        // Buy the items of failed markets elsewhere, at most once per negotiation
+        if (!roundFailures.isEmpty()) {
+            if (recoveryCfp == null && startRecovery()) {
+                return;
+            }
+            abandonFailedItems();
+        }
+        
+        // After an early close, keep rejecting late proposals until the reply-by date
+        if (!lateResponders.isEmpty() && now < replyBy) {
+            block(replyBy - now);
+            return;
+        }
+        if (closedEarlyAt > 0) {
+            reportEarlyClose();
+            closedEarlyAt = 0;
+        }
+        
+        handleAllResultNotifications(resultNotifications);
+        state = STATE_DONE;
+    }
+
+    @Override
+    public boolean done() {
+        return state == STATE_DONE;
+    }
+
+    @Override
+    public int onEnd() {
+        DeliveryMessageDispatcherBehaviour dispatcher = ((DeliveryAgent) myAgent).getMessageDispatcher();
+        dispatcher.unregisterConversation(cfp.getConversationId());
+        if (recoveryCfp != null) {
+            dispatcher.unregisterConversation(recoveryCfp.getConversationId());
+        }
+        return super.onEnd();
+    }
+
+    private boolean isEarlyCloseEnabled() {
+        return quotedAssignment == null && ((DeliveryAgent) myAgent).isEarlyClose();
+    }
+    
+    private long earlyCloseGraceMillis() {
+        return ((DeliveryAgent) myAgent).getEarlyCloseGraceMs();
+    }
+    
+    /**
+     * Whether the proposals cover the basket and the quorum or grace period is reached.
+     */
+    private boolean canCloseEarly(long now) {
+        if (coveredAt == 0 || pendingReplies.isEmpty()) {
+            return false;
+        }
+        int quorum = ((DeliveryAgent) myAgent).getEarlyCloseQuorum();
+        return (quorum > 0 && responses.size() >= quorum) || now >= coveredAt + earlyCloseGraceMillis();
+    }
+    
+    private void closeEarly(long now) {
+        closedEarlyAt = now;
+        lateResponders.addAll(pendingReplies);
+        pendingReplies.clear();
+        logger.info("Basket covered, closing the round early with {} of {} market responses after {} ms (conversation: {})", 
+                   responses.size(), marketCount, (System.nanoTime() - cfpSentAt) / 1000000, clientConversationId);
+    }
+    
+    /**
+     * Removes the items of a proposal from the items not offered yet.
+     */
+    private void updateCoverage(Quote quote) {
+        if (uncoveredItems.isEmpty()) {
+            return;
+        }
+        for (String item : quote.getPrices().keySet()) {
+            uncoveredItems.remove(item);
+        }
+        if (uncoveredItems.isEmpty()) {
+            coveredAt = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * Rejects the answer of a market that came after the early close, noting by how much
+     * its prices would have lowered the chosen items.
+     */
+    private void handleLateResponse(ACLMessage response) {
+        recordLatency(response.getSender());
+        lastLateResponseAt = System.currentTimeMillis();
+        if (response.getPerformative() != ACLMessage.PROPOSE) {
+            return;
+        }
+        Quote quote = readQuote(response);
+        if (quote == null) {
+            return;
+        }
+        lateProposalCount++;
+        offers.put(response.getSender(), quote);
+        // Count what the offer saves on the chosen price now, the item may be lost later
+        for (Map.Entry<String, Double> offer : quote.getPrices().entrySet()) {
+            Double chosen = assignment.getItemPrices().get(offer.getKey());
+            if (chosen == null) {
+                continue;
+            }
+            double previous = Math.min(chosen, bestLatePrices.getOrDefault(offer.getKey(), chosen));
+            if (offer.getValue() < previous) {
+                forgoneTotal += previous - offer.getValue();
+                bestLatePrices.put(offer.getKey(), offer.getValue());
+            }
+        }
+        ACLMessage reject = response.createReply();
+        reject.setPerformative(ACLMessage.REJECT_PROPOSAL);
+        myAgent.send(reject);
+        logger.info("Rejecting late proposal from {} (conversation: {})", 
+                   response.getSender().getLocalName(), clientConversationId);
+    }
+    
+    /**
+     * Logs the waiting time the early close saved against the price it may have cost.
+     */
+    private void reportEarlyClose() {
+        MarketLatencyTracker latency = ((DeliveryAgent) myAgent).getMarketLatency();
+        long now = System.currentTimeMillis();
+        for (AID market : lateResponders) {
+            latency.recordMiss(market, now);
+        }
+        long fullRoundEnd = lateResponders.isEmpty() ? lastLateResponseAt : replyBy;
+        logger.info("Early close saved {} ms of waiting; {} late proposals rejected, {} markets never answered, "
+                   + "the late proposals would have lowered the items total by {} (conversation: {})", 
+                   Math.max(0, fullRoundEnd - closedEarlyAt), lateProposalCount, lateResponders.size(), 
+                   forgoneTotal, clientConversationId);
+        lateResponders.clear();
+    }
+    
+    /**
+     * Reads the quote of a proposal.
+     *
+     * @return The quote, or null if the content is unreadable
+     */
+    private Quote readQuote(ACLMessage propose) {
+        try {
+            return Quote.from(propose);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring unreadable proposal from {}: {} (conversation: {})", 
+                       propose.getSender().getLocalName(), e.getMessage(), clientConversationId);
+            return null;
+        }
+    }
+    
+    /**
+     * Records how long a market took to answer the CFP.
+     */
+    private void recordLatency(AID market) {
+        MarketLatencyTracker latency = ((DeliveryAgent) myAgent).getMarketLatency();
+        long latencyMicros = (System.nanoTime() - cfpSentAt) / 1000;
+        long now = System.currentTimeMillis();
+        if (now <= replyBy) {
+            latency.recordResponse(market, latencyMicros);
+        } else if (latency.recordLateResponse(market, latencyMicros, now)) {
+            logger.warn("Market {} keeps missing its reply deadline, skipping it for a while", 
+                       market.getLocalName());
+        }
+    }
+
+    private boolean hasProposal() {
+        for (ACLMessage response : responses) {
+            if (response.getPerformative() == ACLMessage.PROPOSE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handleResponse(ACLMessage response) {
+        switch (response.getPerformative()) {
+            case ACLMessage.PROPOSE:
+                handlePropose(response);
+                Quote quote = readQuote(response);
+                if (quote != null) {
+                    offers.put(response.getSender(), quote);
+                    updateCoverage(quote);
+                }
+                break;
+            case ACLMessage.REFUSE:
+                handleRefuse(response);
+                break;
+            case ACLMessage.FAILURE:
+                handleFailure(response);
+                break;
+            default:
+                logger.warn("Unexpected {} from {} (conversation: {})", 
+                           ACLMessage.getPerformative(response.getPerformative()), 
+                           response.getSender().getLocalName(), clientConversationId);
+        }
+        responses.add(response);
+    }
+
+    private void handleResultNotification(ACLMessage notification) {
+        if (notification.getPerformative() == ACLMessage.INFORM) {
+            handleInform(notification);
+        } else {
+            handleFailure(notification);
+            MarketAssignment.Selection selection = assignment.getSelection(notification.getSender().getName());
+            if (notification.getPerformative() == ACLMessage.FAILURE && selection != null) {
+                recordFailure(selection.getMarket(), selection.getItems());
+                failedMarkets.add(selection.getMarket());
+            }
+        }
+        resultNotifications.add(notification);
+    }
+
+    /**
+     * Records items of a market that have to be bought elsewhere.
+     */
+    private void recordFailure(String market, List<String> items) {
+        if (roundFailures.isEmpty()) {
+            firstFailureAt = System.nanoTime();
+        }
+        roundFailures.put(market, items);
+    }
+
+    /**
+     * Sends a CFP for the items of the failed markets to the other markets that offered
+     * any of them in this negotiation, and for a quoted assignment also to the quoted
+     * markets that carry them.
+     *
+     * @return false if no other market offered the items
+     */
+    private boolean startRecovery() {
+        Set<String> items = new LinkedHashSet<>();
+        for (List<String> failedItems : roundFailures.values()) {
+            items.addAll(failedItems);
+        }
+        List<AID> candidates = new ArrayList<>();
+        for (Map.Entry<AID, Quote> offer : offers.entrySet()) {
+            if (!failedMarkets.contains(offer.getKey().getName())
+                    && !Collections.disjoint(offer.getValue().getPrices().keySet(), items)) {
+                candidates.add(offer.getKey());
+            }
+        }
+        if (quotedAssignment != null) {
+            // Only the chosen markets were asked, also ask the other quoted markets that carry the items
+            String[] itemList = items.toArray(new String[0]);
+            for (AID market : ((DeliveryAgent) myAgent).getMarketItemIndex().filter(quotedMarkets, itemList)) {
+                if (!failedMarkets.contains(market.getName()) && !candidates.contains(market)) {
+                    candidates.add(market);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            logger.warn("No other market offered {} (conversation: {})", items, clientConversationId);
+            return false;
+        }
+        
+        recoveryCfp = createCFP(myAgent, candidates.toArray(new AID[0]), items.toArray(new String[0]), clientConversationId);
+        activeConversationId = recoveryCfp.getConversationId();
+        ((DeliveryAgent) myAgent).getMessageDispatcher().registerConversation(activeConversationId, this);
+        pendingReplies.clear();
+        pendingReplies.addAll(candidates);
+        replyBy = recoveryCfp.getReplyByDate().getTime();
+        deadline = replyBy;
+        state = STATE_RECOVERY;
+        logger.info("Markets {} failed, re-negotiating {} with {} markets (conversation: {})", 
+                   roundFailures.keySet(), items, candidates.size(), clientConversationId);
+        cfpSentAt = System.nanoTime();
+        myAgent.send(recoveryCfp);
+        return true;
+    }
+
+    /**
+     * Chooses among the recovery proposals, accepts them and sends the clients the
+     * updated proposal.
+     */
+    private void finishRecovery() {
+        DeliveryAgent deliveryAgent = (DeliveryAgent) myAgent;
+        MarketLatencyTracker latency = deliveryAgent.getMarketLatency();
+        long now = System.currentTimeMillis();
+        for (AID market : pendingReplies) {
+            latency.recordMiss(market, now);
+        }
+        
+        String[] items = Cfp.from(recoveryCfp).getItems().toArray(new String[0]);
+        QuoteSnapshot.Builder quotes = QuoteSnapshot.builder(ItemDictionary.shared(), items);
+        for (ACLMessage response : recoveryResponses) {
+            Quote quote = response.getPerformative() == ACLMessage.PROPOSE ? readQuote(response) : null;
+            if (quote != null) {
+                quotes.beginMarket(response.getSender().getName());
+                for (Map.Entry<String, Double> offer : quote.getPrices().entrySet()) {
+                    quotes.offer(offer.getKey(), offer.getValue());
+                }
+            }
+        }
+        MarketAssignment recovered = deliveryAgent.getSelectionStrategy().select(quotes.build());
+        assignment = assignment.replaceItems(roundFailures, recovered);
+        bestTotalPrice = assignment.getItemsTotal() + deliveryFee;
+        
+        pendingReplies.clear();
+        for (ACLMessage response : recoveryResponses) {
+            if (response.getPerformative() != ACLMessage.PROPOSE) {
+                continue;
+            }
+            ACLMessage reply = response.createReply();
+            MarketAssignment.Selection selection = recovered.getSelection(response.getSender().getName());
+            if (selection != null) {
+                reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+                new Cfp(selection.getItems()).writeTo(reply);
+                pendingReplies.add(response.getSender());
+                logger.info("Accepting recovery proposal from {} for items: {}", 
+                           response.getSender().getLocalName(), selection.getItems());
+            } else {
+                reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
+            }
+            myAgent.send(reply);
+        }
+        state = STATE_RESULTS;
+        deadline = now + REPLY_TIMEOUT_MS;
+        
+        long elapsed = (System.nanoTime() - firstFailureAt) / 1000000;
+        RecoveryMetrics metrics = deliveryAgent.getRecoveryMetrics();
+        metrics.record(recovered.getItemPrices().size(), assignment.isComplete(), elapsed);
+        logger.info("Recovered {} of {} items in {} ms, new total {} (conversation: {})", 
+                   recovered.getItemPrices().size(), items.length, elapsed, bestTotalPrice, clientConversationId);
+        roundFailures.clear();
+        sendProposalToClient(assignment.isComplete());
+    }
+
+    /**
+     * Marks the items of the failed markets unavailable and tells the clients.
+     */
+    private void abandonFailedItems() {
+        assignment = assignment.replaceItems(roundFailures, new MarketAssignment());
+        bestTotalPrice = assignment.getItemsTotal() + deliveryFee;
+        ((DeliveryAgent) myAgent).getRecoveryMetrics().record(
+            0, false, (System.nanoTime() - firstFailureAt) / 1000000);
+        logger.warn("Could not recover the items of {}, now unavailable: {} (conversation: {})", 
+                   roundFailures.keySet(), assignment.getUnavailableItems(), clientConversationId);
+        roundFailures.clear();
+        sendProposalToClient(false);
+    }
+
+    protected void handlePropose(ACLMessage propose) {
         String marketName = propose.getSender().getLocalName();
         String clientRef = propose.getInReplyTo(); // Get the original client reference if available
         
@@ -96,7 +682,6 @@ public class DeliveryContractNetInitiatorBehaviour extends ContractNetInitiator
                 marketName, propose.getConversationId(), clientRef);
     }
 
-    @Override
     protected void handleRefuse(ACLMessage refuse) {
         String marketName = refuse.getSender().getLocalName();
         String clientRef = refuse.getInReplyTo(); // Get the original client reference if available
@@ -105,7 +690,6 @@ public class DeliveryContractNetInitiatorBehaviour extends ContractNetInitiator
                 marketName, refuse.getConversationId(), clientRef);
     }
 
-    @Override
     protected void handleFailure(ACLMessage failure) {
         String marketName = failure.getSender().getLocalName();
         String clientRef = failure.getInReplyTo(); // Get the original client reference if available
@@ -114,7 +698,6 @@ public class DeliveryContractNetInitiatorBehaviour extends ContractNetInitiator
                 marketName, failure.getConversationId(), clientRef);
     }
 
-    @Override
     protected void handleInform(ACLMessage inform) {
         String marketName = inform.getSender().getLocalName();
         String clientRef = inform.getInReplyTo(); // Get the original client reference if available
@@ -123,284 +706,234 @@ public class DeliveryContractNetInitiatorBehaviour extends ContractNetInitiator
                 marketName, inform.getConversationId(), clientRef);
     }
 
-    @Override
-    @SuppressWarnings("rawtypes") // Required to match parent class signature
-    protected void handleAllResponses(Vector responses, Vector acceptances) {
-        // Process market responses according to the algorithm in the task
-        // 1. Initially try to select all items from the market with the largest number available
-        // 2. If multiple markets have the same count, choose the one with lowest price
-        // 3. If not all items can be selected from one place, repeat for missing items
+    protected void handleAllResponses(List<ACLMessage> responses, List<ACLMessage> acceptances) {
+        // Parse the market responses into a snapshot and let the configured
+        // MarketSelectionStrategy of this delivery service choose the markets
         
         logger.info("Processing {} market responses (conversation: {})", responses.size(), clientConversationId);
         
-        // Add a delay to ensure all responses are collected
+        if (quotedAssignment != null) {
+            confirmQuotedAssignment(responses, acceptances);
+            return;
+        }
+        
         if (responses.isEmpty()) {
-            logger.warn("No market responses received, waiting longer for responses (conversation: {})", clientConversationId);
-            try {
-                Thread.sleep(2000); // Wait an additional 2 seconds for late responses
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            
-            // Re-check if any responses arrived after waiting
-            if (responses.isEmpty()) {
-                logger.warn("Still no market responses after waiting (conversation: {})", clientConversationId);
+            if (graceWindowUsed) {
+                logger.warn("Still no market responses after the grace window (conversation: {})", clientConversationId);
+            } else {
+                logger.warn("No market responses received (conversation: {})", clientConversationId);
             }
         }
         
-        logger.info("Starting the algorithm: 1) Select market with most items, 2) Tie-break by price, 3) Repeat for remaining items");
-        
-        // Extract all available items from all markets
-        Map<AID, Map<String, Double>> marketItemPrices = new HashMap<>();
+        // Intern all offered items and collect them into a snapshot, in response order
+        QuoteSnapshot.Builder quotes = QuoteSnapshot.builder(ItemDictionary.shared(), shoppingList);
         
         // Parse all proposals
-        for (Object obj : responses) {
-            ACLMessage response = (ACLMessage) obj;
-            
-            if (response.getPerformative() == ACLMessage.PROPOSE) {
+        for (ACLMessage response : responses) {
+            Quote quote = offers.get(response.getSender());
+            if (response.getPerformative() == ACLMessage.PROPOSE && quote != null) {
                 AID marketAID = response.getSender();
-                String content = response.getContent();
                 
-                logger.debug("Parsing proposal from {}: {}", marketAID.getLocalName(), content);
+                logger.debug("Parsing proposal from {}: {}", marketAID.getLocalName(), quote);
                 
-                // Parse the proposal content (format: count|totalPrice|item1:price1,item2:price2,...)
-                String[] parts = content.split("\\|", 3);
-                if (parts.length == 3) {
-                    String itemsList = parts[2];
-                    
-                    // Parse individual items
-                    Map<String, Double> itemPrices = new HashMap<>();
-                    for (String itemPrice : itemsList.split(",")) {
-                        String[] itemParts = itemPrice.split(":");
-                        if (itemParts.length == 2) {
-                            String item = itemParts[0];
-                            double price = Double.parseDouble(itemParts[1]);
-                            itemPrices.put(item, price);
-                            logger.debug("Market {} has {} for {}", marketAID.getLocalName(), item, price);
-                        }
-                    }
-                    
-                    marketItemPrices.put(marketAID, itemPrices);
+                quotes.beginMarket(marketAID.getName());
+                for (Map.Entry<String, Double> offer : quote.getPrices().entrySet()) {
+                    quotes.offer(offer.getKey(), offer.getValue());
+                    logger.debug("Market {} has {} for {}", marketAID.getLocalName(), offer.getKey(), offer.getValue());
                 }
             }
         }
+        QuoteSnapshot snapshot = quotes.build();
         
-        // Create a list of all items needed
-        Set<String> remainingItems = new HashSet<>(Arrays.asList(shoppingList));
+        logger.info("Need to find {} items: {}", shoppingList.length, Arrays.toString(shoppingList));
         
-        logger.info("Need to find {} items: {}", remainingItems.size(), remainingItems);
-        
-        // Clear results from previous runs
-        selectedMarkets.clear();
-        finalItemPrices.clear();
-        unavailableItems.clear();
-        
-        // Keep selecting markets until all items are found or no more markets are available
-        int iterationCount = 0;
-        while (!remainingItems.isEmpty() && !marketItemPrices.isEmpty()) {
-            iterationCount++;
-            logger.info("Iteration {} - Finding best market for remaining items: {}", iterationCount, remainingItems);
-            
-            // Find market with the most available items from the remaining items list
-            AID bestMarketAID = null;
-            int maxAvailableItems = 0;
-            double lowestTotalPrice = Double.MAX_VALUE;
-            Map<String, Double> bestMarketItems = null;
-            Set<String> bestMarketAvailableItems = null;
-            
-            // First, evaluate each market
-            for (Map.Entry<AID, Map<String, Double>> entry : marketItemPrices.entrySet()) {
-                AID marketAID = entry.getKey();
-                Map<String, Double> marketItems = entry.getValue();
-                
-                // Count how many remaining items this market has
-                Set<String> availableItems = new HashSet<>();
-                double totalPrice = 0.0;
-                
-                for (String item : remainingItems) {
-                    if (marketItems.containsKey(item)) {
-                        availableItems.add(item);
-                        totalPrice += marketItems.get(item);
-                    }
-                }
-                
-                int availableCount = availableItems.size();
-                
-                logger.info("Market {} has {} of the needed items for total price {}", marketAID.getLocalName(), availableCount, totalPrice);
-                
-                // Rule 1: Choose market with most items
-                if (availableCount > maxAvailableItems) {
-                    maxAvailableItems = availableCount;
-                    lowestTotalPrice = totalPrice;
-                    bestMarketAID = marketAID;
-                    bestMarketItems = marketItems;
-                    bestMarketAvailableItems = new HashSet<>(availableItems);
-                    logger.info("New best market: {} with {} items (most items rule)", marketAID.getLocalName(), availableCount);
-                }
-                // Rule 2: If same number of items, choose cheapest
-                else if (availableCount == maxAvailableItems && availableCount > 0 && totalPrice < lowestTotalPrice) {
-                    lowestTotalPrice = totalPrice;
-                    bestMarketAID = marketAID;
-                    bestMarketItems = marketItems;
-                    bestMarketAvailableItems = new HashSet<>(availableItems);
-                    logger.info("New best market: {} with lower price {} (price tie-breaker rule)", marketAID.getLocalName(), totalPrice);
-                }
-            }
-            
-            // If no market has any of the remaining items, break
-            if (bestMarketAID == null || maxAvailableItems == 0) {
-                logger.info("No markets have the remaining items: {}", remainingItems);
-                unavailableItems.addAll(remainingItems);
-                break;
-            }
-            
-            // Process the selected market
-            logger.info("SELECTING market {} for {} items with total price {}", bestMarketAID.getLocalName(), bestMarketAvailableItems.size(), lowestTotalPrice);
-            
-            // Build the list of items to get from this market
-            StringBuilder selectedItems = new StringBuilder();
-            boolean first = true;
-            
-            for (String item : bestMarketAvailableItems) {
-                // Add this item to our final selection
-                Double price = bestMarketItems.get(item);
-                finalItemPrices.put(item, price);
-                
-                // Add to the selected items string
-                if (!first) {
-                    selectedItems.append(",");
-                }
-                selectedItems.append(item);
-                first = false;
-                
-                // Remove from remaining items
-                remainingItems.remove(item);
-                
-                logger.info("Adding {} from {} at price {}", item, bestMarketAID.getLocalName(), price);
-            }
-            
-            // Add this market to selected markets
-            selectedMarkets.add(new AbstractMap.SimpleEntry<>(bestMarketAID, selectedItems.toString()));
-            
-            // Remove this market from consideration for next iterations
-            marketItemPrices.remove(bestMarketAID);
-            
-            logger.info("Remaining items to find: {}", remainingItems);
-        }
-        
-        // Any items still in remaining items are unavailable
-        unavailableItems.addAll(remainingItems);
+        DeliveryAgent deliveryAgent = (DeliveryAgent) myAgent;
+        MarketSelectionStrategy strategy = deliveryAgent.getSelectionStrategy();
+        long selectionStarted = System.nanoTime();
+        assignment = deliveryAgent.selectMarkets(snapshot);
+        logger.info("Strategy {} selected {} markets, items total {} in {} us", 
+                   strategy.getName(), assignment.getSelections().size(), assignment.getItemsTotal(), 
+                   (System.nanoTime() - selectionStarted) / 1000);
         
         // Calculate the total price plus delivery fee
-        bestTotalPrice = finalItemPrices.values().stream().mapToDouble(Double::doubleValue).sum() + deliveryFee;
+        bestTotalPrice = assignment.getItemsTotal() + deliveryFee;
         
         // Provide feedback on partial vs. complete fulfillment
-        boolean canFulfillOrder = unavailableItems.isEmpty();
+        boolean canFulfillOrder = assignment.isComplete();
         String fulfillmentStatus = canFulfillOrder ? "COMPLETE" : "FAILURE";
         
         logger.info("====== ORDER SUMMARY ======");
-        logger.info("Items found: {}", finalItemPrices.keySet());
-        logger.info("Items unavailable: {}", unavailableItems);
+        logger.info("Items found: {}", assignment.getItemPrices().keySet());
+        logger.info("Items unavailable: {}", assignment.getUnavailableItems());
         logger.info("Total price (incl. delivery fee): {}", bestTotalPrice);
         logger.info("Order fulfillment: {}", fulfillmentStatus);
         logger.info("Selected markets: ");
-        for (Map.Entry<AID, String> market : selectedMarkets) {
-            logger.info("  - {} : {}", market.getKey().getLocalName(), market.getValue());
+        for (MarketAssignment.Selection selection : assignment.getSelections()) {
+            logger.info("  - {} : {}", selection.getMarket(), selection.getItems());
         }
         logger.info("===============================");
         
         // Create acceptance or rejection messages for each market
-        for (Object obj : responses) {
-            ACLMessage response = (ACLMessage) obj;
+        for (ACLMessage response : responses) {
             ACLMessage reply = response.createReply();
             
             // Find if this market is selected
-            Optional<Map.Entry<AID, String>> selectedMarket = selectedMarkets.stream()
-                .filter(entry -> entry.getKey().equals(response.getSender()))
-                .findFirst();
+            MarketAssignment.Selection selectedMarket = assignment.getSelection(response.getSender().getName());
             
-            if (selectedMarket.isPresent() && response.getPerformative() == ACLMessage.PROPOSE) {
+            if (selectedMarket != null && response.getPerformative() == ACLMessage.PROPOSE) {
                 // Accept this proposal
                 reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
-                reply.setContent(selectedMarket.get().getValue()); // The items we want
-                logger.info("Accepting proposal from {} for items: {}", response.getSender().getLocalName(), selectedMarket.get().getValue());
+                new Cfp(selectedMarket.getItems()).writeTo(reply); // The items we want
+                logger.info("Accepting proposal from {} for items: {}", response.getSender().getLocalName(), selectedMarket.getItems());
             } else if (response.getPerformative() == ACLMessage.PROPOSE) {
                 // Reject this proposal
                 reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
                 logger.info("Rejecting proposal from {}", response.getSender().getLocalName());
             }
             
-            @SuppressWarnings("unchecked")
-            Vector<ACLMessage> typedAcceptances = acceptances;
-            typedAcceptances.add(reply);
+            acceptances.add(reply);
         }
         
-        // After processing all responses, prepare to respond to the client
-        myAgent.addBehaviour(new OneShotBehaviour() {
-            @Override
-            public void action() {
-                sendProposalToClient(canFulfillOrder);
+        // Respond to the client now: when every market refused, this negotiation ends
+        // with this step and could not send a proposal from a later behaviour
+        sendProposalToClient(canFulfillOrder);
+    }
+
+    /**
+     * Accepts from every chosen market the quoted items it proposed again at the quoted
+     * price. The other quoted items, and all items of chosen markets that refused or did
+     * not answer, are recorded as failed so they are bought elsewhere.
+     */
+    private void confirmQuotedAssignment(List<ACLMessage> responses, List<ACLMessage> acceptances) {
+        Set<String> proposed = new HashSet<>();
+        
+        for (ACLMessage response : responses) {
+            if (response.getPerformative() != ACLMessage.PROPOSE) {
+                continue;
+            }
+            ACLMessage reply = response.createReply();
+            MarketAssignment.Selection selection = assignment.getSelection(response.getSender().getName());
+            List<String> confirmed = new ArrayList<>();
+            
+            if (selection != null) {
+                proposed.add(selection.getMarket());
+                
+                // Compare the proposal with the quoted prices
+                Quote quote = offers.get(response.getSender());
+                Map<String, Double> offered = quote != null ? quote.getPrices() : Collections.emptyMap();
+                List<String> changed = new ArrayList<>();
+                for (String item : selection.getItems()) {
+                    Double price = offered.get(item);
+                    if (price != null && price.equals(assignment.getItemPrices().get(item))) {
+                        confirmed.add(item);
+                    } else {
+                        changed.add(item);
+                        logger.warn("{} no longer offers {} at the quoted price {} (offered: {})", 
+                                   response.getSender().getLocalName(), item, assignment.getItemPrices().get(item), price);
+                    }
+                }
+                if (!changed.isEmpty()) {
+                    recordFailure(selection.getMarket(), changed);
+                }
+            }
+            
+            if (!confirmed.isEmpty()) {
+                reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+                new Cfp(confirmed).writeTo(reply);
+                logger.info("Confirming quoted items with {}: {}", response.getSender().getLocalName(), confirmed);
+            } else {
+                reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
+            }
+            acceptances.add(reply);
+        }
+        
+        for (MarketAssignment.Selection selection : assignment.getSelections()) {
+            if (!proposed.contains(selection.getMarket())) {
+                logger.warn("Market {} did not confirm quoted items {} (conversation: {})", 
+                           selection.getMarket(), selection.getItems(), clientConversationId);
+                recordFailure(selection.getMarket(), selection.getItems());
+                failedMarkets.add(selection.getMarket());
             }
-        });
+        }
     }
 
-    @Override
-    @SuppressWarnings("rawtypes")
-    protected void handleAllResultNotifications(Vector resultNotifications) {
+    protected void handleAllResultNotifications(List<ACLMessage> resultNotifications) {
         logger.info("All markets have processed the order");        
     }
 
     private void sendProposalToClient(boolean isSuccess) {
+        // Close the negotiation for new clients, later orders start their own
+        if (coalescingKey != null) {
+            ((DeliveryAgent) myAgent).getInFlightNegotiations().remove(coalescingKey, this);
+        }
+        
         ACLMessage proposal = new ACLMessage(ACLMessage.PROPOSE);
         proposal.addReceiver(clientAID);
         
         // Use the original client conversation ID for client communication
         proposal.setConversationId(clientConversationId);
         
-        // Format the message to the client
-        StringBuilder content = new StringBuilder();
-        
         // Only mark SUCCESS for complete orders, FAILURE for partial and empty orders
         if (isSuccess) {
-            content.append("SUCCESS");
-            logger.info("Sending SUCCESS proposal with complete order ({} items, conversation: {})", finalItemPrices.size(), clientConversationId);
+            logger.info("Sending SUCCESS proposal with complete order ({} items, conversation: {})", assignment.getItemPrices().size(), clientConversationId);
         } else {
-            content.append("FAILURE");
-            if (!finalItemPrices.isEmpty()) {
+            if (!assignment.getItemPrices().isEmpty()) {
                 logger.info("Sending FAILURE proposal for partial order, found {} items but missing {} items (conversation: {})",
-                        finalItemPrices.size(), unavailableItems.size(), clientConversationId);
+                        assignment.getItemPrices().size(), assignment.getUnavailableItems().size(), clientConversationId);
             } else {
                 logger.info("Sending FAILURE proposal, couldn't find any items (conversation: {})", clientConversationId);
             }
         }
         
-        // Add total price
-        content.append("|").append(bestTotalPrice);
+        // Set message content: status, total price, the found items with their prices
+        // and the unavailable items
+        new ClientProposal(isSuccess, bestTotalPrice, assignment.getItemPrices(), 
+                           assignment.getUnavailableItems()).writeTo(proposal);
+        
+        // Send reply to client, its conversation now waits for payment or rejection.
+        // An updated proposal only goes to clients that have not answered yet
+        ConversationTable conversations = ((DeliveryAgent) myAgent).getConversationTable();
+        long now = System.currentTimeMillis();
+        String kind = proposalSent ? "updated proposal" : "proposal";
+        boolean update = proposalSent;
+        proposalSent = true;
+        if (update && !conversations.contains(ConversationTable.key(clientAID.getLocalName(), clientConversationId))) {
+            logger.warn("Client {} already answered, not sending the updated proposal (conversation: {})", 
+                       clientAID.getLocalName(), clientConversationId);
+        } else {
+            myAgent.send(proposal);
+            conversations.update(ConversationTable.key(clientAID.getLocalName(), clientConversationId), 
+                                 ConversationTable.State.PROPOSED, now);
+            logger.info("Sent {} to client {} with total price: {} (conversation: {})", kind, clientAID.getLocalName(), bestTotalPrice, clientConversationId);
+        }
         
-        // Add available items and their prices
-        content.append("|");
-        if (!finalItemPrices.isEmpty()) {
-            boolean first = true;
-            for (Map.Entry<String, Double> entry : finalItemPrices.entrySet()) {
-                if (!first) {
-                    content.append(",");
-                }
-                content.append(entry.getKey()).append(":").append(entry.getValue());
-                first = false;
+        // Fan the same proposal out to the clients that joined this negotiation
+        for (Waiter waiter : waiters) {
+            if (update && !conversations.contains(ConversationTable.key(waiter.client.getLocalName(), waiter.conversationId))) {
+                continue;
             }
+            ACLMessage copy = new ACLMessage(ACLMessage.PROPOSE);
+            copy.addReceiver(waiter.client);
+            copy.setConversationId(waiter.conversationId);
+            copy.setByteSequenceContent(proposal.getByteSequenceContent());
+            myAgent.send(copy);
+            conversations.update(ConversationTable.key(waiter.client.getLocalName(), waiter.conversationId), 
+                                 ConversationTable.State.PROPOSED, now);
+            logger.info("Sent shared {} to client {} with total price: {} (conversation: {})", 
+                       kind, waiter.client.getLocalName(), bestTotalPrice, waiter.conversationId);
         }
+    }
+    
+    /**
+     * A client conversation waiting for the result of a shared negotiation.
+     */
+    private static final class Waiter {
+        final AID client;
+        final String conversationId;
         
-        // Add unavailable items
-        content.append("|");
-        if (!unavailableItems.isEmpty()) {
-            content.append(String.join(",", unavailableItems));
+        Waiter(AID client, String conversationId) {
+            this.client = client;
+            this.conversationId = conversationId;
         }
-        
-        // Set message content
-        proposal.setContent(content.toString());
-        
-        // Send reply to client
-        myAgent.send(proposal);
-        logger.info("Sent proposal to client {} with total price: {} (conversation: {})", clientAID.getLocalName(), bestTotalPrice, clientConversationId);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.example.grocerydelivery.behaviours;
+
+import com.example.grocerydelivery.utils.LoggerUtil;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass message dispatcher for the DeliveryAgent.
+ *
+ * Each action takes every routable message out of the mailbox in one scan and hands it
+ * to a handler found by hash lookup: first by conversation id (market negotiations),
+ * then by performative (client requests, payments and rejections). Contract Net replies
+ * for a conversation that is no longer registered are dropped. Messages without a
+ * handler, such as the DF and price subscription notifications, stay in the mailbox
+ * for the JADE protocol behaviours that wait for them.
+ */
+public class DeliveryMessageDispatcherBehaviour extends CyclicBehaviour {
+
+    /**
+     * Receives the messages routed to it by the dispatcher.
+     */
+    public interface Handler {
+        void handle(ACLMessage msg);
+    }
+
+    private final Logger logger;
+    private final Map<String, Handler> conversationHandlers = new HashMap<>();
+    private final Map<Integer, Handler> performativeHandlers = new HashMap<>();
+    private final MessageTemplate routable = new MessageTemplate(this::isRoutable);
+
+    private long dispatchedCount = 0;
+    private long droppedCount = 0;
+
+    public DeliveryMessageDispatcherBehaviour(Agent agent, String serviceName) {
+        super(agent);
+        this.logger = LoggerUtil.getLogger(
+            "DeliveryMessageDispatcher_" + serviceName, "Behaviour");
+        logger.info("DeliveryMessageDispatcherBehaviour initialized for {}", serviceName);
+    }
+
+    /**
+     * Routes all messages of a conversation to a handler until it is unregistered.
+     */
+    public void registerConversation(String conversationId, Handler handler) {
+        conversationHandlers.put(conversationId, handler);
+    }
+
+    public void unregisterConversation(String conversationId) {
+        conversationHandlers.remove(conversationId);
+    }
+
+    /**
+     * Routes messages of a performative that belong to no registered conversation.
+     */
+    public void registerPerformative(int performative, Handler handler) {
+        performativeHandlers.put(performative, handler);
+    }
+
+    @Override
+    public void action() {
+        // One scan of the mailbox takes out everything that is routable right now
+        int queued = myAgent.getCurQueueSize();
+        List<ACLMessage> batch = queued > 0 ? myAgent.receive(routable, queued) : null;
+        if (batch == null || batch.isEmpty()) {
+            block();
+            return;
+        }
+
+        for (ACLMessage msg : batch) {
+            Handler handler = handlerFor(msg);
+            if (handler != null) {
+                dispatchedCount++;
+                handler.handle(msg);
+            } else {
+                droppedCount++;
+                logger.debug("Dropped late {} from {} (conversation: {})",
+                           ACLMessage.getPerformative(msg.getPerformative()),
+                           msg.getSender().getLocalName(), msg.getConversationId());
+            }
+        }
+    }
+
+    private boolean isRoutable(ACLMessage msg) {
+        return handlerFor(msg) != null
+            || FIPANames.InteractionProtocol.FIPA_CONTRACT_NET.equals(msg.getProtocol());
+    }
+
+    private Handler handlerFor(ACLMessage msg) {
+        String conversationId = msg.getConversationId();
+        Handler handler = conversationId != null ? conversationHandlers.get(conversationId) : null;
+        return handler != null ? handler : performativeHandlers.get(msg.getPerformative());
+    }
+
+    /**
+     * Gets the number of conversations currently routed by id.
+     */
+    public int getConversationCount() {
+        return conversationHandlers.size();
+    }
+
+    /**
+     * Gets the number of messages handed to a handler.
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    /**
+     * Gets the number of late Contract Net replies that were dropped.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -1,34 +1,43 @@
 package com.example.grocerydelivery.behaviours;
 
 import com.example.grocerydelivery.agents.DeliveryAgent;
+import com.example.grocerydelivery.codec.ClientProposal;
+import com.example.grocerydelivery.codec.Payment;
+import com.example.grocerydelivery.conversation.ConversationTable;
+import com.example.grocerydelivery.selection.MarketAssignment;
+import com.example.grocerydelivery.selection.QuoteSnapshot;
 import com.example.grocerydelivery.utils.LoggerUtil;
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
-import jade.domain.DFService;
-import jade.domain.FIPAAgentManagement.DFAgentDescription;
-import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
 import org.apache.logging.log4j.Logger;
 
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Behavior for DeliveryAgent to process order requests from clients and 
  * handle the complete order processing workflow.
+ * It never reads the mailbox: the DeliveryMessageDispatcherBehaviour hands it the
+ * client REQUEST, ACCEPT_PROPOSAL and REJECT_PROPOSAL messages.
  */
-public class DeliveryOrderProcessingBehaviour extends CyclicBehaviour {
+public class DeliveryOrderProcessingBehaviour extends CyclicBehaviour
+        implements DeliveryMessageDispatcherBehaviour.Handler {
     
     private final double deliveryFee;
     private final Logger logger;
     
-    // Track active conversation IDs to avoid duplicate processing
-    // Use composite key of clientName:conversationId to distinguish between clients
-    private final Map<String, Boolean> activeConversations = new HashMap<>();
+    // Client requests, payments and rejections handed over by the message dispatcher
+    private final Queue<ACLMessage> inbox = new ArrayDeque<>();
     
     public DeliveryOrderProcessingBehaviour(Agent agent, String serviceName, double fee) {
         super(agent);
@@ -38,204 +47,270 @@ public class DeliveryOrderProcessingBehaviour extends CyclicBehaviour {
         logger.info("DeliveryOrderProcessingBehaviour initialized for {}", serviceName);
     }
     
+    @Override
+    public void handle(ACLMessage msg) {
+        // Hand the message over from the dispatcher and wake this behaviour
+        inbox.add(msg);
+        restart();
+    }
+    
     @Override
     public void action() {
-        // Create templates for different message types to handle each separately
+        ACLMessage msg;
+        while ((msg = inbox.poll()) != null) {
+            switch (msg.getPerformative()) {
+                case ACLMessage.REQUEST:
+                    processOrderRequest(msg);
+                    break;
+                case ACLMessage.ACCEPT_PROPOSAL:
+                    processPayment(msg);
+                    break;
+                case ACLMessage.REJECT_PROPOSAL:
+                    processRejection(msg);
+                    break;
+                default:
+                    logger.warn("Unexpected {} from {}", 
+                               ACLMessage.getPerformative(msg.getPerformative()), msg.getSender().getLocalName());
+            }
+        }
+        block();
+    }
+    
+    private void processOrderRequest(ACLMessage msg) {
+        // Get the conversation ID to track this request
+        String conversationId = msg.getConversationId();
+        
+        AID clientAID = msg.getSender();
+        String clientName = clientAID.getLocalName();
         
-        // 1. Template for new order requests
-        // Process all external REQUEST messages (default behavior)
-        MessageTemplate orderRequestTemplate = MessageTemplate.MatchPerformative(ACLMessage.REQUEST);
-        processOrderRequests(orderRequestTemplate);
+        // Create a composite key using client name and conversation ID
+        String conversationKey = ConversationTable.key(clientName, conversationId);
+        DeliveryAgent deliveryAgent = (DeliveryAgent) myAgent;
+        ConversationTable conversations = deliveryAgent.getConversationTable();
         
-        // 2. Template for payment messages
-        MessageTemplate paymentTemplate = MessageTemplate.MatchPerformative(ACLMessage.ACCEPT_PROPOSAL);
-        processPayments(paymentTemplate);
+        // Open the conversation, skip if we've already processed it for this client
+        if (!conversations.open(conversationKey, System.currentTimeMillis())) {
+            logger.debug("Ignoring duplicate request with ID: {} from client: {}", conversationId, clientName);
+            return;
+        }
         
-        // 3. Template for rejection messages
-        MessageTemplate rejectTemplate = MessageTemplate.MatchPerformative(ACLMessage.REJECT_PROPOSAL);
-        processRejections(rejectTemplate);
+        // Process the request
+        String content = msg.getContent();
         
-        // Block if no messages
-        block();
-    }
-    
-    private void processOrderRequests(MessageTemplate mt) {
-        ACLMessage msg = myAgent.receive(mt);
+        logger.info("Received order request from {}: {}", 
+                   clientName, content);
+        
+        // Parse shopping list
+        String[] shoppingList = content.split(",");
         
-        if (msg != null) {
-            // Get the conversation ID to track this request
-            String conversationId = msg.getConversationId();
+        // If connectedMarkets is specified, use only those markets
+        List<AID> connectedMarkets = deliveryAgent.getConnectedMarkets();
+        AID[] marketAIDs;
+        
+        if (!connectedMarkets.isEmpty()) {
+            // Use only connected markets
+            logger.info("Using {} connected markets for order processing: {}", 
+                       connectedMarkets.size(), 
+                       connectedMarkets.stream()
+                           .map(aid -> aid.getLocalName())
+                           .reduce("", (a, b) -> a.isEmpty() ? b : a + ", " + b));
             
-            // Check if this is a forwarded message from DeliveryClientRequestsServerBehaviour
-            boolean isForwarded = conversationId != null && conversationId.startsWith("forwarded-");
+            marketAIDs = connectedMarkets.toArray(new AID[0]);
+                            
+        } else {
+            // Use all markets registered in the DF, from the subscription-fed cache
+            try {
+                marketAIDs = deliveryAgent.getMarketDirectory().lookup(myAgent);
+                logger.info("Found {} markets for order processing", 
+                           marketAIDs.length);
+                
+            } catch (FIPAException e) {
+                logger.error("FIPA Exception searching for markets", e);
+                
+                // Send failure response to client
+                ACLMessage reply = msg.createReply();
+                reply.setPerformative(ACLMessage.FAILURE);
+                reply.setContent("Error-searching-markets");
+                myAgent.send(reply);
+                
+                // Clean up tracking for this conversation - no further processing
+                conversations.close(conversationKey);
+                return;
+            }
+        }
+        
+        // Only send the CFP to markets that carry at least one requested item
+        int candidateCount = marketAIDs.length;
+        marketAIDs = deliveryAgent.getMarketItemIndex().filter(marketAIDs, shoppingList);
+        if (marketAIDs.length < candidateCount) {
+            logger.info("Sending CFP to {} of {} markets, the others carry none of the items", 
+                       marketAIDs.length, candidateCount);
+        }
+        
+        // Leave out the markets that keep missing their reply deadline
+        int availableCount = marketAIDs.length;
+        marketAIDs = deliveryAgent.getMarketLatency().skipSlow(marketAIDs, System.currentTimeMillis());
+        if (marketAIDs.length < availableCount) {
+            logger.info("Skipping {} slow markets", availableCount - marketAIDs.length);
+        }
+        
+        // With a complete local price book, quote locally and only confirm with the chosen markets
+        QuoteSnapshot localQuotes = deliveryAgent.isLocalQuotes() && marketAIDs.length > 0
+                ? deliveryAgent.getPriceBook().quote(marketAIDs, shoppingList) : null;
+        
+        if (localQuotes != null) {
+            long selectionStarted = System.nanoTime();
+            MarketAssignment assignment = deliveryAgent.selectMarkets(localQuotes);
+            logger.info("Quoted order locally in {} us", (System.nanoTime() - selectionStarted) / 1000);
             
-            // If it's forwarded, get the original conversation ID (remove all forwarded- prefixes)
-            if (isForwarded) {
-                // Handle potentially multiple "forwarded-" prefixes by removing them all
-                while (conversationId.startsWith("forwarded-")) {
-                    conversationId = conversationId.substring("forwarded-".length());
+            List<AID> chosenMarkets = new ArrayList<>();
+            for (AID market : marketAIDs) {
+                if (assignment.getSelection(market.getName()) != null) {
+                    chosenMarkets.add(market);
                 }
             }
             
-            // Skip messages to myself that are not forwarded (to avoid processing duplicates)
-            if (msg.getSender().equals(myAgent.getAID()) && !isForwarded) {
+            if (chosenMarkets.isEmpty()) {
+                marketAIDs = new AID[0];
+            } else {
+                String[] quotedItems = assignment.getItemPrices().keySet().toArray(new String[0]);
+                ACLMessage cfp = DeliveryContractNetInitiatorBehaviour.createCFP(
+                    myAgent, chosenMarkets.toArray(new AID[0]), quotedItems, conversationId);
+                
+                myAgent.addBehaviour(new DeliveryContractNetInitiatorBehaviour(
+                    myAgent, cfp, shoppingList, deliveryFee, clientAID, conversationId, assignment, marketAIDs));
                 return;
             }
-            
-            AID clientAID = msg.getSender();
-            String clientName = clientAID.getLocalName();
-            
-            // Create a composite key using client name and conversation ID
-            String conversationKey = clientName + ":" + conversationId;
-            
-            // Skip if we've already processed this conversation for this client
-            if (activeConversations.containsKey(conversationKey)) {
-                logger.debug("Ignoring duplicate request with ID: {} from client: {}", conversationId, clientName);
+        }
+        
+        if (marketAIDs.length > 0) {
+            // Share the negotiation of an identical order that is still in flight. Not with
+            // markets that may track stock: their units would be sold once per waiting client
+            boolean coalesce = !deliveryAgent.getMarketItemIndex().tracksStock(marketAIDs);
+            String coalescingKey = coalesce ? coalescingKey(shoppingList, marketAIDs) : null;
+            DeliveryContractNetInitiatorBehaviour inFlight = coalesce 
+                    ? deliveryAgent.getInFlightNegotiations().get(coalescingKey) : null;
+            if (inFlight != null) {
+                inFlight.addWaiter(clientAID, conversationId);
                 return;
             }
             
-            // Mark this conversation as active
-            activeConversations.put(conversationKey, true);
+            // Create contract net initiator to negotiate with markets
+            ACLMessage cfp = DeliveryContractNetInitiatorBehaviour.createCFP(
+                myAgent, marketAIDs, shoppingList, conversationId);
             
-            // Process the request
-            String content = msg.getContent();
+            DeliveryContractNetInitiatorBehaviour negotiation = new DeliveryContractNetInitiatorBehaviour(
+                myAgent, cfp, shoppingList, deliveryFee, clientAID, conversationId);
+            if (coalesce) {
+                negotiation.enableCoalescing(coalescingKey);
+            }
+            myAgent.addBehaviour(negotiation);
             
-            logger.info("Received order request from {}: {}", 
-                       clientName, content);
+        } else if (candidateCount > 0) {
+            // No market carries any of the items, answer as the negotiation would have
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.PROPOSE);
+            new ClientProposal(false, deliveryFee, Collections.emptyMap(), 
+                               new LinkedHashSet<>(Arrays.asList(shoppingList))).writeTo(reply);
+            myAgent.send(reply);
             
-            // Parse shopping list
-            String[] shoppingList = content.split(",");
+            logger.info("No market carries any requested item, sent failure reply to {}", 
+                       clientName);
             
-            // If connectedMarkets is specified, use only those markets
-            DeliveryAgent deliveryAgent = (DeliveryAgent) myAgent;
-            List<AID> connectedMarkets = deliveryAgent.getConnectedMarkets();
+            // Clean up tracking for this conversation - no further processing
+            conversations.close(conversationKey);
+        } else {
+            // No markets found, send failure response to client
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.PROPOSE);
+            new ClientProposal(false, 0.0, Collections.emptyMap(), Collections.emptyList()).writeTo(reply);
+            myAgent.send(reply);
             
-            if (!connectedMarkets.isEmpty()) {
-                // Use only connected markets
-                logger.info("Using {} connected markets for order processing: {}", 
-                           connectedMarkets.size(), 
-                           connectedMarkets.stream()
-                               .map(aid -> aid.getLocalName())
-                               .reduce("", (a, b) -> a.isEmpty() ? b : a + ", " + b));
-                
-                AID[] marketAIDs = connectedMarkets.toArray(new AID[0]);
-                
-                // Create contract net initiator to negotiate with markets
-                ACLMessage cfp = DeliveryContractNetInitiatorBehaviour.createCFP(
-                    myAgent, marketAIDs, shoppingList, conversationId);
-                
-                myAgent.addBehaviour(new DeliveryContractNetInitiatorBehaviour(
-                    myAgent, cfp, shoppingList, deliveryFee, clientAID, conversationId));
-                                
-            } else {
-                // Use DF to find all markets (legacy behavior)
-                try {
-                    DFAgentDescription template = new DFAgentDescription();
-                    ServiceDescription sd = new ServiceDescription();
-                    sd.setType("grocery-market");
-                    template.addServices(sd);
-                    
-                    DFAgentDescription[] marketAgents = DFService.search(myAgent, template);
-                    
-                    if (marketAgents.length > 0) {
-                        logger.info("Found {} markets for order processing", 
-                                   marketAgents.length);
-                        
-                        // Convert DFAgentDescription array to AID array
-                        AID[] marketAIDs = new AID[marketAgents.length];
-                        for (int i = 0; i < marketAgents.length; i++) {
-                            marketAIDs[i] = marketAgents[i].getName();
-                        }
-                        
-                        // Create contract net initiator to negotiate with markets
-                        ACLMessage cfp = DeliveryContractNetInitiatorBehaviour.createCFP(
-                            myAgent, marketAIDs, shoppingList, conversationId);
-                        
-                        myAgent.addBehaviour(new DeliveryContractNetInitiatorBehaviour(
-                            myAgent, cfp, shoppingList, deliveryFee, clientAID, conversationId));                        
-                        
-                    } else {
-                        // No markets found, send failure response to client
-                        ACLMessage reply = msg.createReply();
-                        reply.setPerformative(ACLMessage.PROPOSE);
-                        reply.setContent("FAILURE|0||");
-                        myAgent.send(reply);
-                        
-                        logger.warn("No markets found, sent failure reply to {}", 
-                                   clientName);
-                        
-                        // Clean up tracking for this conversation - no further processing
-                        activeConversations.remove(conversationKey);
-                    }
-                    
-                } catch (FIPAException e) {
-                    logger.error("FIPA Exception searching for markets", e);
-                    
-                    // Send failure response to client
-                    ACLMessage reply = msg.createReply();
-                    reply.setPerformative(ACLMessage.FAILURE);
-                    reply.setContent("Error-searching-markets");
-                    myAgent.send(reply);
-                    
-                    // Clean up tracking for this conversation - no further processing
-                    activeConversations.remove(conversationKey);
-                }
-            }
+            logger.warn("No markets found, sent failure reply to {}", 
+                       clientName);
+            
+            // Clean up tracking for this conversation - no further processing
+            conversations.close(conversationKey);
         }
     }
     
-    private void processPayments(MessageTemplate mt) {
-        ACLMessage paymentMsg = myAgent.receive(mt);
-        
-        if (paymentMsg != null) {
-            // Process payment
-            AID clientAID = paymentMsg.getSender();
-            String clientName = clientAID.getLocalName();
-            String content = paymentMsg.getContent();
-            String conversationId = paymentMsg.getConversationId();
-            String conversationKey = clientName + ":" + conversationId;
-            
-            if (content.startsWith("PAYMENT:")) {
-                // Extract payment amount
-                double paymentAmount = Double.parseDouble(content.substring(8));
-                
-                logger.info("Received payment of {} from {}", 
-                           paymentAmount, clientName);
-                
-                // Send confirmation of delivery
-                ACLMessage confirmation = paymentMsg.createReply();
-                confirmation.setPerformative(ACLMessage.INFORM);
-                confirmation.setContent("ORDER-DELIVERED");
-                myAgent.send(confirmation);
-                
-                logger.info("Order delivered to {}", clientName);
-                
-                // Clean up tracking for this conversation
-                if (conversationId != null) {
-                    activeConversations.remove(conversationKey);
-                    logger.debug("Removed conversation tracking for {}", conversationKey);
-                }
-            }
+    /**
+     * Builds the key under which identical orders share a negotiation: the trimmed,
+     * de-duplicated and sorted shopping list plus the sorted market names.
+     */
+    static String coalescingKey(String[] shoppingList, AID[] markets) {
+        Set<String> items = new TreeSet<>();
+        for (String item : shoppingList) {
+            items.add(item.trim());
         }
+        Set<String> marketNames = new TreeSet<>();
+        for (AID market : markets) {
+            marketNames.add(market.getName());
+        }
+        return String.join(",", items) + "|" + String.join(",", marketNames);
     }
     
-    private void processRejections(MessageTemplate mt) {
-        ACLMessage rejectMsg = myAgent.receive(mt);
-        
-        if (rejectMsg != null) {
-            // Process rejection
-            AID clientAID = rejectMsg.getSender();
-            String clientName = clientAID.getLocalName();
-            String conversationId = rejectMsg.getConversationId();
-            String conversationKey = clientName + ":" + conversationId;
-            
-            logger.info("Proposal rejected by {}", clientName);
-            
-            // Clean up tracking for this conversation
-            if (conversationId != null) {
-                activeConversations.remove(conversationKey);
-                logger.debug("Removed conversation tracking for {}", conversationKey);
-            }
+    private void processPayment(ACLMessage paymentMsg) {
+        // Process payment
+        AID clientAID = paymentMsg.getSender();
+        String clientName = clientAID.getLocalName();
+        String conversationId = paymentMsg.getConversationId();
+        String conversationKey = ConversationTable.key(clientName, conversationId);
+        
+        Payment payment;
+        try {
+            payment = Payment.from(paymentMsg);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring unreadable payment from {}: {}", clientName, e.getMessage());
+            return;
+        }
+        
+        // Extract payment amount
+        double paymentAmount = payment.getAmount();
+        
+        logger.info("Received payment of {} from {}", 
+                   paymentAmount, clientName);
+        
+        // Only a conversation that is waiting for this payment is delivered
+        ConversationTable conversations = ((DeliveryAgent) myAgent).getConversationTable();
+        ConversationTable.Entry entry = conversations.get(conversationKey);
+        if (entry == null || entry.getState() != ConversationTable.State.PROPOSED) {
+            logger.warn("Refusing payment from {}: conversation {} is {}", clientName, conversationId, 
+                       entry == null ? "not open" : entry.getState());
+            ACLMessage failure = paymentMsg.createReply();
+            failure.setPerformative(ACLMessage.FAILURE);
+            failure.setContent("No-proposal-to-pay");
+            myAgent.send(failure);
+            return;
+        }
+        
+        // Mark the order paid and close its conversation
+        conversations.update(conversationKey, ConversationTable.State.PAID, System.currentTimeMillis());
+        conversations.close(conversationKey);
+        logger.debug("Closed conversation {} paid {} ms after the request", 
+                    conversationKey, entry.getUpdatedAt() - entry.getCreatedAt());
+        
+        // Send confirmation of delivery
+        ACLMessage confirmation = paymentMsg.createReply();
+        confirmation.setPerformative(ACLMessage.INFORM);
+        confirmation.setContent("ORDER-DELIVERED");
+        myAgent.send(confirmation);
+        
+        logger.info("Order delivered to {}", clientName);
+    }
+    
+    private void processRejection(ACLMessage rejectMsg) {
+        // Process rejection
+        AID clientAID = rejectMsg.getSender();
+        String clientName = clientAID.getLocalName();
+        String conversationId = rejectMsg.getConversationId();
+        String conversationKey = ConversationTable.key(clientName, conversationId);
+        
+        logger.info("Proposal rejected by {}", clientName);
+        
+        // Close the conversation
+        if (((DeliveryAgent) myAgent).getConversationTable().close(conversationKey) != null) {
+            logger.debug("Closed conversation {}", conversationKey);
         }
     }
 } 
\ No newline at end of file
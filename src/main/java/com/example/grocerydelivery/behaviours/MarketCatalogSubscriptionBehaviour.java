@@ -0,0 +1,139 @@
+package com.example.grocerydelivery.behaviours;
+
+import com.example.grocerydelivery.agents.MarketAgent;
+import com.example.grocerydelivery.catalog.MarketItemIndex;
+import com.example.grocerydelivery.directory.DirectoryCache;
+import com.example.grocerydelivery.utils.LoggerUtil;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Behavior for DeliveryAgent to keep its {@link MarketItemIndex} and its cached
+ * list of markets current. It subscribes to the DF for grocery markets and applies
+ * every registration, catalog change and deregistration the DF notifies.
+ */
+public class MarketCatalogSubscriptionBehaviour extends SubscriptionInitiator {
+
+    /**
+     * Gets told when markets join or leave the directory.
+     */
+    public interface Listener {
+        void marketRegistered(AID market);
+
+        void marketDeregistered(AID market);
+    }
+
+    private final MarketItemIndex index;
+    private final DirectoryCache directory;
+    private final Listener listener;
+    private final Logger logger;
+
+    /**
+     * @param directory The cache of registered markets
+     * @param listener Gets told about markets joining and leaving, may be null
+     */
+    public MarketCatalogSubscriptionBehaviour(Agent agent, String serviceName, MarketItemIndex index, 
+                                              DirectoryCache directory, Listener listener) {
+        super(agent, DFService.createSubscriptionMessage(agent, agent.getDefaultDF(), directory.createTemplate(), null));
+        this.index = index;
+        this.directory = directory;
+        this.listener = listener;
+        this.logger = LoggerUtil.getLogger(
+            "MarketCatalogSubscription_" + serviceName, "Behaviour");
+        logger.info("MarketCatalogSubscriptionBehaviour initialized for {}", serviceName);
+    }
+
+    @Override
+    protected void handleInform(ACLMessage inform) {
+        try {
+            DFAgentDescription[] notification = DFService.decodeNotification(inform.getContent());
+            directory.apply(notification);
+            for (DFAgentDescription dfd : notification) {
+                ServiceDescription market = findMarketService(dfd);
+                List<String> items = market != null ? readCatalog(market) : null;
+                boolean known = index.isKnown(dfd.getName());
+                if (items == null) {
+                    // Deregistration (no services), or a market that publishes no catalog
+                    index.remove(dfd.getName());
+                    if (market == null && listener != null) {
+                        listener.marketDeregistered(dfd.getName());
+                    }
+                    logger.debug("No catalog for {}, {} catalogs known", 
+                                dfd.getName().getLocalName(), index.getMarketCount());
+                } else {
+                    index.update(dfd.getName(), items);
+                    if (!known && listener != null) {
+                        listener.marketRegistered(dfd.getName());
+                    }
+                    logger.debug("Indexed catalog of {} with {} items, {} catalogs known", 
+                                dfd.getName().getLocalName(), items.size(), index.getMarketCount());
+                }
+                if (market != null) {
+                    index.setStockTracked(dfd.getName(), isStockTracked(market));
+                }
+            }
+        } catch (FIPAException e) {
+            logger.error("Failed to decode DF notification", e);
+        }
+    }
+
+    @Override
+    protected void handleFailure(ACLMessage failure) {
+        logger.warn("DF subscription failed, CFPs will go to every market: {}", failure.getContent());
+    }
+
+    private static ServiceDescription findMarketService(DFAgentDescription dfd) {
+        Iterator<?> services = dfd.getAllServices();
+        while (services.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) services.next();
+            if (MarketAgent.SERVICE_TYPE.equals(sd.getType())) {
+                return sd;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads whether a market published that it tracks stock quantities.
+     */
+    static boolean isStockTracked(ServiceDescription sd) {
+        Iterator<?> properties = sd.getAllProperties();
+        while (properties.hasNext()) {
+            Property property = (Property) properties.next();
+            if (MarketAgent.STOCK_PROPERTY.equals(property.getName())) {
+                return Boolean.parseBoolean(String.valueOf(property.getValue()));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the catalog a market published in its service description.
+     *
+     * @return The items, or null if the market did not publish a catalog
+     */
+    static List<String> readCatalog(ServiceDescription sd) {
+        Iterator<?> properties = sd.getAllProperties();
+        while (properties.hasNext()) {
+            Property property = (Property) properties.next();
+            if (MarketAgent.CATALOG_PROPERTY.equals(property.getName())) {
+                String value = String.valueOf(property.getValue());
+                return value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(","));
+            }
+        }
+        return null;
+    }
+}
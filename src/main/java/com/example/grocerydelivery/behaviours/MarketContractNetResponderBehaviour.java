@@ -1,6 +1,9 @@
 package com.example.grocerydelivery.behaviours;
 
 import com.example.grocerydelivery.agents.MarketAgent;
+import com.example.grocerydelivery.catalog.StockHolds;
+import com.example.grocerydelivery.codec.Cfp;
+import com.example.grocerydelivery.codec.Quote;
 import com.example.grocerydelivery.utils.LoggerUtil;
 import jade.core.Agent;
 import jade.domain.FIPAAgentManagement.FailureException;
@@ -12,7 +15,8 @@ import jade.lang.acl.MessageTemplate;
 import jade.proto.ContractNetResponder;
 import org.apache.logging.log4j.Logger;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -62,18 +66,24 @@ public class MarketContractNetResponderBehaviour extends ContractNetResponder {
                    cfp.getSender().getLocalName(), conversationId, clientReference);
         
         // Extract order from the message
-        String content = cfp.getContent();
-        String[] requestedItems = content.split(",");
+        Cfp order;
+        try {
+            order = Cfp.from(cfp);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unreadable CFP from {}: {}", cfp.getSender().getLocalName(), e.getMessage());
+            throw new NotUnderstoodException(e.getMessage());
+        }
         
         // Calculate available items and total price
-        Map<String, Double> availableItems = new HashMap<>();
+        Map<String, Double> availableItems = new LinkedHashMap<>();
         double totalPrice = 0.0;
         int availableCount = 0;
         
-        for (String item : requestedItems) {
+        for (String item : order.getItems()) {
             String trimmedItem = item.trim();
-            Double price = marketAgent.getPrice(trimmedItem);
-            if (price != null) {
+            double price = marketAgent.getPrice(trimmedItem);
+            // Only offer items that are in stock
+            if (!Double.isNaN(price) && marketAgent.getStock().available(trimmedItem) > 0) {
                 availableItems.put(trimmedItem, price);
                 totalPrice += price;
                 availableCount++;
@@ -83,6 +93,22 @@ public class MarketContractNetResponderBehaviour extends ContractNetResponder {
             }
         }
         
+        // Hold the quoted stock until the delivery answers, and only quote what is held
+        if (availableCount > 0) {
+            String holdKey = StockHolds.key(cfp.getSender().getName(), conversationId);
+            List<String> held = marketAgent.getStockHolds().place(holdKey, availableItems.keySet(), System.currentTimeMillis());
+            if (held.size() < availableItems.size()) {
+                logger.warn("Could not hold {} of {}, quoting the rest (conversation: {})", 
+                           availableItems.size() - held.size(), availableItems.keySet(), conversationId);
+                availableItems.keySet().retainAll(held);
+                totalPrice = 0.0;
+                for (double price : availableItems.values()) {
+                    totalPrice += price;
+                }
+                availableCount = availableItems.size();
+            }
+        }
+        
         // Prepare response
         ACLMessage reply = cfp.createReply();
         
@@ -102,22 +128,7 @@ public class MarketContractNetResponderBehaviour extends ContractNetResponder {
             logger.info("Proposing {} items, total price: {} (conversation: {})", 
                        availableCount, totalPrice, conversationId);
             reply.setPerformative(ACLMessage.PROPOSE);
-            
-            // Format: availableCount|totalPrice|item1:price1,item2:price2,...
-            StringBuilder contentBuilder = new StringBuilder();
-            contentBuilder.append(availableCount).append("|");
-            contentBuilder.append(totalPrice).append("|");
-            
-            for (Map.Entry<String, Double> entry : availableItems.entrySet()) {
-                contentBuilder.append(entry.getKey()).append(":").append(entry.getValue()).append(",");
-            }
-            
-            // Remove trailing comma
-            if (!availableItems.isEmpty()) {
-                contentBuilder.deleteCharAt(contentBuilder.length() - 1);
-            }
-            
-            reply.setContent(contentBuilder.toString());
+            new Quote(availableItems).writeTo(reply);
         }
         
         return reply;
@@ -132,9 +143,20 @@ public class MarketContractNetResponderBehaviour extends ContractNetResponder {
                    accept.getSender().getLocalName(), conversationId, clientReference);
         
         // Extract items to be delivered from the acceptance message
-        String itemList = accept.getContent();
+        Cfp itemList;
+        try {
+            itemList = Cfp.from(accept);
+        } catch (IllegalArgumentException e) {
+            throw new FailureException("unreadable-items");
+        }
+        
+        // Take the items from stock, all or none: from the hold of the proposal if it is still live
+        String holdKey = StockHolds.key(accept.getSender().getName(), conversationId);
+        if (!marketAgent.getStockHolds().confirm(holdKey, itemList.getItems())) {
+            logger.warn("Out of stock for order: {} (conversation: {})", itemList, conversationId);
+            throw new FailureException("out-of-stock");
+        }
         
-        // Process the order - simulate successful processing for this example
         logger.info("Processing order: {} (conversation: {})", 
                    itemList, conversationId);
         
@@ -158,5 +180,8 @@ public class MarketContractNetResponderBehaviour extends ContractNetResponder {
         
         logger.info("Proposal rejected by {} (conversation: {}, client reference: {})", 
                    reject.getSender().getLocalName(), conversationId, clientReference);
+        
+        // Give the held stock back
+        marketAgent.getStockHolds().release(StockHolds.key(reject.getSender().getName(), conversationId));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.example.grocerydelivery.behaviours;
+
+import com.example.grocerydelivery.agents.MarketAgent;
+import com.example.grocerydelivery.codec.PriceFeed;
+import com.example.grocerydelivery.utils.LoggerUtil;
+import jade.domain.FIPAAgentManagement.RefuseException;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionResponder;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+
+/**
+ * Behavior for MarketAgent to push its prices to subscribed DeliveryAgents.
+ * A new subscriber receives the full price list, after that every price change
+ * is sent as a versioned delta (see {@link PriceFeed}).
+ */
+public class MarketPriceFeedBehaviour extends SubscriptionResponder {
+
+    private final MarketAgent marketAgent;
+    private final Logger logger;
+
+    public MarketPriceFeedBehaviour(MarketAgent agent) {
+        super(agent, SubscriptionResponder.createMessageTemplate(ACLMessage.SUBSCRIBE));
+        this.marketAgent = agent;
+        this.logger = LoggerUtil.getLogger(
+            "MarketPriceFeed_" + agent.getMarketName(), "Behaviour");
+        logger.info("MarketPriceFeedBehaviour initialized for {}", agent.getMarketName());
+    }
+
+    @Override
+    protected ACLMessage handleSubscription(ACLMessage subscribe) throws RefuseException {
+        // A mapped catalog is too large for a snapshot, the subscriber negotiates instead
+        if (marketAgent.hasMappedCatalog()) {
+            logger.info("Refusing price subscription of {}, the catalog is mapped from a file", 
+                       subscribe.getSender().getLocalName());
+            throw new RefuseException("catalog-too-large");
+        }
+        
+        Subscription subscription = createSubscription(subscribe);
+
+        // The first notification doubles as the agreement to the subscription
+        PriceFeed snapshot = new PriceFeed(true, marketAgent.getPriceVersion(), marketAgent.getInventory());
+        subscription.notify(createNotification(subscription, snapshot));
+
+        logger.info("{} subscribed to prices, sent {} items at version {}", 
+                   subscribe.getSender().getLocalName(), snapshot.getPrices().size(), snapshot.getVersion());
+        return null;
+    }
+
+    /**
+     * Sends price changes to every subscriber.
+     *
+     * @param version Version of the market prices after the changes
+     * @param changes New prices; a null price means the item was removed
+     */
+    public void publish(long version, Map<String, Double> changes) {
+        PriceFeed delta = new PriceFeed(false, version, changes);
+        for (Object obj : getSubscriptions()) {
+            Subscription subscription = (Subscription) obj;
+            subscription.notify(createNotification(subscription, delta));
+        }
+        logger.debug("Published price delta version {} to {} subscribers", version, getSubscriptions().size());
+    }
+
+    private static ACLMessage createNotification(Subscription subscription, PriceFeed content) {
+        ACLMessage inform = subscription.getMessage().createReply();
+        inform.setPerformative(ACLMessage.INFORM);
+        content.writeTo(inform);
+        return inform;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.grocerydelivery.behaviours;
+
+import com.example.grocerydelivery.catalog.PriceBook;
+import com.example.grocerydelivery.codec.PriceFeed;
+import com.example.grocerydelivery.utils.LoggerUtil;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+import org.apache.logging.log4j.Logger;
+
+import java.util.UUID;
+
+/**
+ * Behavior for DeliveryAgent to subscribe to the prices of one market and keep
+ * them in the local {@link PriceBook}.
+ */
+public class MarketPriceSubscriptionBehaviour extends SubscriptionInitiator {
+
+    private final AID market;
+    private final PriceBook priceBook;
+    private final Logger logger;
+
+    public MarketPriceSubscriptionBehaviour(Agent agent, String serviceName, AID market, PriceBook priceBook) {
+        super(agent, createSubscription(market));
+        this.market = market;
+        this.priceBook = priceBook;
+        this.logger = LoggerUtil.getLogger(
+            "MarketPriceSubscription_" + serviceName, "Behaviour");
+        logger.debug("Subscribing to prices of {}", market.getLocalName());
+    }
+
+    private static ACLMessage createSubscription(AID market) {
+        ACLMessage subscribe = new ACLMessage(ACLMessage.SUBSCRIBE);
+        subscribe.setProtocol(FIPANames.InteractionProtocol.FIPA_SUBSCRIBE);
+        subscribe.addReceiver(market);
+        subscribe.setConversationId("prices-" + UUID.randomUUID().toString());
+        return subscribe;
+    }
+
+    @Override
+    protected void handleInform(ACLMessage inform) {
+        PriceFeed content;
+        try {
+            content = PriceFeed.from(inform);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring price update from {}: {}", market.getLocalName(), e.getMessage());
+            return;
+        }
+        
+        if (content.isSnapshot()) {
+            priceBook.applySnapshot(market, content.getVersion(), content.getPrices());
+            logger.info("Price book of {} loaded with {} items at version {}", 
+                       market.getLocalName(), content.getPrices().size(), content.getVersion());
+        } else if (priceBook.applyDelta(market, content.getVersion(), content.getPrices())) {
+            logger.debug("Price book of {} updated to version {}", market.getLocalName(), content.getVersion());
+        } else {
+            logger.warn("Missed a price update of {} (got version {}), orders will negotiate with it directly", 
+                       market.getLocalName(), content.getVersion());
+        }
+    }
+
+    @Override
+    protected void handleRefuse(ACLMessage refuse) {
+        logger.warn("{} refused the price subscription", market.getLocalName());
+    }
+
+    @Override
+    protected void handleFailure(ACLMessage failure) {
+        logger.warn("Price subscription to {} failed", market.getLocalName());
+        priceBook.remove(market);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.grocerydelivery.behaviours;
+
+import com.example.grocerydelivery.agents.MarketAgent;
+import com.example.grocerydelivery.codec.PriceUpdate;
+import com.example.grocerydelivery.utils.LoggerUtil;
+import jade.domain.FIPAAgentManagement.NotUnderstoodException;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.proto.AchieveREResponder;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+
+/**
+ * Behavior for MarketAgent to change its prices while it runs.
+ *
+ * A REQUEST with the {@value #ONTOLOGY} ontology carries the changes as a
+ * {@link PriceUpdate}; an item without a price is removed, a new item is added. The
+ * changes go through {@link MarketAgent#updateInventory}, which pushes them to the
+ * price subscribers and updates the catalog in the DF. The reply is an INFORM with the
+ * new price version.
+ */
+public class MarketPriceUpdateBehaviour extends AchieveREResponder {
+
+    /** Ontology of price change requests. */
+    public static final String ONTOLOGY = "price-update";
+
+    private final MarketAgent marketAgent;
+    private final Logger logger;
+
+    public MarketPriceUpdateBehaviour(MarketAgent agent) {
+        super(agent, createMessageTemplate());
+        this.marketAgent = agent;
+        this.logger = LoggerUtil.getLogger(
+            "MarketPriceUpdate_" + agent.getMarketName(), "Behaviour");
+        logger.info("MarketPriceUpdateBehaviour initialized for {}", agent.getMarketName());
+    }
+
+    /**
+     * Creates the template of price change requests.
+     */
+    public static MessageTemplate createMessageTemplate() {
+        return MessageTemplate.and(
+            AchieveREResponder.createMessageTemplate(FIPANames.InteractionProtocol.FIPA_REQUEST),
+            MessageTemplate.MatchOntology(ONTOLOGY));
+    }
+
+    @Override
+    protected ACLMessage handleRequest(ACLMessage request) throws NotUnderstoodException {
+        PriceUpdate update;
+        try {
+            update = PriceUpdate.from(request);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unreadable price update from {}: {}", request.getSender().getLocalName(), e.getMessage());
+            throw new NotUnderstoodException(e.getMessage());
+        }
+
+        for (Map.Entry<String, Double> change : update.getChanges().entrySet()) {
+            marketAgent.updateInventory(change.getKey(), change.getValue());
+        }
+        logger.info("{} changed {} prices, now at version {}",
+                   request.getSender().getLocalName(), update.getChanges().size(), marketAgent.getPriceVersion());
+
+        ACLMessage inform = request.createReply();
+        inform.setPerformative(ACLMessage.INFORM);
+        inform.setContent(String.valueOf(marketAgent.getPriceVersion()));
+        return inform;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.grocerydelivery.behaviours;
+
+import com.example.grocerydelivery.catalog.StockHolds;
+import com.example.grocerydelivery.utils.LoggerUtil;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+
+/**
+ * Advances the expiry timer of a market's stock holds once per tick, so the units of
+ * proposals nobody answered go back to the stock.
+ */
+public class StockHoldExpiryBehaviour extends TickerBehaviour {
+
+    private final StockHolds holds;
+    private final Logger logger;
+
+    public StockHoldExpiryBehaviour(Agent agent, String marketName, StockHolds holds) {
+        super(agent, StockHolds.TICK_MS);
+        this.holds = holds;
+        this.logger = LoggerUtil.getLogger(
+            "StockHoldExpiry_" + marketName, "Behaviour");
+        logger.info("StockHoldExpiryBehaviour initialized for {}, time-to-live {} ms",
+                   marketName, holds.getTtlMillis());
+    }
+
+    @Override
+    protected void onTick() {
+        long now = System.currentTimeMillis();
+        List<StockHolds.Hold> expired = holds.expire(now);
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        for (StockHolds.Hold hold : expired) {
+            logger.info("Hold {} on {} expired after {} ms",
+                       hold.getKey(), hold.getItems(), now - hold.getPlacedAt());
+        }
+        logger.info("Stock holds: {}", holds);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.grocerydelivery.catalog;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns product names to dense integer ids (0, 1, 2, ...).
+ * Ids are stable for the lifetime of the dictionary, so hot paths can work with
+ * ints and arrays instead of hashing strings and boxing values.
+ * The dictionary is thread-safe; lookups of known items do not lock.
+ *
+ * Ids are never released, so only the names of items that markets carry or offer
+ * are interned; names taken from client orders are only looked up.
+ */
+public final class ItemDictionary {
+
+    private static final ItemDictionary SHARED = new ItemDictionary();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size = 0;
+
+    /**
+     * Gets the dictionary shared by all agents in this JVM.
+     */
+    public static ItemDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * Gets the id of an item, assigning the next free id if it is new.
+     *
+     * @param item The item name
+     * @return The id of the item
+     */
+    public int intern(String item) {
+        Integer id = ids.get(item);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(item);
+            if (id != null) {
+                return id;
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+            }
+            names[size] = item;
+            // Publish the name before the id becomes visible to lock-free readers
+            ids.put(item, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Gets the id of an item without interning it.
+     *
+     * @param item The item name
+     * @return The id, or -1 if the item has never been interned
+     */
+    public int lookup(String item) {
+        Integer id = ids.get(item);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Gets the name of an item.
+     *
+     * @param id An id returned by {@link #intern(String)}
+     * @return The item name
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Gets the number of interned items.
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.grocerydelivery.catalog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Market prices read from a memory-mapped catalog file instead of the heap.
+ *
+ * File layout, big-endian:
+ * <pre>
+ * header   magic "GDPC" (int), format version (int), record count (int), names length (int)
+ * records  item key (long), price (double), name offset (int), name length (int)
+ * names    the UTF-8 item names, addressed by the records
+ * </pre>
+ * The item key is the 64-bit FNV-1a hash of the item name and the records are sorted by
+ * it, so a lookup is a binary search over fixed-width records followed by a name check
+ * for keys that collide. Opening a file only maps and checks the header, so it takes the
+ * same time for any catalog size; pages are loaded by the OS on first access and the
+ * page cache is shared by every process mapping the same file. Files are limited to 2 GB.
+ *
+ * The file is never written. Price changes are kept in a small on-heap overlay, and like
+ * the file mapping it is immutable: a change returns a new catalog. Lookups of ASCII
+ * item names do not allocate.
+ */
+public final class MappedPriceCatalog implements PriceCatalog {
+
+    private static final int MAGIC = 0x47445043;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 24;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int namesStart;
+    /** Prices changed since the file was opened, NaN for removed items. */
+    private final Map<String, Double> changes;
+    private final int size;
+
+    private MappedPriceCatalog(Path file, ByteBuffer buffer, int count, Map<String, Double> changes, int size) {
+        this.file = file;
+        this.buffer = buffer;
+        this.count = count;
+        this.namesStart = HEADER_SIZE + count * RECORD_SIZE;
+        this.changes = changes;
+        this.size = size;
+    }
+
+    /**
+     * Maps a catalog file.
+     *
+     * @param file The catalog file
+     * @throws IOException If the file cannot be read or is not a valid catalog file
+     */
+    public static MappedPriceCatalog open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Catalog file larger than 2 GB: " + file);
+            }
+            if (length < HEADER_SIZE) {
+                throw new IOException("Not a catalog file: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int count = buffer.getInt(8);
+            int namesLength = buffer.getInt(12);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Not a catalog file: " + file);
+            }
+            if (count < 0 || namesLength < 0 || HEADER_SIZE + (long) count * RECORD_SIZE + namesLength != length) {
+                throw new IOException("Truncated catalog file: " + file);
+            }
+            return new MappedPriceCatalog(file, buffer, count, Collections.emptyMap(), count);
+        }
+    }
+
+    /**
+     * Writes item prices as a catalog file.
+     *
+     * @param file The file to create or replace
+     * @param itemPrices The price of every carried item
+     */
+    public static void write(Path file, Map<String, Double> itemPrices) throws IOException {
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(itemPrices.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, Double> entry) -> key(entry.getKey()))
+                .thenComparing(Map.Entry::getKey));
+
+        List<byte[]> names = new ArrayList<>(entries.size());
+        long namesLength = 0;
+        for (Map.Entry<String, Double> entry : entries) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            namesLength += name.length;
+        }
+        if (HEADER_SIZE + (long) entries.size() * RECORD_SIZE + namesLength > Integer.MAX_VALUE) {
+            throw new IOException("Catalog too large for one file: " + entries.size() + " items");
+        }
+
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            out.writeInt((int) namesLength);
+            int offset = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                out.writeLong(key(entries.get(i).getKey()));
+                out.writeDouble(entries.get(i).getValue());
+                out.writeInt(offset);
+                out.writeInt(names.get(i).length);
+                offset += names.get(i).length;
+            }
+            for (byte[] name : names) {
+                out.write(name);
+            }
+        }
+    }
+
+    /**
+     * Converts a price list to a catalog file.
+     * Usage: {@code MappedPriceCatalog <prices.csv> <market.catalog>}, where every line of
+     * the price list is {@code item,price}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MappedPriceCatalog <prices.csv> <market.catalog>");
+            System.exit(1);
+        }
+        Map<String, Double> itemPrices = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            int comma = line.lastIndexOf(',');
+            if (comma > 0) {
+                itemPrices.put(line.substring(0, comma).trim(), Double.parseDouble(line.substring(comma + 1).trim()));
+            }
+        }
+        write(Paths.get(args[1]), itemPrices);
+        System.out.println("Wrote " + itemPrices.size() + " items to " + args[1]);
+    }
+
+    @Override
+    public double price(String item) {
+        if (!changes.isEmpty()) {
+            Double changed = changes.get(item);
+            if (changed != null) {
+                return changed;
+            }
+        }
+        int index = find(item);
+        return index >= 0 ? buffer.getDouble(record(index) + 8) : Double.NaN;
+    }
+
+    @Override
+    public MappedPriceCatalog with(String item, double price) {
+        double current = price(item);
+        if (Double.compare(current, price) == 0) {
+            return this;
+        }
+        Map<String, Double> changed = new HashMap<>(changes);
+        changed.put(item, price);
+        int changedSize = size + (Double.isNaN(current) ? 1 : 0) - (Double.isNaN(price) ? 1 : 0);
+        return new MappedPriceCatalog(file, buffer, count, changed, changedSize);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the prices into a map. This reads the whole file.
+     */
+    @Override
+    public Map<String, Double> toMap() {
+        Map<String, Double> itemPrices = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < count; i++) {
+            String name = name(i);
+            if (!changes.containsKey(name)) {
+                itemPrices.put(name, buffer.getDouble(record(i) + 8));
+            }
+        }
+        for (Map.Entry<String, Double> entry : changes.entrySet()) {
+            if (!Double.isNaN(entry.getValue())) {
+                itemPrices.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return itemPrices;
+    }
+
+    /**
+     * Gets the mapped file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the key of an item: the 64-bit FNV-1a hash of its UTF-16 characters.
+     */
+    static long key(String item) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < item.length(); i++) {
+            hash ^= item.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private int find(String item) {
+        long key = key(item);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = buffer.getLong(record(mid));
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                // Colliding keys are adjacent, check the names of all of them
+                int first = mid;
+                while (first > 0 && buffer.getLong(record(first - 1)) == key) {
+                    first--;
+                }
+                for (int i = first; i < count && buffer.getLong(record(i)) == key; i++) {
+                    if (nameEquals(i, item)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int index, String item) {
+        int position = namesStart + buffer.getInt(record(index) + 16);
+        int length = buffer.getInt(record(index) + 20);
+        if (length < item.length()) {
+            // UTF-8 never takes fewer bytes than UTF-16 characters
+            return false;
+        }
+        if (length == item.length()) {
+            int i = 0;
+            byte b;
+            while (i < length && (b = buffer.get(position + i)) >= 0) {
+                if (b != item.charAt(i)) {
+                    return false;
+                }
+                i++;
+            }
+            if (i == length) {
+                return true;
+            }
+        }
+        // Non-ASCII name
+        return name(index).equals(item);
+    }
+
+    private String name(int index) {
+        int position = namesStart + buffer.getInt(record(index) + 16);
+        byte[] name = new byte[buffer.getInt(record(index) + 20)];
+        buffer.get(position, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private static int record(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
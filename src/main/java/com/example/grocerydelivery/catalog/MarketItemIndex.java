@@ -0,0 +1,155 @@
+package com.example.grocerydelivery.catalog;
+
+import jade.core.AID;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from item to the markets that carry it, built from the catalogs
+ * markets publish in the DF.
+ *
+ * Markets whose catalog is not known (yet) are never filtered out, so a CFP can only
+ * lose receivers that are known not to carry any of the requested items. The index also
+ * records which markets published that they do not track stock.
+ * The index is only used from its agent's thread and is not thread-safe.
+ */
+public class MarketItemIndex {
+
+    private static final int[] NO_ITEMS = new int[0];
+
+    private final ItemDictionary dictionary;
+    // Catalog of every known market, as sorted item ids
+    private final Map<AID, int[]> catalogs = new HashMap<>();
+    // Postings: markets carrying each item id
+    private final List<Set<AID>> marketsByItem = new ArrayList<>();
+    // Markets known to sell without stock limits
+    private final Set<AID> unlimitedMarkets = new HashSet<>();
+
+    public MarketItemIndex(ItemDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Replaces the catalog of a market.
+     *
+     * @param market The market
+     * @param items Every item the market carries
+     */
+    public void update(AID market, Collection<String> items) {
+        int[] ids = new int[items.size()];
+        int count = 0;
+        for (String item : items) {
+            ids[count++] = dictionary.intern(item);
+        }
+        Arrays.sort(ids);
+
+        int[] previous = catalogs.getOrDefault(market, NO_ITEMS);
+        for (int id : previous) {
+            if (Arrays.binarySearch(ids, id) < 0) {
+                marketsByItem.get(id).remove(market);
+            }
+        }
+        for (int id : ids) {
+            if (Arrays.binarySearch(previous, id) < 0) {
+                postings(id).add(market);
+            }
+        }
+        catalogs.put(market, ids);
+    }
+
+    /**
+     * Forgets a market, e.g. when it deregisters from the DF.
+     */
+    public void remove(AID market) {
+        unlimitedMarkets.remove(market);
+        int[] previous = catalogs.remove(market);
+        if (previous != null) {
+            for (int id : previous) {
+                marketsByItem.get(id).remove(market);
+            }
+        }
+    }
+
+    /**
+     * Records whether a market tracks stock quantities.
+     */
+    public void setStockTracked(AID market, boolean tracked) {
+        if (tracked) {
+            unlimitedMarkets.remove(market);
+        } else {
+            unlimitedMarkets.add(market);
+        }
+    }
+
+    /**
+     * Whether any of the markets may track stock, i.e. is not known to sell without
+     * stock limits.
+     */
+    public boolean tracksStock(AID[] markets) {
+        for (AID market : markets) {
+            if (!unlimitedMarkets.contains(market)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the catalog of a market is known.
+     */
+    public boolean isKnown(AID market) {
+        return catalogs.containsKey(market);
+    }
+
+    /**
+     * Gets the number of markets with a known catalog.
+     */
+    public int getMarketCount() {
+        return catalogs.size();
+    }
+
+    /**
+     * Keeps the candidate markets that can contribute to a shopping list.
+     *
+     * @param candidates The markets a delivery service may use, in CFP order
+     * @param shoppingList The requested items
+     * @return The candidates that carry at least one requested item or whose catalog
+     *         is unknown, in their original order
+     */
+    public AID[] filter(AID[] candidates, String[] shoppingList) {
+        if (catalogs.isEmpty()) {
+            return candidates;
+        }
+
+        Set<AID> carrying = new HashSet<>();
+        for (String item : shoppingList) {
+            int id = dictionary.lookup(item.trim());
+            if (id >= 0 && id < marketsByItem.size()) {
+                carrying.addAll(marketsByItem.get(id));
+            }
+        }
+
+        List<AID> receivers = new ArrayList<>(candidates.length);
+        for (AID market : candidates) {
+            if (carrying.contains(market) || !catalogs.containsKey(market)) {
+                receivers.add(market);
+            }
+        }
+        return receivers.toArray(new AID[0]);
+    }
+
+    private Set<AID> postings(int id) {
+        while (marketsByItem.size() <= id) {
+            marketsByItem.add(new LinkedHashSet<>());
+        }
+        return marketsByItem.get(id);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.grocerydelivery.catalog;
+
+import com.example.grocerydelivery.selection.QuoteSnapshot;
+import jade.core.AID;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local replica of the prices of subscribed markets.
+ *
+ * Each market sends a full snapshot when the subscription starts and then one delta per
+ * price change, numbered with consecutive versions. A delta that does not follow the
+ * current version means an update was missed, so the market is dropped from the book
+ * and orders involving it go back to a full contract-net round.
+ * The book is only used from its agent's thread and is not thread-safe.
+ */
+public class PriceBook {
+
+    private final ItemDictionary dictionary;
+    private final Map<AID, MarketPrices> markets = new HashMap<>();
+
+    public PriceBook(ItemDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Replaces all prices of a market.
+     *
+     * @param market The market
+     * @param version Version of the snapshot
+     * @param prices Price of every item the market carries
+     */
+    public void applySnapshot(AID market, long version, Map<String, Double> prices) {
+        MarketPrices book = new MarketPrices(version);
+        for (Map.Entry<String, Double> entry : prices.entrySet()) {
+            book.set(dictionary.intern(entry.getKey()), entry.getValue());
+        }
+        markets.put(market, book);
+    }
+
+    /**
+     * Applies incremental price changes of a market.
+     *
+     * @param market The market
+     * @param version Version of the delta
+     * @param changes New prices; a null price means the item was removed
+     * @return False if the delta did not follow the known version and the market was dropped
+     */
+    public boolean applyDelta(AID market, long version, Map<String, Double> changes) {
+        MarketPrices book = markets.get(market);
+        if (book == null || version != book.version + 1) {
+            markets.remove(market);
+            return false;
+        }
+        for (Map.Entry<String, Double> entry : changes.entrySet()) {
+            Double price = entry.getValue();
+            book.set(dictionary.intern(entry.getKey()), price != null ? price : Double.NaN);
+        }
+        book.version = version;
+        return true;
+    }
+
+    /**
+     * Forgets a market, e.g. when it deregisters from the DF.
+     */
+    public void remove(AID market) {
+        markets.remove(market);
+    }
+
+    /**
+     * Gets the version of the prices of a market.
+     *
+     * @return The version, or -1 if the market is not in the book
+     */
+    public long getVersion(AID market) {
+        MarketPrices book = markets.get(market);
+        return book != null ? book.version : -1;
+    }
+
+    /**
+     * Computes the quotes the given markets would propose for a shopping list.
+     *
+     * @param candidates The markets to quote, in snapshot order
+     * @param shoppingList The requested items
+     * @return The quotes, or null if any of the markets is not in the book
+     */
+    public QuoteSnapshot quote(AID[] candidates, String[] shoppingList) {
+        int[] ids = new int[shoppingList.length];
+        for (int i = 0; i < shoppingList.length; i++) {
+            ids[i] = dictionary.lookup(shoppingList[i].trim());
+        }
+
+        QuoteSnapshot.Builder quotes = QuoteSnapshot.builder(dictionary, shoppingList);
+        for (AID market : candidates) {
+            MarketPrices book = markets.get(market);
+            if (book == null) {
+                return null;
+            }
+            quotes.beginMarket(market.getName());
+            for (int i = 0; i < shoppingList.length; i++) {
+                double price = book.get(ids[i]);
+                if (!Double.isNaN(price)) {
+                    quotes.offer(shoppingList[i].trim(), price);
+                }
+            }
+        }
+        return quotes.build();
+    }
+
+    /**
+     * Prices of one market by item id, NaN where the item is not carried.
+     */
+    private static final class MarketPrices {
+        long version;
+        double[] prices = new double[0];
+
+        MarketPrices(long version) {
+            this.version = version;
+        }
+
+        double get(int id) {
+            return id >= 0 && id < prices.length ? prices[id] : Double.NaN;
+        }
+
+        void set(int id, double price) {
+            if (id >= prices.length) {
+                int length = prices.length;
+                prices = Arrays.copyOf(prices, Math.max(id + 1, length * 2));
+                Arrays.fill(prices, length, prices.length, Double.NaN);
+            }
+            prices[id] = price;
+        }
+    }
+}
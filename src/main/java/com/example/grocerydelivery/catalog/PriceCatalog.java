@@ -0,0 +1,36 @@
+package com.example.grocerydelivery.catalog;
+
+import java.util.Map;
+
+/**
+ * The item prices of one market. Implementations are immutable; a change returns a
+ * new catalog. Lookups do not allocate.
+ */
+public interface PriceCatalog {
+
+    /**
+     * Gets the price of an item.
+     *
+     * @return The price, or NaN if the item is not carried
+     */
+    double price(String item);
+
+    /**
+     * Gets a catalog with the price of one item set, added or removed.
+     *
+     * @param item The item
+     * @param price The new price, or NaN to remove the item
+     * @return This catalog if nothing changes
+     */
+    PriceCatalog with(String item, double price);
+
+    /**
+     * Gets the number of carried items.
+     */
+    int size();
+
+    /**
+     * Copies the prices into a map.
+     */
+    Map<String, Double> toMap();
+}
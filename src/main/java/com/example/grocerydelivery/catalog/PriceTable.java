@@ -0,0 +1,216 @@
+package com.example.grocerydelivery.catalog;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable item prices of one market, keyed by {@link ItemDictionary} id.
+ *
+ * The item ids live in a sorted {@code int[]} with two open-addressing (linear probing)
+ * indexes over it, one by id and one by item name, and the prices in a {@code double[]}
+ * column parallel to the ids. The ids, names and indexes form the layout of the table.
+ * Layouts are interned per dictionary, so markets carrying the same items share one
+ * layout and each only owns its price column. Lookups do not allocate; a missing item
+ * has the price NaN.
+ *
+ * Changes return a new table. Tables are read-only and can be shared between threads.
+ */
+public final class PriceTable implements PriceCatalog {
+
+    private static final Map<Layout, WeakReference<Layout>> LAYOUTS = new WeakHashMap<>();
+
+    private final ItemDictionary dictionary;
+    private final Layout layout;
+    private final double[] prices;
+
+    private PriceTable(ItemDictionary dictionary, Layout layout, double[] prices) {
+        this.dictionary = dictionary;
+        this.layout = layout;
+        this.prices = prices;
+    }
+
+    /**
+     * Builds a table from item prices, interning the items.
+     *
+     * @param dictionary The dictionary the ids come from
+     * @param itemPrices The price of every carried item
+     */
+    public static PriceTable of(ItemDictionary dictionary, Map<String, Double> itemPrices) {
+        int[] ids = new int[itemPrices.size()];
+        int n = 0;
+        for (String item : itemPrices.keySet()) {
+            ids[n++] = dictionary.intern(item);
+        }
+        Arrays.sort(ids);
+        Layout layout = Layout.intern(dictionary, ids);
+        double[] prices = new double[ids.length];
+        for (Map.Entry<String, Double> entry : itemPrices.entrySet()) {
+            prices[layout.indexOf(dictionary.lookup(entry.getKey()))] = entry.getValue();
+        }
+        return new PriceTable(dictionary, layout, prices);
+    }
+
+    @Override
+    public double price(String item) {
+        int index = layout.indexOf(item);
+        return index >= 0 ? prices[index] : Double.NaN;
+    }
+
+    /**
+     * Gets the price of an item by dictionary id.
+     *
+     * @return The price, or NaN if the item is not carried
+     */
+    public double price(int id) {
+        int index = id >= 0 ? layout.indexOf(id) : -1;
+        return index >= 0 ? prices[index] : Double.NaN;
+    }
+
+    @Override
+    public PriceTable with(String item, double price) {
+        int id = Double.isNaN(price) ? dictionary.lookup(item) : dictionary.intern(item);
+        int index = id >= 0 ? layout.indexOf(id) : -1;
+        if (index >= 0 && !Double.isNaN(price)) {
+            if (Double.compare(prices[index], price) == 0) {
+                return this;
+            }
+            // Same items, the layout stays shared
+            double[] changed = prices.clone();
+            changed[index] = price;
+            return new PriceTable(dictionary, layout, changed);
+        }
+        if (index < 0 && Double.isNaN(price)) {
+            return this;
+        }
+
+        Map<String, Double> itemPrices = toMap();
+        if (Double.isNaN(price)) {
+            itemPrices.remove(item);
+        } else {
+            itemPrices.put(item, price);
+        }
+        return of(dictionary, itemPrices);
+    }
+
+    @Override
+    public int size() {
+        return prices.length;
+    }
+
+    /**
+     * Checks whether this table uses the same layout instance as another, i.e. the two
+     * markets carry the same items and share the indexes.
+     */
+    public boolean sharesLayoutWith(PriceTable other) {
+        return layout == other.layout;
+    }
+
+    /**
+     * Copies the prices into a map, in item id order.
+     */
+    @Override
+    public Map<String, Double> toMap() {
+        Map<String, Double> itemPrices = new LinkedHashMap<>(prices.length * 2);
+        for (int i = 0; i < prices.length; i++) {
+            itemPrices.put(layout.names[i], prices[i]);
+        }
+        return itemPrices;
+    }
+
+    /**
+     * Sorted item ids and their names with open-addressing indexes from id and from
+     * name to position. Slots hold position + 1, 0 marks an empty slot.
+     */
+    private static final class Layout {
+        final ItemDictionary dictionary;
+        final int[] ids;
+        final String[] names;
+        final int[] idSlots;
+        final int[] nameSlots;
+
+        private Layout(ItemDictionary dictionary, int[] ids) {
+            this.dictionary = dictionary;
+            this.ids = ids;
+            this.names = new String[ids.length];
+            // At most half full, so probe sequences stay short
+            int capacity = Integer.highestOneBit(Math.max(1, ids.length) * 2 - 1) << 1;
+            this.idSlots = new int[capacity];
+            this.nameSlots = new int[capacity];
+            for (int i = 0; i < ids.length; i++) {
+                names[i] = dictionary.name(ids[i]);
+                insert(idSlots, mix(ids[i]), i);
+                insert(nameSlots, mix(names[i].hashCode()), i);
+            }
+        }
+
+        private static void insert(int[] slots, int hash, int position) {
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = position + 1;
+        }
+
+        static Layout intern(ItemDictionary dictionary, int[] ids) {
+            Layout layout = new Layout(dictionary, ids);
+            synchronized (LAYOUTS) {
+                WeakReference<Layout> known = LAYOUTS.get(layout);
+                Layout shared = known != null ? known.get() : null;
+                if (shared != null) {
+                    return shared;
+                }
+                LAYOUTS.put(layout, new WeakReference<>(layout));
+                return layout;
+            }
+        }
+
+        int indexOf(int id) {
+            int mask = idSlots.length - 1;
+            int slot = mix(id) & mask;
+            int position;
+            while ((position = idSlots[slot]) != 0) {
+                if (ids[position - 1] == id) {
+                    return position - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        int indexOf(String name) {
+            int mask = nameSlots.length - 1;
+            int slot = mix(name.hashCode()) & mask;
+            int position;
+            while ((position = nameSlots[slot]) != 0) {
+                if (names[position - 1].equals(name)) {
+                    return position - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int mix(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Layout)) {
+                return false;
+            }
+            Layout other = (Layout) o;
+            return dictionary == other.dictionary && Arrays.equals(ids, other.ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(ids);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.grocerydelivery.catalog;
+
+import com.example.grocerydelivery.utils.HashedTimerWheel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Soft holds on the stock a market quoted, between its PROPOSE and the delivery's
+ * answer.
+ *
+ * A hold takes the quoted units from the {@link StockLedger} right away, so later CFPs
+ * do not see them. An ACCEPT_PROPOSAL confirms the hold for the accepted items and
+ * gives back the rest, a REJECT_PROPOSAL gives back everything, and a hold nobody
+ * answers gives its units back when its time-to-live runs out. Expiry runs on a
+ * {@link HashedTimerWheel} sized so that one turn covers the time-to-live: advancing
+ * it only touches the holds that expire, however many are outstanding.
+ *
+ * Not thread-safe: it belongs to the market agent and is used from its thread.
+ */
+public class StockHolds {
+
+    /** Default time a quoted hold is kept without an answer. */
+    public static final long DEFAULT_TTL_MS = 30000;
+
+    /** Resolution of the expiry timer. */
+    public static final long TICK_MS = 100;
+
+    private final StockLedger ledger;
+    private final long ttlMillis;
+    private final Map<String, Hold> holds = new HashMap<>();
+    private final HashedTimerWheel<Hold> timers;
+    private long placedCount = 0;
+    private long confirmedCount = 0;
+    private long releasedCount = 0;
+    private long expiredCount = 0;
+
+    /**
+     * @param ledger The stock the holds take their units from
+     * @param ttlMillis Time a hold is kept without an answer
+     * @param nowMillis The current time
+     */
+    public StockHolds(StockLedger ledger, long ttlMillis, long nowMillis) {
+        this.ledger = ledger;
+        this.ttlMillis = ttlMillis;
+        this.timers = new HashedTimerWheel<>(TICK_MS, (int) Math.min(1 << 20, ttlMillis / TICK_MS + 2), nowMillis);
+    }
+
+    /**
+     * Builds the key of a hold: the delivery agent and its market conversation.
+     */
+    public static String key(String deliveryName, String conversationId) {
+        return deliveryName + ":" + conversationId;
+    }
+
+    /**
+     * Holds one unit of each quoted item that is still in stock. A market without
+     * stocked items holds nothing and can supply every item.
+     *
+     * @return The items that can be supplied, in quoted order; empty if none is left
+     */
+    public List<String> place(String key, Collection<String> items, long nowMillis) {
+        if (ledger.size() == 0) {
+            return new ArrayList<>(items);
+        }
+        release(key);
+        List<String> held;
+        if (ledger.reserve(items)) {
+            held = new ArrayList<>(items);
+        } else {
+            // Some units ran out since the quote was built, hold the ones that are left
+            held = new ArrayList<>(items.size());
+            for (String item : items) {
+                if (ledger.reserve(Collections.singletonList(item))) {
+                    held.add(item);
+                }
+            }
+            if (held.isEmpty()) {
+                return held;
+            }
+        }
+        Hold hold = new Hold(key, held, nowMillis);
+        hold.timeout = timers.schedule(hold, ttlMillis);
+        holds.put(key, hold);
+        placedCount++;
+        return new ArrayList<>(held);
+    }
+
+    /**
+     * Takes the accepted items for good. The units of a live hold are used and the
+     * held items that were not accepted are given back; without a hold, e.g. after it
+     * expired, the items are taken from the stock that is left.
+     *
+     * @return false if the accepted items are out of stock
+     */
+    public boolean confirm(String key, List<String> items) {
+        Hold hold = holds.remove(key);
+        if (hold == null) {
+            return ledger.reserve(items);
+        }
+        hold.timeout.cancel();
+
+        List<String> notAccepted = new ArrayList<>(hold.items);
+        List<String> notHeld = new ArrayList<>();
+        for (String item : items) {
+            if (!notAccepted.remove(item)) {
+                notHeld.add(item);
+            }
+        }
+        ledger.release(notAccepted);
+        if (!notHeld.isEmpty() && !ledger.reserve(notHeld)) {
+            // Give back the held part of the order too, it cannot be delivered
+            List<String> held = new ArrayList<>(items);
+            for (String item : notHeld) {
+                held.remove(item);
+            }
+            ledger.release(held);
+            return false;
+        }
+        confirmedCount++;
+        return true;
+    }
+
+    /**
+     * Gives back the units of a hold, e.g. when the proposal was rejected.
+     *
+     * @return false if there was no live hold
+     */
+    public boolean release(String key) {
+        Hold hold = holds.remove(key);
+        if (hold == null) {
+            return false;
+        }
+        hold.timeout.cancel();
+        ledger.release(hold.items);
+        releasedCount++;
+        return true;
+    }
+
+    /**
+     * Gives back the units of the holds whose time-to-live has passed.
+     *
+     * @param nowMillis The current time
+     * @return The expired holds
+     */
+    public List<Hold> expire(long nowMillis) {
+        List<Hold> expired = new ArrayList<>();
+        timers.advance(nowMillis, hold -> {
+            holds.remove(hold.key);
+            ledger.release(hold.items);
+            expiredCount++;
+            expired.add(hold);
+        });
+        return expired;
+    }
+
+    /**
+     * Gets the number of live holds.
+     */
+    public int size() {
+        return holds.size();
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d live holds, %d placed, %d confirmed, %d released, %d expired",
+                holds.size(), placedCount, confirmedCount, releasedCount, expiredCount);
+    }
+
+    /**
+     * The units held for one proposal.
+     */
+    public static final class Hold {
+        private final String key;
+        private final List<String> items;
+        private final long placedAt;
+        private HashedTimerWheel.Timeout<Hold> timeout;
+
+        private Hold(String key, List<String> items, long placedAt) {
+            this.key = key;
+            this.items = items;
+            this.placedAt = placedAt;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public long getPlacedAt() {
+            return placedAt;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.grocerydelivery.catalog;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stock quantities of one market with lock-free reservation.
+ *
+ * The set of stocked items is fixed when the ledger is built; items without a stock
+ * entry are unlimited. Quantities live in an {@link AtomicLongArray}, one counter per
+ * cache line, so threads reserving different popular items do not contend on the same
+ * line. A reservation takes one unit per listed item with compare-and-set and is all
+ * or nothing: if any item runs out, the units already taken are put back.
+ */
+public class StockLedger {
+
+    /** Longs per counter: one 64-byte cache line, against false sharing. */
+    private static final int STRIDE = 8;
+
+    private final Map<String, Integer> index;
+    private final AtomicLongArray quantities;
+    private final AtomicLong reservations = new AtomicLong();
+    private final AtomicLong shortages = new AtomicLong();
+
+    /**
+     * @param stock The quantity of every stocked item
+     */
+    public StockLedger(Map<String, Long> stock) {
+        this.index = new HashMap<>(stock.size() * 2);
+        this.quantities = new AtomicLongArray(Math.max(1, stock.size()) * STRIDE);
+        for (Map.Entry<String, Long> entry : stock.entrySet()) {
+            int slot = index.size() * STRIDE;
+            index.put(entry.getKey(), slot);
+            quantities.set(slot, Math.max(0, entry.getValue()));
+        }
+    }
+
+    /**
+     * Gets a ledger without stocked items: everything is unlimited.
+     */
+    public static StockLedger unlimited() {
+        return new StockLedger(new HashMap<>());
+    }
+
+    /**
+     * Gets the available quantity of an item.
+     *
+     * @return The quantity, or Long.MAX_VALUE if the item is not stocked
+     */
+    public long available(String item) {
+        Integer slot = index.get(item);
+        return slot != null ? quantities.get(slot) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Takes one unit of every listed item, or none if any of them is out of stock.
+     * An item listed twice takes two units.
+     *
+     * @return True if every unit was taken
+     */
+    public boolean reserve(Collection<String> items) {
+        int taken = 0;
+        for (String item : items) {
+            if (!take(item)) {
+                // Put back what this reservation already took
+                int putBack = 0;
+                for (String takenItem : items) {
+                    if (putBack == taken) {
+                        break;
+                    }
+                    release(takenItem);
+                    putBack++;
+                }
+                shortages.incrementAndGet();
+                return false;
+            }
+            taken++;
+        }
+        reservations.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Puts back one unit of every listed item.
+     */
+    public void release(Collection<String> items) {
+        for (String item : items) {
+            release(item);
+        }
+    }
+
+    /**
+     * Gets the number of successful reservations.
+     */
+    public long getReservationCount() {
+        return reservations.get();
+    }
+
+    /**
+     * Gets the number of reservations refused for lack of stock.
+     */
+    public long getShortageCount() {
+        return shortages.get();
+    }
+
+    /**
+     * Gets the number of stocked items.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d stocked items, %d reservations, %d refused for lack of stock",
+                size(), reservations.get(), shortages.get());
+    }
+
+    private boolean take(String item) {
+        Integer slot = index.get(item);
+        if (slot == null) {
+            return true;
+        }
+        long quantity;
+        do {
+            quantity = quantities.get(slot);
+            if (quantity <= 0) {
+                return false;
+            }
+        } while (!quantities.compareAndSet(slot, quantity, quantity - 1));
+        return true;
+    }
+
+    private void release(String item) {
+        Integer slot = index.get(item);
+        if (slot != null) {
+            quantities.incrementAndGet(slot);
+        }
+    }
+}
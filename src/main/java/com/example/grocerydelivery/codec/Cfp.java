@@ -0,0 +1,70 @@
+package com.example.grocerydelivery.codec;
+
+import jade.lang.acl.ACLMessage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The items a delivery service asks a market for: the content of a CFP, and of the
+ * ACCEPT_PROPOSAL naming the items it buys.
+ */
+public final class Cfp implements MessageContent {
+
+    static final byte TYPE = 1;
+
+    private final List<String> items;
+
+    public Cfp(List<String> items) {
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    public static Cfp of(String... items) {
+        return new Cfp(Arrays.asList(items));
+    }
+
+    /**
+     * Reads the content of a message.
+     *
+     * @throws IllegalArgumentException If the message has no CFP content
+     */
+    public static Cfp from(ACLMessage msg) {
+        return decode(msg.getByteSequenceContent());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the content is malformed
+     */
+    public static Cfp decode(byte[] content) {
+        ContentReader reader = new ContentReader(content, TYPE, "CFP");
+        String[] items = new String[reader.readCount()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = reader.readString();
+        }
+        reader.end();
+        return new Cfp(Arrays.asList(items));
+    }
+
+    @Override
+    public byte[] encode() {
+        int size = ContentWriter.sizeOf(items.size());
+        for (String item : items) {
+            size += ContentWriter.sizeOf(item);
+        }
+        ContentWriter writer = new ContentWriter(TYPE, size).writeVarint(items.size());
+        for (String item : items) {
+            writer.writeString(item);
+        }
+        return writer.toByteArray();
+    }
+
+    public List<String> getItems() {
+        return items;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", items);
+    }
+}
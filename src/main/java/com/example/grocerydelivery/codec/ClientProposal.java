@@ -0,0 +1,113 @@
+package com.example.grocerydelivery.codec;
+
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A delivery service's offer for an order: the content of its PROPOSE to the client.
+ * Only a complete order is a success; a partial one lists the unavailable items.
+ */
+public final class ClientProposal implements MessageContent {
+
+    static final byte TYPE = 3;
+
+    private final boolean success;
+    private final double totalPrice;
+    private final Map<String, Double> itemPrices;
+    private final List<String> unavailableItems;
+
+    /**
+     * @param success Whether every item can be delivered
+     * @param totalPrice Price of the items plus the delivery fee
+     * @param itemPrices The price of every item that can be delivered
+     * @param unavailableItems The items no market could supply
+     */
+    public ClientProposal(boolean success, double totalPrice, Map<String, Double> itemPrices,
+                          Collection<String> unavailableItems) {
+        this.success = success;
+        this.totalPrice = totalPrice;
+        this.itemPrices = Collections.unmodifiableMap(itemPrices);
+        this.unavailableItems = Collections.unmodifiableList(new ArrayList<>(unavailableItems));
+    }
+
+    /**
+     * Reads the content of a message.
+     *
+     * @throws IllegalArgumentException If the message has no proposal content
+     */
+    public static ClientProposal from(ACLMessage msg) {
+        return decode(msg.getByteSequenceContent());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the content is malformed
+     */
+    public static ClientProposal decode(byte[] content) {
+        ContentReader reader = new ContentReader(content, TYPE, "client proposal");
+        boolean success = reader.readBoolean();
+        double totalPrice = reader.readDouble();
+        int count = reader.readCount();
+        Map<String, Double> itemPrices = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            itemPrices.put(reader.readString(), reader.readDouble());
+        }
+        int unavailableCount = reader.readCount();
+        List<String> unavailableItems = new ArrayList<>(unavailableCount);
+        for (int i = 0; i < unavailableCount; i++) {
+            unavailableItems.add(reader.readString());
+        }
+        reader.end();
+        return new ClientProposal(success, totalPrice, itemPrices, unavailableItems);
+    }
+
+    @Override
+    public byte[] encode() {
+        int size = 1 + ContentWriter.DOUBLE_SIZE + ContentWriter.sizeOf(itemPrices.size())
+                + ContentWriter.sizeOf(unavailableItems.size());
+        for (String item : itemPrices.keySet()) {
+            size += ContentWriter.sizeOf(item) + ContentWriter.DOUBLE_SIZE;
+        }
+        for (String item : unavailableItems) {
+            size += ContentWriter.sizeOf(item);
+        }
+        ContentWriter writer = new ContentWriter(TYPE, size)
+                .writeBoolean(success)
+                .writeDouble(totalPrice)
+                .writeVarint(itemPrices.size());
+        for (Map.Entry<String, Double> entry : itemPrices.entrySet()) {
+            writer.writeString(entry.getKey()).writeDouble(entry.getValue());
+        }
+        writer.writeVarint(unavailableItems.size());
+        for (String item : unavailableItems) {
+            writer.writeString(item);
+        }
+        return writer.toByteArray();
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public double getTotalPrice() {
+        return totalPrice;
+    }
+
+    public Map<String, Double> getItemPrices() {
+        return itemPrices;
+    }
+
+    public List<String> getUnavailableItems() {
+        return unavailableItems;
+    }
+
+    @Override
+    public String toString() {
+        return (success ? "SUCCESS " : "FAILURE ") + totalPrice + " " + itemPrices + " unavailable " + unavailableItems;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.grocerydelivery.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads message content written by a {@link ContentWriter}.
+ */
+final class ContentReader {
+
+    private final byte[] buffer;
+    private final String type;
+    private int position;
+
+    /**
+     * @param content The encoded content
+     * @param expectedType The type byte the content must start with
+     * @param type Name of the content type for error messages
+     * @throws IllegalArgumentException If the content has another type
+     */
+    ContentReader(byte[] content, byte expectedType, String type) {
+        this.buffer = content;
+        this.type = type;
+        if (content == null || content.length == 0 || content[0] != expectedType) {
+            throw new IllegalArgumentException("Not a " + type + " content");
+        }
+        this.position = 1;
+    }
+
+    int readVarint() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = next();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw malformed();
+    }
+
+    /**
+     * Reads a count, checking that at least one byte per element is left.
+     */
+    int readCount() {
+        int count = readVarint();
+        if (count < 0 || count > buffer.length - position) {
+            throw malformed();
+        }
+        return count;
+    }
+
+    boolean readBoolean() {
+        return next() != 0;
+    }
+
+    double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    long readLong() {
+        if (buffer.length - position < ContentWriter.DOUBLE_SIZE) {
+            throw malformed();
+        }
+        long value = 0;
+        for (int i = 0; i < ContentWriter.DOUBLE_SIZE; i++) {
+            value = (value << 8) | (buffer[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    String readString() {
+        int length = readCount();
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads price changes written by {@link ContentWriter#writePriceChanges}.
+     *
+     * @return The new price of every item, null for removed items
+     */
+    Map<String, Double> readPriceChanges() {
+        int count = readCount();
+        Map<String, Double> changes = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String item = readString();
+            changes.put(item, readBoolean() ? readDouble() : null);
+        }
+        return changes;
+    }
+
+    /**
+     * Checks that the whole content was read.
+     */
+    void end() {
+        if (position != buffer.length) {
+            throw malformed();
+        }
+    }
+
+    private byte next() {
+        if (position >= buffer.length) {
+            throw malformed();
+        }
+        return buffer[position++];
+    }
+
+    private IllegalArgumentException malformed() {
+        return new IllegalArgumentException("Malformed " + type + " content");
+    }
+}
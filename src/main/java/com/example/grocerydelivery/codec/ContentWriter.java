@@ -0,0 +1,133 @@
+package com.example.grocerydelivery.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes message content into an array sized up front from the field sizes. Item
+ * names are ASCII in practice and are copied char by char; other strings go through
+ * the UTF-8 encoder.
+ */
+final class ContentWriter {
+
+    static final int DOUBLE_SIZE = 8;
+
+    private final byte[] buffer;
+    private int position;
+
+    /**
+     * @param type The type byte of the content
+     * @param size The size of the fields after the type byte
+     */
+    ContentWriter(byte type, int size) {
+        buffer = new byte[size + 1];
+        buffer[0] = type;
+        position = 1;
+    }
+
+    /**
+     * Gets the encoded size of a string: its UTF-8 length and the bytes.
+     */
+    static int sizeOf(String value) {
+        int length = utf8Length(value);
+        return sizeOf(length) + length;
+    }
+
+    /**
+     * Gets the encoded size of a varint.
+     */
+    static int sizeOf(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    ContentWriter writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    ContentWriter writeBoolean(boolean value) {
+        buffer[position++] = (byte) (value ? 1 : 0);
+        return this;
+    }
+
+    ContentWriter writeDouble(double value) {
+        return writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    ContentWriter writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+        return this;
+    }
+
+    ContentWriter writeString(String value) {
+        if (isAscii(value)) {
+            writeVarint(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+        return this;
+    }
+
+    /**
+     * Gets the encoded size of price changes written by {@link #writePriceChanges}.
+     */
+    static int sizeOfPriceChanges(Map<String, Double> changes) {
+        int size = sizeOf(changes.size());
+        for (Map.Entry<String, Double> change : changes.entrySet()) {
+            size += sizeOf(change.getKey()) + 1 + (change.getValue() != null ? DOUBLE_SIZE : 0);
+        }
+        return size;
+    }
+
+    /**
+     * Writes price changes: the count, then per item its name, whether it has a price
+     * and the price. An item without a price is removed.
+     */
+    ContentWriter writePriceChanges(Map<String, Double> changes) {
+        writeVarint(changes.size());
+        for (Map.Entry<String, Double> change : changes.entrySet()) {
+            writeString(change.getKey()).writeBoolean(change.getValue() != null);
+            if (change.getValue() != null) {
+                writeDouble(change.getValue());
+            }
+        }
+        return this;
+    }
+
+    byte[] toByteArray() {
+        if (position != buffer.length) {
+            throw new IllegalStateException("Wrote " + position + " of " + buffer.length + " bytes");
+        }
+        return buffer;
+    }
+
+    private static int utf8Length(String value) {
+        return isAscii(value) ? value.length() : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.grocerydelivery.codec;
+
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Typed content of the order messages, carried as compact binary in the byte
+ * content of an ACL message.
+ *
+ * The first byte names the type, followed by the fields: counts and string lengths
+ * as varints, strings as UTF-8 and prices as the 8 bytes of the double, so a price
+ * arrives exactly as it was sent. Encoding allocates exactly one array, and within a
+ * container JADE hands the same array to every receiver of a message.
+ */
+public interface MessageContent {
+
+    /**
+     * Encodes this content.
+     */
+    byte[] encode();
+
+    /**
+     * Sets this content as the byte content of a message.
+     */
+    default void writeTo(ACLMessage msg) {
+        msg.setByteSequenceContent(encode());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.grocerydelivery.codec;
+
+import jade.lang.acl.ACLMessage;
+
+/**
+ * The amount a client pays for the proposal it accepts: the content of its
+ * ACCEPT_PROPOSAL.
+ */
+public final class Payment implements MessageContent {
+
+    static final byte TYPE = 4;
+
+    private final double amount;
+
+    public Payment(double amount) {
+        this.amount = amount;
+    }
+
+    /**
+     * Reads the content of a message.
+     *
+     * @throws IllegalArgumentException If the message has no payment content
+     */
+    public static Payment from(ACLMessage msg) {
+        return decode(msg.getByteSequenceContent());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the content is malformed
+     */
+    public static Payment decode(byte[] content) {
+        ContentReader reader = new ContentReader(content, TYPE, "payment");
+        double amount = reader.readDouble();
+        reader.end();
+        return new Payment(amount);
+    }
+
+    @Override
+    public byte[] encode() {
+        return new ContentWriter(TYPE, ContentWriter.DOUBLE_SIZE).writeDouble(amount).toByteArray();
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "PAYMENT " + amount;
+    }
+}
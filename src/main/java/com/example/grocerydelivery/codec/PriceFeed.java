@@ -0,0 +1,79 @@
+package com.example.grocerydelivery.codec;
+
+import jade.lang.acl.ACLMessage;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The prices a market pushes to a subscribed delivery service: the content of its
+ * price feed INFORMs. A snapshot carries every price, a delta the changes since the
+ * previous version, where an item without a price has been removed.
+ */
+public final class PriceFeed implements MessageContent {
+
+    static final byte TYPE = 5;
+
+    private final boolean snapshot;
+    private final long version;
+    private final Map<String, Double> prices;
+
+    /**
+     * @param snapshot Whether the prices are complete rather than changes
+     * @param version Version of the market prices
+     * @param prices The prices; a null price means the item was removed
+     */
+    public PriceFeed(boolean snapshot, long version, Map<String, Double> prices) {
+        this.snapshot = snapshot;
+        this.version = version;
+        this.prices = Collections.unmodifiableMap(prices);
+    }
+
+    /**
+     * Reads the content of a message.
+     *
+     * @throws IllegalArgumentException If the message has no price feed content
+     */
+    public static PriceFeed from(ACLMessage msg) {
+        return decode(msg.getByteSequenceContent());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the content is malformed
+     */
+    public static PriceFeed decode(byte[] content) {
+        ContentReader reader = new ContentReader(content, TYPE, "price feed");
+        boolean snapshot = reader.readBoolean();
+        long version = reader.readLong();
+        Map<String, Double> prices = reader.readPriceChanges();
+        reader.end();
+        return new PriceFeed(snapshot, version, prices);
+    }
+
+    @Override
+    public byte[] encode() {
+        int size = 1 + ContentWriter.DOUBLE_SIZE + ContentWriter.sizeOfPriceChanges(prices);
+        return new ContentWriter(TYPE, size)
+                .writeBoolean(snapshot)
+                .writeLong(version)
+                .writePriceChanges(prices)
+                .toByteArray();
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, Double> getPrices() {
+        return prices;
+    }
+
+    @Override
+    public String toString() {
+        return (snapshot ? "SNAPSHOT " : "DELTA ") + version + " " + prices;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.grocerydelivery.codec;
+
+import jade.lang.acl.ACLMessage;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Price changes requested from a running market: the content of a price-update
+ * REQUEST. An item without a price is removed, an item the market does not carry yet
+ * is added.
+ */
+public final class PriceUpdate implements MessageContent {
+
+    static final byte TYPE = 6;
+
+    private final Map<String, Double> changes;
+
+    /**
+     * @param changes The new price of every item, null to remove the item
+     * @throws IllegalArgumentException If there are no changes, an item name is empty or
+     *                                  a price is negative or not finite
+     */
+    public PriceUpdate(Map<String, Double> changes) {
+        if (changes.isEmpty()) {
+            throw new IllegalArgumentException("No price changes");
+        }
+        for (Map.Entry<String, Double> change : changes.entrySet()) {
+            Double price = change.getValue();
+            if (change.getKey().trim().isEmpty()) {
+                throw new IllegalArgumentException("Price change without an item");
+            }
+            if (price != null && !(price >= 0 && price < Double.POSITIVE_INFINITY)) {
+                throw new IllegalArgumentException("Invalid price for " + change.getKey() + ": " + price);
+            }
+        }
+        this.changes = Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * Reads the content of a message.
+     *
+     * @throws IllegalArgumentException If the message has no valid price update content
+     */
+    public static PriceUpdate from(ACLMessage msg) {
+        return decode(msg.getByteSequenceContent());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the content is malformed
+     */
+    public static PriceUpdate decode(byte[] content) {
+        ContentReader reader = new ContentReader(content, TYPE, "price update");
+        Map<String, Double> changes = reader.readPriceChanges();
+        reader.end();
+        return new PriceUpdate(changes);
+    }
+
+    @Override
+    public byte[] encode() {
+        return new ContentWriter(TYPE, ContentWriter.sizeOfPriceChanges(changes))
+                .writePriceChanges(changes)
+                .toByteArray();
+    }
+
+    public Map<String, Double> getChanges() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return "PRICE-UPDATE " + changes;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.grocerydelivery.codec;
+
+import jade.lang.acl.ACLMessage;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A market's prices for the requested items it carries: the content of its PROPOSE.
+ */
+public final class Quote implements MessageContent {
+
+    static final byte TYPE = 2;
+
+    private final Map<String, Double> prices;
+
+    /**
+     * @param prices The price of each offered item, in the order of the request
+     */
+    public Quote(Map<String, Double> prices) {
+        this.prices = Collections.unmodifiableMap(prices);
+    }
+
+    /**
+     * Reads the content of a message.
+     *
+     * @throws IllegalArgumentException If the message has no quote content
+     */
+    public static Quote from(ACLMessage msg) {
+        return decode(msg.getByteSequenceContent());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the content is malformed
+     */
+    public static Quote decode(byte[] content) {
+        ContentReader reader = new ContentReader(content, TYPE, "quote");
+        int count = reader.readCount();
+        Map<String, Double> prices = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            prices.put(reader.readString(), reader.readDouble());
+        }
+        reader.end();
+        return new Quote(prices);
+    }
+
+    @Override
+    public byte[] encode() {
+        int size = ContentWriter.sizeOf(prices.size());
+        for (String item : prices.keySet()) {
+            size += ContentWriter.sizeOf(item) + ContentWriter.DOUBLE_SIZE;
+        }
+        ContentWriter writer = new ContentWriter(TYPE, size).writeVarint(prices.size());
+        for (Map.Entry<String, Double> entry : prices.entrySet()) {
+            writer.writeString(entry.getKey()).writeDouble(entry.getValue());
+        }
+        return writer.toByteArray();
+    }
+
+    public Map<String, Double> getPrices() {
+        return prices;
+    }
+
+    public int getCount() {
+        return prices.size();
+    }
+
+    /**
+     * Gets the sum of the offered prices.
+     */
+    public double getTotal() {
+        double total = 0.0;
+        for (double price : prices.values()) {
+            total += price;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return getCount() + " items " + prices;
+    }
+}
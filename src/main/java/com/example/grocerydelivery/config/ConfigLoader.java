@@ -43,26 +43,49 @@ public class ConfigLoader {
             String name = (String) market.get("name");
             marketConfig.put("name", name);
             
-            // Add inventory
+            // Add inventory (optional with a catalog file)
             JSONArray inventoryArray = (JSONArray) market.get("inventory");
-            String[] inventory = new String[inventoryArray.size()];
-            for (int i = 0; i < inventoryArray.size(); i++) {
-                inventory[i] = (String) inventoryArray.get(i);
+            if (inventoryArray != null) {
+                String[] inventory = new String[inventoryArray.size()];
+                for (int i = 0; i < inventoryArray.size(); i++) {
+                    inventory[i] = (String) inventoryArray.get(i);
+                }
+                marketConfig.put("inventory", inventory);
             }
-            marketConfig.put("inventory", inventory);
             
-            // Add prices
+            // Add prices (optional with a catalog file)
             JSONObject pricesObj = (JSONObject) market.get("prices");
-            Object[][] prices = new Object[pricesObj.size()][2];
-            int i = 0;
-            for (Object key : pricesObj.keySet()) {
-                String item = (String) key;
-                Double price = ((Number) pricesObj.get(item)).doubleValue();
-                prices[i][0] = item;
-                prices[i][1] = price;
-                i++;
+            if (pricesObj != null) {
+                Object[][] prices = new Object[pricesObj.size()][2];
+                int i = 0;
+                for (Object key : pricesObj.keySet()) {
+                    String item = (String) key;
+                    Double price = ((Number) pricesObj.get(item)).doubleValue();
+                    prices[i][0] = item;
+                    prices[i][1] = price;
+                    i++;
+                }
+                marketConfig.put("prices", prices);
+            }
+            
+            // Add stock quantities if specified
+            if (market.containsKey("stock")) {
+                JSONObject stockObj = (JSONObject) market.get("stock");
+                Map<String, Long> stock = new HashMap<>();
+                for (Object key : stockObj.keySet()) {
+                    stock.put((String) key, ((Number) stockObj.get(key)).longValue());
+                }
+                marketConfig.put("stock", stock);
+            }
+            
+            if (market.containsKey("holdTtlMs")) {
+                marketConfig.put("holdTtlMs", ((Number) market.get("holdTtlMs")).longValue());
+            }
+            
+            // Add catalog file if specified
+            if (market.containsKey("catalogFile")) {
+                marketConfig.put("catalogFile", (String) market.get("catalogFile"));
             }
-            marketConfig.put("prices", prices);
             
             markets.add(marketConfig);
         }
@@ -90,6 +113,56 @@ public class ConfigLoader {
             double fee = ((Number) service.get("fee")).doubleValue();
             serviceConfig.put("fee", fee);
             
+            // Add optional market selection settings
+            if (service.containsKey("selectionStrategy")) {
+                serviceConfig.put("selectionStrategy", (String) service.get("selectionStrategy"));
+            }
+            if (service.containsKey("selectionBudgetMs")) {
+                serviceConfig.put("selectionBudgetMs", ((Number) service.get("selectionBudgetMs")).longValue());
+            }
+            if (service.containsKey("marketVisitCost")) {
+                serviceConfig.put("marketVisitCost", ((Number) service.get("marketVisitCost")).doubleValue());
+            }
+            if (service.containsKey("parallelThreshold")) {
+                serviceConfig.put("parallelThreshold", ((Number) service.get("parallelThreshold")).intValue());
+            }
+            if (service.containsKey("localQuotes")) {
+                serviceConfig.put("localQuotes", (Boolean) service.get("localQuotes"));
+            }
+            if (service.containsKey("assignmentCacheSize")) {
+                serviceConfig.put("assignmentCacheSize", ((Number) service.get("assignmentCacheSize")).intValue());
+            }
+            if (service.containsKey("conversationTtlMs")) {
+                serviceConfig.put("conversationTtlMs", ((Number) service.get("conversationTtlMs")).longValue());
+            }
+            if (service.containsKey("replyPercentile")) {
+                serviceConfig.put("replyPercentile", ((Number) service.get("replyPercentile")).doubleValue());
+            }
+            if (service.containsKey("replyMultiplier")) {
+                serviceConfig.put("replyMultiplier", ((Number) service.get("replyMultiplier")).doubleValue());
+            }
+            if (service.containsKey("replyFloorMs")) {
+                serviceConfig.put("replyFloorMs", ((Number) service.get("replyFloorMs")).longValue());
+            }
+            if (service.containsKey("replyCeilingMs")) {
+                serviceConfig.put("replyCeilingMs", ((Number) service.get("replyCeilingMs")).longValue());
+            }
+            if (service.containsKey("slowMarketMisses")) {
+                serviceConfig.put("slowMarketMisses", ((Number) service.get("slowMarketMisses")).intValue());
+            }
+            if (service.containsKey("slowMarketCooldownMs")) {
+                serviceConfig.put("slowMarketCooldownMs", ((Number) service.get("slowMarketCooldownMs")).longValue());
+            }
+            if (service.containsKey("earlyClose")) {
+                serviceConfig.put("earlyClose", (Boolean) service.get("earlyClose"));
+            }
+            if (service.containsKey("earlyCloseQuorum")) {
+                serviceConfig.put("earlyCloseQuorum", ((Number) service.get("earlyCloseQuorum")).intValue());
+            }
+            if (service.containsKey("earlyCloseGraceMs")) {
+                serviceConfig.put("earlyCloseGraceMs", ((Number) service.get("earlyCloseGraceMs")).longValue());
+            }
+            
             // Add connected markets
             JSONArray marketsArray = (JSONArray) service.get("connectedMarkets");
             String[] markets = new String[marketsArray.size()];
@@ -128,6 +201,20 @@ public class ConfigLoader {
             }
             clientConfig.put("shoppingList", shoppingList);
             
+            // Add optional decision deadlines and good-enough rule
+            if (client.containsKey("proposalTimeoutMs")) {
+                clientConfig.put("proposalTimeoutMs", ((Number) client.get("proposalTimeoutMs")).longValue());
+            }
+            if (client.containsKey("confirmationTimeoutMs")) {
+                clientConfig.put("confirmationTimeoutMs", ((Number) client.get("confirmationTimeoutMs")).longValue());
+            }
+            if (client.containsKey("goodEnoughAfter")) {
+                clientConfig.put("goodEnoughAfter", ((Number) client.get("goodEnoughAfter")).intValue());
+            }
+            if (client.containsKey("goodEnoughPercent")) {
+                clientConfig.put("goodEnoughPercent", ((Number) client.get("goodEnoughPercent")).doubleValue());
+            }
+            
             clients.add(clientConfig);
         }
         
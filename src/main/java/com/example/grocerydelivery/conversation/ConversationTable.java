@@ -0,0 +1,209 @@
+package com.example.grocerydelivery.conversation;
+
+import com.example.grocerydelivery.utils.HashedTimerWheel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The client conversations a delivery agent is working on, with their state and
+ * timestamps.
+ *
+ * A conversation expires when it stays in one state longer than the time-to-live, for
+ * example a client that never answers a proposal or a negotiation whose proposal never
+ * went out. Expiry runs on a {@link HashedTimerWheel} that the owner advances
+ * periodically, so a table of any size costs nothing between ticks. Gauges per state
+ * and counters of opened, closed and expired conversations show the memory held by
+ * in-flight orders.
+ *
+ * Not thread-safe: it belongs to the delivery agent and is used from its thread.
+ */
+public class ConversationTable {
+
+    /** Lifecycle of an order conversation. */
+    public enum State {
+        NEGOTIATING, PROPOSED, PAID
+    }
+
+    /** Default time a conversation may stay in one state. */
+    public static final long DEFAULT_TTL_MS = 60000;
+
+    /** Resolution of the expiry timer. */
+    public static final long TICK_MS = 1000;
+
+    private static final int WHEEL_SIZE = 64;
+
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final HashedTimerWheel<Entry> timers;
+    private final int[] stateCounts = new int[State.values().length];
+    private final long[] expiredCounts = new long[State.values().length];
+    private long openedCount = 0;
+    private long closedCount = 0;
+
+    /**
+     * @param ttlMillis Time a conversation may stay in one state
+     * @param nowMillis The current time
+     */
+    public ConversationTable(long ttlMillis, long nowMillis) {
+        this.ttlMillis = ttlMillis;
+        this.timers = new HashedTimerWheel<>(TICK_MS, WHEEL_SIZE, nowMillis);
+    }
+
+    /**
+     * Builds the key of a client conversation.
+     */
+    public static String key(String clientName, String conversationId) {
+        return clientName + ":" + conversationId;
+    }
+
+    /**
+     * Opens a conversation in state NEGOTIATING.
+     *
+     * @return false if the conversation is already open
+     */
+    public boolean open(String key, long nowMillis) {
+        if (entries.containsKey(key)) {
+            return false;
+        }
+        Entry entry = new Entry(key, nowMillis);
+        entries.put(key, entry);
+        stateCounts[entry.state.ordinal()]++;
+        entry.timeout = timers.schedule(entry, ttlMillis);
+        openedCount++;
+        return true;
+    }
+
+    /**
+     * Moves an open conversation to a new state and restarts its time-to-live.
+     *
+     * @return The conversation, or null if it is not open (closed or expired)
+     */
+    public Entry update(String key, State state, long nowMillis) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        stateCounts[entry.state.ordinal()]--;
+        stateCounts[state.ordinal()]++;
+        entry.state = state;
+        entry.updatedAt = nowMillis;
+        entry.timeout.cancel();
+        entry.timeout = timers.schedule(entry, ttlMillis);
+        return entry;
+    }
+
+    /**
+     * Closes a conversation that ended normally.
+     *
+     * @return The conversation, or null if it was not open
+     */
+    public Entry close(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.timeout.cancel();
+        stateCounts[entry.state.ordinal()]--;
+        closedCount++;
+        return entry;
+    }
+
+    /**
+     * Removes the conversations whose time-to-live has passed.
+     *
+     * @param nowMillis The current time
+     * @return The expired conversations
+     */
+    public List<Entry> expire(long nowMillis) {
+        List<Entry> expired = new ArrayList<>();
+        timers.advance(nowMillis, entry -> {
+            entries.remove(entry.key);
+            stateCounts[entry.state.ordinal()]--;
+            expiredCounts[entry.state.ordinal()]++;
+            expired.add(entry);
+        });
+        return expired;
+    }
+
+    /**
+     * Gets an open conversation.
+     *
+     * @return The conversation, or null if it is not open (closed or expired)
+     */
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Gets the number of open conversations.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of open conversations in a state.
+     */
+    public int count(State state) {
+        return stateCounts[state.ordinal()];
+    }
+
+    /**
+     * Gets the number of conversations that expired in a state.
+     */
+    public long getExpiredCount(State state) {
+        return expiredCounts[state.ordinal()];
+    }
+
+    public long getOpenedCount() {
+        return openedCount;
+    }
+
+    public long getClosedCount() {
+        return closedCount;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * One open conversation.
+     */
+    public static final class Entry {
+        private final String key;
+        private final long createdAt;
+        private long updatedAt;
+        private State state = State.NEGOTIATING;
+        private HashedTimerWheel.Timeout<Entry> timeout;
+
+        private Entry(String key, long createdAt) {
+            this.key = key;
+            this.createdAt = createdAt;
+            this.updatedAt = createdAt;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public long getUpdatedAt() {
+            return updatedAt;
+        }
+    }
+}
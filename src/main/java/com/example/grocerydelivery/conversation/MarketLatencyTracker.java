@@ -0,0 +1,206 @@
+package com.example.grocerydelivery.conversation;
+
+import com.example.grocerydelivery.utils.LatencyHistogram;
+import jade.core.AID;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CFP response latency of each market, as seen by one delivery agent.
+ *
+ * The reply-by date of a CFP is a percentile of the observed latencies times a
+ * multiplier, clamped between a floor and a ceiling. A market without enough samples
+ * yet gets the ceiling, so the window only shrinks once the markets showed what they
+ * deliver. A market that misses its deadline several times in a row is marked slow and
+ * left out of the CFPs for a cooldown. After the cooldown its next CFP is a probe: one
+ * more miss marks it slow again, an answer in time clears its misses.
+ *
+ * Not thread-safe: it belongs to the delivery agent and is used from its thread.
+ */
+public class MarketLatencyTracker {
+
+    public static final double DEFAULT_PERCENTILE = 99.0;
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+    public static final long DEFAULT_FLOOR_MS = 500;
+    public static final long DEFAULT_CEILING_MS = 10000;
+    public static final int DEFAULT_SLOW_AFTER_MISSES = 3;
+    public static final long DEFAULT_SLOW_COOLDOWN_MS = 30000;
+
+    /** Samples a market needs before its percentile sets the deadline. */
+    private static final int MIN_SAMPLES = 5;
+
+    /** Samples after which the histogram counts are halved. */
+    private static final int HISTOGRAM_WINDOW = 1000;
+
+    private final double percentile;
+    private final double multiplier;
+    private final long floorMillis;
+    private final long ceilingMillis;
+    private final int slowAfterMisses;
+    private final long slowCooldownMillis;
+    private final Map<String, MarketStats> markets = new HashMap<>();
+    private long missCount = 0;
+    private long skippedCount = 0;
+
+    public MarketLatencyTracker() {
+        this(DEFAULT_PERCENTILE, DEFAULT_MULTIPLIER, DEFAULT_FLOOR_MS, DEFAULT_CEILING_MS,
+             DEFAULT_SLOW_AFTER_MISSES, DEFAULT_SLOW_COOLDOWN_MS);
+    }
+
+    /**
+     * @param percentile Percentile of the latencies the deadline is based on
+     * @param multiplier Factor applied to the percentile
+     * @param floorMillis Shortest reply window
+     * @param ceilingMillis Longest reply window, also used while samples are missing
+     * @param slowAfterMisses Consecutive missed deadlines after which a market is slow
+     * @param slowCooldownMillis Time a slow market is left out of the CFPs
+     */
+    public MarketLatencyTracker(double percentile, double multiplier, long floorMillis, long ceilingMillis,
+                                int slowAfterMisses, long slowCooldownMillis) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100]: " + percentile);
+        }
+        this.percentile = percentile;
+        this.multiplier = multiplier;
+        this.floorMillis = floorMillis;
+        this.ceilingMillis = Math.max(floorMillis, ceilingMillis);
+        this.slowAfterMisses = slowAfterMisses;
+        this.slowCooldownMillis = slowCooldownMillis;
+    }
+
+    /**
+     * Records a market answer that arrived before the deadline.
+     *
+     * @param market The market
+     * @param latencyMicros Time from sending the CFP to the answer
+     */
+    public void recordResponse(AID market, long latencyMicros) {
+        MarketStats stats = stats(market);
+        stats.latencies.record(latencyMicros);
+        stats.consecutiveMisses = 0;
+        stats.slowUntil = 0;
+    }
+
+    /**
+     * Records a market answer that arrived after the deadline: the latency still counts,
+     * and so does the miss.
+     *
+     * @return true if the market has just been marked slow
+     */
+    public boolean recordLateResponse(AID market, long latencyMicros, long nowMillis) {
+        stats(market).latencies.record(latencyMicros);
+        return recordMiss(market, nowMillis);
+    }
+
+    /**
+     * Records that a market did not answer before the deadline.
+     *
+     * @return true if the market has just been marked slow
+     */
+    public boolean recordMiss(AID market, long nowMillis) {
+        MarketStats stats = stats(market);
+        missCount++;
+        stats.consecutiveMisses++;
+        if (slowAfterMisses > 0 && stats.consecutiveMisses >= slowAfterMisses && stats.slowUntil <= nowMillis) {
+            stats.slowUntil = nowMillis + slowCooldownMillis;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the reply window for a CFP to the given markets: the longest window any of
+     * them needs.
+     */
+    public long replyTimeoutMillis(AID[] receivers) {
+        long timeout = floorMillis;
+        for (AID market : receivers) {
+            timeout = Math.max(timeout, replyTimeoutMillis(market));
+        }
+        return timeout;
+    }
+
+    /**
+     * Gets the reply window a market needs from its observed latencies.
+     */
+    public long replyTimeoutMillis(AID market) {
+        MarketStats stats = markets.get(market.getName());
+        if (stats == null || stats.latencies.getCount() < MIN_SAMPLES) {
+            return ceilingMillis;
+        }
+        double micros = stats.latencies.percentile(percentile) * multiplier;
+        long millis = (long) Math.ceil(micros / 1000.0);
+        return Math.max(floorMillis, Math.min(ceilingMillis, millis));
+    }
+
+    /**
+     * Leaves out the markets that are currently slow. If every market is slow they
+     * are all kept, a late answer is still better than none.
+     *
+     * @return The markets to send the CFP to
+     */
+    public AID[] skipSlow(AID[] candidates, long nowMillis) {
+        List<AID> kept = new ArrayList<>(candidates.length);
+        for (AID market : candidates) {
+            if (!isSlow(market, nowMillis)) {
+                kept.add(market);
+            }
+        }
+        if (kept.isEmpty() || kept.size() == candidates.length) {
+            return candidates;
+        }
+        skippedCount += candidates.length - kept.size();
+        return kept.toArray(new AID[0]);
+    }
+
+    public boolean isSlow(AID market, long nowMillis) {
+        MarketStats stats = markets.get(market.getName());
+        return stats != null && stats.slowUntil > nowMillis;
+    }
+
+    /**
+     * Gets the total number of missed deadlines.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets how often a slow market was left out of a CFP.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, MarketStats> entry : markets.entrySet()) {
+            LatencyHistogram latencies = entry.getValue().latencies;
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(String.format("%s: %d samples, p50 %.1f ms, p%.0f %.1f ms, max %.1f ms",
+                    new AID(entry.getKey(), AID.ISGUID).getLocalName(), latencies.getCount(),
+                    latencies.percentile(50) / 1000.0, percentile, latencies.percentile(percentile) / 1000.0,
+                    latencies.getMax() / 1000.0));
+        }
+        return summary.toString();
+    }
+
+    private MarketStats stats(AID market) {
+        return markets.computeIfAbsent(market.getName(), name -> new MarketStats());
+    }
+
+    /**
+     * What is known about one market.
+     */
+    private static final class MarketStats {
+        final LatencyHistogram latencies = new LatencyHistogram(HISTOGRAM_WINDOW);
+        int consecutiveMisses = 0;
+        long slowUntil = 0;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.grocerydelivery.directory;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Local copy of the DF registrations of one service type, kept current by the
+ * notifications of a DF subscription.
+ *
+ * Once the first notification has arrived, lookups are answered from memory and never
+ * block the agent on the DF. Before that, a lookup falls back to a DF search.
+ * The cache is only used from its agent's thread and is not thread-safe.
+ */
+public class DirectoryCache {
+
+    private final String serviceType;
+    private final Set<AID> agents = new LinkedHashSet<>();
+    private AID[] cached = new AID[0];
+    private boolean ready = false;
+
+    private long hits;
+    private long searches;
+
+    /**
+     * @param serviceType The DF service type to cache, e.g. "grocery-market"
+     */
+    public DirectoryCache(String serviceType) {
+        this.serviceType = serviceType;
+    }
+
+    /**
+     * Creates the DF template matching the cached service type.
+     */
+    public DFAgentDescription createTemplate() {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(serviceType);
+        template.addServices(sd);
+        return template;
+    }
+
+    /**
+     * Applies a DF subscription notification: descriptions offering the service are
+     * (re-)registrations, descriptions without it are deregistrations.
+     */
+    public void apply(DFAgentDescription[] notification) {
+        for (DFAgentDescription dfd : notification) {
+            if (offersService(dfd)) {
+                agents.add(dfd.getName());
+            } else {
+                agents.remove(dfd.getName());
+            }
+        }
+        cached = agents.toArray(new AID[0]);
+        ready = true;
+    }
+
+    private boolean offersService(DFAgentDescription dfd) {
+        Iterator<?> services = dfd.getAllServices();
+        while (services.hasNext()) {
+            if (serviceType.equals(((ServiceDescription) services.next()).getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the registered agents, searching the DF only if no notification arrived yet.
+     *
+     * @param agent The agent doing the lookup
+     * @return The registered agents, in registration order
+     * @throws FIPAException If the fallback DF search fails
+     */
+    public AID[] lookup(Agent agent) throws FIPAException {
+        if (ready) {
+            hits++;
+            return cached.clone();
+        }
+        searches++;
+        DFAgentDescription[] result = DFService.search(agent, createTemplate());
+        AID[] found = new AID[result.length];
+        for (int i = 0; i < result.length; i++) {
+            found[i] = result[i].getName();
+        }
+        return found;
+    }
+
+    /**
+     * Gets the number of registered agents known from notifications.
+     */
+    public int size() {
+        return agents.size();
+    }
+
+    /**
+     * Whether the first notification arrived and lookups are served from memory.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Gets the number of lookups served from memory, i.e. DF round trips avoided.
+     */
+    public long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to search the DF.
+     */
+    public long getSearchCount() {
+        return searches;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.grocerydelivery.selection;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of market assignments, so a basket that is quoted again from
+ * unchanged prices skips the selection algorithm.
+ *
+ * The key is the sorted set of basket item ids plus a 64-bit fingerprint of every
+ * (market, item, price) offer in the snapshot. The fingerprint is a sum of per-offer
+ * hashes and therefore does not depend on the order proposals arrived in; a cached
+ * assignment can only differ from a fresh one in how ties between equally good
+ * markets are broken. The cache is only used from its agent's thread and is not
+ * thread-safe.
+ */
+public class AssignmentCache {
+
+    private final int maximumSize;
+    private final Map<Key, MarketAssignment> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maximumSize Maximum number of cached assignments
+     */
+    public AssignmentCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<Key, MarketAssignment>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MarketAssignment> eldest) {
+                if (size() > AssignmentCache.this.maximumSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the cached assignment for a snapshot, or selects and caches it.
+     *
+     * @param snapshot The parsed market proposals
+     * @param strategy The strategy to select with on a miss
+     * @return The assignment
+     */
+    public MarketAssignment select(QuoteSnapshot snapshot, MarketSelectionStrategy strategy) {
+        Key key = Key.of(snapshot);
+        if (key == null) {
+            misses++;
+            return strategy.select(snapshot);
+        }
+        MarketAssignment assignment = entries.get(key);
+        if (assignment != null) {
+            hits++;
+            return assignment;
+        }
+        misses++;
+        assignment = strategy.select(snapshot);
+        entries.put(key, assignment);
+        return assignment;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHitCount() {
+        return hits;
+    }
+
+    public long getMissCount() {
+        return misses;
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Canonical basket and price fingerprint of a snapshot.
+     */
+    static final class Key {
+        private final int[] basket;
+        private final int marketCount;
+        private final long fingerprint;
+
+        private Key(int[] basket, int marketCount, long fingerprint) {
+            this.basket = basket;
+            this.marketCount = marketCount;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * @return The key, or null if an item of the basket was never offered: it has no
+         *         id, and its name must still appear among the unavailable items
+         */
+        static Key of(QuoteSnapshot snapshot) {
+            int[] basket = new int[snapshot.itemCount()];
+            for (int item = 0; item < basket.length; item++) {
+                basket[item] = snapshot.itemId(item);
+                if (basket[item] < 0) {
+                    return null;
+                }
+            }
+            Arrays.sort(basket);
+
+            long fingerprint = 0;
+            for (int market = 0; market < snapshot.marketCount(); market++) {
+                long marketHash = mix(snapshot.market(market).hashCode());
+                for (int item = 0; item < snapshot.itemCount(); item++) {
+                    if (snapshot.offers(market, item)) {
+                        long offer = mix(marketHash + snapshot.itemId(item));
+                        fingerprint += mix(offer ^ Double.doubleToLongBits(snapshot.price(market, item)));
+                    }
+                }
+            }
+            return new Key(basket, snapshot.marketCount(), fingerprint);
+        }
+
+        /**
+         * SplitMix64 finalizer.
+         */
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return fingerprint == other.fingerprint && marketCount == other.marketCount
+                    && Arrays.equals(basket, other.basket);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(basket) + Long.hashCode(fingerprint);
+        }
+    }
+}
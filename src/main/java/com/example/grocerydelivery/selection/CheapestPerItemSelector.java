@@ -0,0 +1,60 @@
+package com.example.grocerydelivery.selection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Buys every item from the market that offers it at the lowest price, no matter
+ * how many markets that involves. Ties go to the market that proposed first.
+ */
+public class CheapestPerItemSelector implements MarketSelectionStrategy {
+
+    @Override
+    public String getName() {
+        return MarketSelectionStrategies.CHEAPEST_PER_ITEM;
+    }
+
+    @Override
+    public MarketAssignment select(QuoteSnapshot snapshot) {
+        int itemCount = snapshot.itemCount();
+        int[] cheapest = new int[itemCount];
+        Arrays.fill(cheapest, -1);
+        boolean[] used = new boolean[snapshot.marketCount()];
+
+        for (int item = 0; item < itemCount; item++) {
+            for (int market = 0; market < snapshot.marketCount(); market++) {
+                if (snapshot.offers(market, item) && (cheapest[item] < 0
+                        || snapshot.price(market, item) < snapshot.price(cheapest[item], item))) {
+                    cheapest[item] = market;
+                }
+            }
+            if (cheapest[item] >= 0) {
+                used[cheapest[item]] = true;
+            }
+        }
+
+        // One selection per market in snapshot order, items in basket order
+        MarketAssignment assignment = new MarketAssignment();
+        for (int market = 0; market < used.length; market++) {
+            if (!used[market]) {
+                continue;
+            }
+            List<String> items = new ArrayList<>();
+            double[] prices = new double[itemCount];
+            for (int item = 0; item < itemCount; item++) {
+                if (cheapest[item] == market) {
+                    prices[items.size()] = snapshot.price(market, item);
+                    items.add(snapshot.item(item));
+                }
+            }
+            assignment.addSelection(snapshot.market(market), items, Arrays.copyOf(prices, items.size()));
+        }
+        for (int item = 0; item < itemCount; item++) {
+            if (cheapest[item] < 0) {
+                assignment.addUnavailable(snapshot.item(item));
+            }
+        }
+        return assignment;
+    }
+}
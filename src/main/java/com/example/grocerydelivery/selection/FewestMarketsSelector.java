@@ -0,0 +1,37 @@
+package com.example.grocerydelivery.selection;
+
+/**
+ * Buys the basket from as few markets as possible, and among those assignments
+ * picks the cheapest one.
+ *
+ * This is the optimal search with a market visit cost larger than any basket price,
+ * so one market less always wins over a cheaper basket. Like the optimal strategy it
+ * is bounded by a time budget and falls back to the best assignment found so far.
+ */
+public class FewestMarketsSelector extends OptimalMarketSelector {
+
+    public FewestMarketsSelector(long budgetMillis) {
+        super(budgetMillis, 0.0);
+    }
+
+    @Override
+    public String getName() {
+        return MarketSelectionStrategies.FEWEST_MARKETS;
+    }
+
+    @Override
+    public MarketAssignment select(QuoteSnapshot snapshot) {
+        // Larger than the most expensive possible basket
+        double visitCost = 1.0;
+        for (int item = 0; item < snapshot.itemCount(); item++) {
+            double highest = 0.0;
+            for (int market = 0; market < snapshot.marketCount(); market++) {
+                if (snapshot.offers(market, item)) {
+                    highest = Math.max(highest, snapshot.price(market, item));
+                }
+            }
+            visitCost += highest;
+        }
+        return select(snapshot, visitCost);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.grocerydelivery.selection;
+
+/**
+ * The market selection algorithm used by delivery services:
+ * 1. Select the market that has the largest number of the remaining items
+ * 2. If several markets have the same count, choose the one with the lowest price
+ * 3. Repeat for the items that are still missing
+ *
+ * Markets are considered in snapshot order, so when two markets tie on both
+ * count and price the one that proposed first wins.
+ * This class has no JADE dependencies so it can be benchmarked on its own.
+ */
+public class GreedyMarketSelector implements MarketSelectionStrategy {
+
+    @Override
+    public String getName() {
+        return MarketSelectionStrategies.GREEDY;
+    }
+
+    @Override
+    public MarketAssignment select(QuoteSnapshot snapshot) {
+        MarketAssignment assignment = new MarketAssignment();
+        long[] remaining = snapshot.allItems();
+        int remainingCount = snapshot.itemCount();
+        boolean[] selected = new boolean[snapshot.marketCount()];
+
+        while (remainingCount > 0) {
+            int bestMarket = -1;
+            int maxAvailableItems = 0;
+            double lowestTotalPrice = Double.MAX_VALUE;
+
+            for (int market = 0; market < selected.length; market++) {
+                if (selected[market]) {
+                    continue;
+                }
+                int availableCount = snapshot.coveredCount(market, remaining);
+                if (availableCount == 0 || availableCount < maxAvailableItems) {
+                    continue;
+                }
+
+                double totalPrice = snapshot.coveredPrice(market, remaining);
+
+                // Rule 1: Choose market with most items
+                // Rule 2: If same number of items, choose cheapest
+                if (availableCount > maxAvailableItems || totalPrice < lowestTotalPrice) {
+                    maxAvailableItems = availableCount;
+                    lowestTotalPrice = totalPrice;
+                    bestMarket = market;
+                }
+            }
+
+            // If no market has any of the remaining items, stop
+            if (bestMarket < 0) {
+                break;
+            }
+
+            remainingCount -= snapshot.take(bestMarket, remaining, assignment);
+            selected[bestMarket] = true;
+        }
+
+        // Any items still remaining are unavailable
+        snapshot.markUnavailable(remaining, assignment);
+        return assignment;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.grocerydelivery.selection;
+
+import java.util.Arrays;
+
+/**
+ * Lazy-greedy variant of {@link GreedyMarketSelector} that produces exactly the same
+ * assignment without rescanning every market in every iteration.
+ *
+ * Markets are kept in a max-priority queue keyed by (remaining coverage, -price,
+ * -snapshot index). Coverage is a small integer bounded by the basket size, so the
+ * queue is a bucket queue: one list of markets per coverage count. Taking items away
+ * can only lower a market's coverage, and a market whose coverage did not change
+ * still offers the same items at the same price, so a stored key is always an upper
+ * bound of the market's true key. Stale entries are therefore only re-scored when
+ * their bucket is the top one, and a price is only computed for a market that is
+ * current in the top bucket and whose coverage changed since it was last priced.
+ */
+public class LazyGreedyMarketSelector implements MarketSelectionStrategy {
+
+    private static final int NONE = -1;
+
+    @Override
+    public String getName() {
+        return MarketSelectionStrategies.GREEDY;
+    }
+
+    @Override
+    public MarketAssignment select(QuoteSnapshot snapshot) {
+        MarketAssignment assignment = new MarketAssignment();
+        long[] remaining = snapshot.allItems();
+        int remainingCount = snapshot.itemCount();
+        int marketCount = snapshot.marketCount();
+
+        // Intrusive singly linked lists, one per coverage count
+        int[] heads = new int[remainingCount + 1];
+        int[] next = new int[marketCount];
+        // Price of each market and the coverage it was computed for (0 = not computed)
+        double[] prices = new double[marketCount];
+        int[] pricedAt = new int[marketCount];
+        Arrays.fill(heads, NONE);
+
+        for (int market = marketCount - 1; market >= 0; market--) {
+            int count = snapshot.coveredCount(market, remaining);
+            if (count > 0) {
+                next[market] = heads[count];
+                heads[count] = market;
+            }
+        }
+
+        int top = remainingCount;
+        while (remainingCount > 0 && top > 0) {
+            if (heads[top] == NONE) {
+                top--;
+                continue;
+            }
+
+            // Re-score the top bucket: current entries stay, stale ones move down
+            int best = NONE;
+            int kept = NONE;
+            for (int market = heads[top], following; market != NONE; market = following) {
+                following = next[market];
+                int count = snapshot.coveredCount(market, remaining);
+                if (count == top) {
+                    next[market] = kept;
+                    kept = market;
+                    if (pricedAt[market] != count) {
+                        prices[market] = snapshot.coveredPrice(market, remaining);
+                        pricedAt[market] = count;
+                    }
+                    if (best == NONE || prices[market] < prices[best]
+                            || (prices[market] == prices[best] && market < best)) {
+                        best = market;
+                    }
+                } else if (count > 0) {
+                    next[market] = heads[count];
+                    heads[count] = market;
+                }
+            }
+            heads[top] = kept;
+
+            if (best == NONE) {
+                continue;
+            }
+
+            // Unlink the chosen market from the top bucket
+            if (heads[top] == best) {
+                heads[top] = next[best];
+            } else {
+                int previous = heads[top];
+                while (next[previous] != best) {
+                    previous = next[previous];
+                }
+                next[previous] = next[best];
+            }
+
+            remainingCount -= snapshot.take(best, remaining, assignment);
+        }
+
+        // Any items still remaining are unavailable
+        snapshot.markUnavailable(remaining, assignment);
+        return assignment;
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.grocerydelivery.selection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Result of a market selection: which items are bought from which market,
+ * at what price, and which items no market could supply.
+ */
+public final class MarketAssignment {
+
+    private final List<Selection> selections = new ArrayList<>();
+    private final Map<String, Selection> selectionsByMarket = new HashMap<>();
+    private final Map<String, Double> itemPrices = new LinkedHashMap<>();
+    private final Set<String> unavailableItems = new LinkedHashSet<>();
+    private double itemsTotal = 0.0;
+
+    /**
+     * Records that the given items are bought from a market.
+     *
+     * @param market The market name
+     * @param items The items bought from it, in basket order
+     * @param prices The price of each item, parallel to {@code items}
+     */
+    void addSelection(String market, List<String> items, double[] prices) {
+        double total = 0.0;
+        for (int i = 0; i < items.size(); i++) {
+            itemPrices.put(items.get(i), prices[i]);
+            total += prices[i];
+        }
+        itemsTotal += total;
+        Selection selection = new Selection(market, items, total);
+        selections.add(selection);
+        selectionsByMarket.put(market, selection);
+    }
+
+    void addUnavailable(String item) {
+        unavailableItems.add(item);
+    }
+
+    /**
+     * Gets the selected markets in the order they were chosen.
+     */
+    public List<Selection> getSelections() {
+        return Collections.unmodifiableList(selections);
+    }
+
+    /**
+     * Gets the selection of a market in constant time.
+     *
+     * @param market The market name
+     * @return The items bought from the market, or null if it was not selected
+     */
+    public Selection getSelection(String market) {
+        return selectionsByMarket.get(market);
+    }
+
+    /**
+     * Gets the chosen price of every item that could be bought.
+     */
+    public Map<String, Double> getItemPrices() {
+        return Collections.unmodifiableMap(itemPrices);
+    }
+
+    /**
+     * Gets the items that no market could supply.
+     */
+    public Set<String> getUnavailableItems() {
+        return Collections.unmodifiableSet(unavailableItems);
+    }
+
+    /**
+     * Gets the sum of all selected item prices (without delivery fee).
+     */
+    public double getItemsTotal() {
+        return itemsTotal;
+    }
+
+    /**
+     * Whether every item of the basket could be bought.
+     */
+    public boolean isComplete() {
+        return unavailableItems.isEmpty();
+    }
+
+    /**
+     * Builds the assignment that buys the failed items of some markets as chosen in a
+     * replacement assignment; failed items the replacement does not buy become
+     * unavailable. A market keeps the items that did not fail. This assignment is left
+     * unchanged.
+     *
+     * @param failedItems The items to buy elsewhere, by the market that failed them
+     * @param replacement The assignment of the failed items
+     * @return The merged assignment
+     */
+    public MarketAssignment replaceItems(Map<String, ? extends Collection<String>> failedItems, 
+                                         MarketAssignment replacement) {
+        MarketAssignment merged = new MarketAssignment();
+        Set<String> mergedMarkets = new HashSet<>();
+        for (Selection selection : selections) {
+            Collection<String> failed = failedItems.containsKey(selection.market)
+                    ? failedItems.get(selection.market) : Collections.emptySet();
+            List<String> items = new ArrayList<>();
+            List<Double> prices = new ArrayList<>();
+            for (String item : selection.items) {
+                if (!failed.contains(item)) {
+                    items.add(item);
+                    prices.add(itemPrices.get(item));
+                } else if (!replacement.itemPrices.containsKey(item)) {
+                    merged.unavailableItems.add(item);
+                }
+            }
+            Selection extra = replacement.getSelection(selection.market);
+            if (extra != null) {
+                for (String item : extra.items) {
+                    items.add(item);
+                    prices.add(replacement.itemPrices.get(item));
+                }
+                mergedMarkets.add(selection.market);
+            }
+            if (!items.isEmpty()) {
+                merged.addSelection(selection.market, items, prices.stream().mapToDouble(Double::doubleValue).toArray());
+            }
+        }
+        for (Selection selection : replacement.selections) {
+            if (!mergedMarkets.contains(selection.market)) {
+                double[] prices = new double[selection.items.size()];
+                for (int i = 0; i < prices.length; i++) {
+                    prices[i] = replacement.itemPrices.get(selection.items.get(i));
+                }
+                merged.addSelection(selection.market, new ArrayList<>(selection.items), prices);
+            }
+        }
+        merged.unavailableItems.addAll(unavailableItems);
+        merged.unavailableItems.addAll(replacement.unavailableItems);
+        return merged;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MarketAssignment)) {
+            return false;
+        }
+        MarketAssignment other = (MarketAssignment) o;
+        return selections.equals(other.selections) && unavailableItems.equals(other.unavailableItems);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(selections, unavailableItems);
+    }
+
+    @Override
+    public String toString() {
+        return "MarketAssignment" + selections + " unavailable=" + unavailableItems;
+    }
+
+    /**
+     * Items bought from one market.
+     */
+    public static final class Selection {
+        private final String market;
+        private final List<String> items;
+        private final double total;
+
+        Selection(String market, List<String> items, double total) {
+            this.market = market;
+            this.items = Collections.unmodifiableList(items);
+            this.total = total;
+        }
+
+        public String getMarket() {
+            return market;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public double getTotal() {
+            return total;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Selection)) {
+                return false;
+            }
+            Selection other = (Selection) o;
+            return market.equals(other.market) && items.equals(other.items)
+                    && Double.compare(total, other.total) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(market, items, total);
+        }
+
+        @Override
+        public String toString() {
+            return market + items;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.grocerydelivery.selection;
+
+import java.util.Map;
+
+/**
+ * Creates market selection strategies by the name used in the configuration.
+ */
+public final class MarketSelectionStrategies {
+
+    public static final String GREEDY = "greedy";
+    public static final String CHEAPEST_PER_ITEM = "cheapest-per-item";
+    public static final String FEWEST_MARKETS = "fewest-markets";
+    public static final String OPTIMAL = "optimal";
+    public static final String PARALLEL = "parallel";
+
+    private static final long DEFAULT_BUDGET_MS = 50;
+
+    private MarketSelectionStrategies() {
+    }
+
+    /**
+     * Creates a strategy from the settings of a delivery service.
+     *
+     * @param name The strategy name
+     * @param params The delivery service configuration (selectionBudgetMs, marketVisitCost,
+     *               parallelThreshold)
+     * @return A new strategy instance
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    public static MarketSelectionStrategy create(String name, Map<String, Object> params) {
+        long budgetMs = ((Number) params.getOrDefault("selectionBudgetMs", DEFAULT_BUDGET_MS)).longValue();
+        double visitCost = ((Number) params.getOrDefault("marketVisitCost", 0.0)).doubleValue();
+        int parallelThreshold = ((Number) params.getOrDefault("parallelThreshold",
+                ParallelGreedyMarketSelector.DEFAULT_THRESHOLD)).intValue();
+
+        switch (name) {
+            case GREEDY:
+                return new LazyGreedyMarketSelector();
+            case CHEAPEST_PER_ITEM:
+                return new CheapestPerItemSelector();
+            case FEWEST_MARKETS:
+                return new FewestMarketsSelector(budgetMs);
+            case OPTIMAL:
+                return new OptimalMarketSelector(budgetMs, visitCost);
+            case PARALLEL:
+                return new ParallelGreedyMarketSelector(parallelThreshold);
+            default:
+                throw new IllegalArgumentException("Unknown market selection strategy: " + name);
+        }
+    }
+}
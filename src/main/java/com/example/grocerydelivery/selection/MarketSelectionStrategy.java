@@ -0,0 +1,24 @@
+package com.example.grocerydelivery.selection;
+
+/**
+ * Decides which items a delivery service buys from which market.
+ *
+ * Implementations work on a parsed, immutable {@link QuoteSnapshot} and must not
+ * modify it. A strategy instance belongs to one delivery agent and may keep
+ * statistics across selections.
+ */
+public interface MarketSelectionStrategy {
+
+    /**
+     * Gets the name used to pick this strategy in the configuration.
+     */
+    String getName();
+
+    /**
+     * Selects markets for the basket of a snapshot.
+     *
+     * @param snapshot The parsed market proposals
+     * @return The resulting assignment
+     */
+    MarketAssignment select(QuoteSnapshot snapshot);
+}
@@ -0,0 +1,296 @@
+package com.example.grocerydelivery.selection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exact, cost-optimal market selection with a wall-clock budget.
+ *
+ * Every item that at least one market offers is bought, and the assignment minimises
+ * the item prices plus {@code marketVisitCost} for every market used (a weighted set
+ * cover). With a visit cost of zero this is simply the cheapest market per item.
+ *
+ * The search is a depth-first branch and bound over items, most constrained item
+ * first, trying each item's markets from cheapest to most expensive. The greedy
+ * assignment is the initial upper bound, and the lower bound of a partial assignment
+ * adds the cheapest price of every item still unassigned. When the budget runs out the
+ * best assignment found so far is returned, which is the greedy one unless the search
+ * already improved on it.
+ */
+public class OptimalMarketSelector implements MarketSelectionStrategy {
+
+    private static final double EPSILON = 1e-9;
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    private final long budgetNanos;
+    private final double marketVisitCost;
+    private final LazyGreedyMarketSelector greedy = new LazyGreedyMarketSelector();
+
+    private final AtomicLong solved = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * @param budgetMillis Wall-clock budget for one selection
+     * @param marketVisitCost Cost added for every market the assignment uses
+     */
+    public OptimalMarketSelector(long budgetMillis, double marketVisitCost) {
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.marketVisitCost = marketVisitCost;
+    }
+
+    @Override
+    public String getName() {
+        return MarketSelectionStrategies.OPTIMAL;
+    }
+
+    @Override
+    public MarketAssignment select(QuoteSnapshot snapshot) {
+        return select(snapshot, marketVisitCost);
+    }
+
+    /**
+     * Selects the cheapest assignment for a given market visit cost.
+     *
+     * @param snapshot The parsed market proposals
+     * @param visitCost Cost added for every market the assignment uses
+     * @return The cheapest assignment found within the budget
+     */
+    protected MarketAssignment select(QuoteSnapshot snapshot, double visitCost) {
+        long deadline = System.nanoTime() + budgetNanos;
+        MarketAssignment greedyAssignment = greedy.select(snapshot);
+
+        Search search = new Search(snapshot, deadline, visitCost);
+        if (search.timedOut) {
+            timedOut.incrementAndGet();
+            return greedyAssignment;
+        }
+        if (search.itemCount == 0) {
+            solved.incrementAndGet();
+            return greedyAssignment;
+        }
+
+        search.bestCost = greedyAssignment.getItemsTotal()
+                + visitCost * greedyAssignment.getSelections().size() - EPSILON;
+        search.run(0, 0.0);
+
+        if (search.timedOut) {
+            timedOut.incrementAndGet();
+        } else {
+            solved.incrementAndGet();
+        }
+        return search.bestChoice != null ? search.toAssignment() : greedyAssignment;
+    }
+
+    /**
+     * Gets the number of selections that were proven optimal.
+     */
+    public long getSolvedCount() {
+        return solved.get();
+    }
+
+    /**
+     * Gets the number of selections that ran out of budget.
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * State of one branch and bound run.
+     */
+    private final class Search {
+        final QuoteSnapshot snapshot;
+        final long deadline;
+        final double visitCost;
+
+        // Coverable items, most constrained first, with their markets cheapest first
+        final int[] items;
+        final int[][] candidates;
+        final double[] suffixMinPrice;
+        final int itemCount;
+
+        final int[] choice;
+        final int[] openItems;
+        int[] bestChoice;
+        double bestCost;
+
+        long nodes;
+        boolean timedOut;
+
+        Search(QuoteSnapshot snapshot, long deadline, double visitCost) {
+            this.snapshot = snapshot;
+            this.deadline = deadline;
+            this.visitCost = visitCost;
+
+            List<int[]> offers = new ArrayList<>();
+            List<Integer> coverable = new ArrayList<>();
+            int[] buffer = new int[snapshot.marketCount()];
+            int[] scratch = new int[snapshot.marketCount()];
+            for (int item = 0; item < snapshot.itemCount() && !timedOut; item++) {
+                int[] markets = offering(item, buffer, scratch);
+                if (markets.length > 0) {
+                    coverable.add(item);
+                    offers.add(markets);
+                }
+                timedOut = System.nanoTime() - deadline > 0;
+            }
+
+            Integer[] order = new Integer[coverable.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> offers.get(a).length != offers.get(b).length
+                    ? Integer.compare(offers.get(a).length, offers.get(b).length)
+                    : Integer.compare(coverable.get(a), coverable.get(b)));
+
+            this.itemCount = order.length;
+            this.items = new int[itemCount];
+            this.candidates = new int[itemCount][];
+            this.suffixMinPrice = new double[itemCount + 1];
+            for (int i = 0; i < itemCount; i++) {
+                items[i] = coverable.get(order[i]);
+                candidates[i] = offers.get(order[i]);
+            }
+            for (int i = itemCount - 1; i >= 0; i--) {
+                suffixMinPrice[i] = suffixMinPrice[i + 1] + snapshot.price(candidates[i][0], items[i]);
+            }
+
+            this.choice = new int[itemCount];
+            this.openItems = new int[snapshot.marketCount()];
+        }
+
+        /**
+         * Gets the markets offering an item, cheapest first and in snapshot order on ties.
+         */
+        private int[] offering(int item, int[] buffer, int[] scratch) {
+            int count = 0;
+            for (int market = 0; market < snapshot.marketCount(); market++) {
+                if (snapshot.offers(market, item)) {
+                    buffer[count++] = market;
+                }
+            }
+            sortByPrice(item, buffer, scratch, 0, count);
+            return Arrays.copyOf(buffer, count);
+        }
+
+        /**
+         * Stable merge sort of market indexes by their price for an item.
+         */
+        private void sortByPrice(int item, int[] markets, int[] scratch, int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            sortByPrice(item, markets, scratch, from, middle);
+            sortByPrice(item, markets, scratch, middle, to);
+            if (snapshot.price(markets[middle - 1], item) <= snapshot.price(markets[middle], item)) {
+                return;
+            }
+            System.arraycopy(markets, from, scratch, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle
+                        && snapshot.price(scratch[left], item) <= snapshot.price(scratch[right], item))) {
+                    markets[i] = scratch[left++];
+                } else {
+                    markets[i] = scratch[right++];
+                }
+            }
+        }
+
+        void run(int depth, double cost) {
+            if (timedOut || (++nodes % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0)) {
+                timedOut = true;
+                return;
+            }
+            if (cost + suffixMinPrice[depth] + (needsNewMarket(depth) ? visitCost : 0.0) >= bestCost) {
+                return;
+            }
+            if (depth == itemCount) {
+                bestCost = cost - EPSILON;
+                bestChoice = choice.clone();
+                return;
+            }
+
+            int item = items[depth];
+            int[] markets = candidates[depth];
+
+            // If the cheapest market for this item is already used, nothing can beat it
+            if (openItems[markets[0]] > 0) {
+                assign(depth, markets[0], cost + snapshot.price(markets[0], item));
+                return;
+            }
+
+            for (int market : markets) {
+                double price = snapshot.price(market, item);
+                if (cost + price + suffixMinPrice[depth + 1] >= bestCost) {
+                    // Candidates are sorted by price, so the rest cannot do better
+                    break;
+                }
+                double visit = openItems[market] == 0 ? visitCost : 0.0;
+                assign(depth, market, cost + price + visit);
+                if (timedOut) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Whether no market already used offers the item at this depth.
+         */
+        private boolean needsNewMarket(int depth) {
+            if (depth == itemCount || visitCost == 0.0) {
+                return false;
+            }
+            for (int market : candidates[depth]) {
+                if (openItems[market] > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void assign(int depth, int market, double cost) {
+            choice[depth] = market;
+            openItems[market]++;
+            run(depth + 1, cost);
+            openItems[market]--;
+        }
+
+        MarketAssignment toAssignment() {
+            MarketAssignment assignment = new MarketAssignment();
+
+            // One selection per market in snapshot order, items in basket order
+            int[] marketOf = new int[snapshot.itemCount()];
+            Arrays.fill(marketOf, -1);
+            boolean[] used = new boolean[snapshot.marketCount()];
+            for (int i = 0; i < itemCount; i++) {
+                marketOf[items[i]] = bestChoice[i];
+                used[bestChoice[i]] = true;
+            }
+            for (int market = 0; market < used.length; market++) {
+                if (!used[market]) {
+                    continue;
+                }
+                List<String> names = new ArrayList<>();
+                double[] prices = new double[snapshot.itemCount()];
+                for (int item = 0; item < snapshot.itemCount(); item++) {
+                    if (marketOf[item] == market) {
+                        prices[names.size()] = snapshot.price(market, item);
+                        names.add(snapshot.item(item));
+                    }
+                }
+                assignment.addSelection(snapshot.market(market), names, Arrays.copyOf(prices, names.size()));
+            }
+            for (int item = 0; item < snapshot.itemCount(); item++) {
+                if (marketOf[item] < 0) {
+                    assignment.addUnavailable(snapshot.item(item));
+                }
+            }
+            return assignment;
+        }
+    }
+}
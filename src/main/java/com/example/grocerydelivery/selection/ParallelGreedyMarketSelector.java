@@ -0,0 +1,183 @@
+package com.example.grocerydelivery.selection;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Greedy market selection that scores markets in parallel once a snapshot has
+ * enough markets to pay for the fork/join overhead.
+ *
+ * Below the threshold the sequential {@link LazyGreedyMarketSelector} is used. Above
+ * it, every iteration splits the markets into fixed chunks that are scored on a shared
+ * {@link ForkJoinPool}; each chunk keeps its best market, and the chunk results are
+ * then reduced in market order with the same strict comparisons as the sequential
+ * scan. Ties therefore resolve exactly as in {@link GreedyMarketSelector}, whatever
+ * the number of threads.
+ */
+public class ParallelGreedyMarketSelector implements MarketSelectionStrategy {
+
+    /** Default market count above which scoring goes parallel. */
+    public static final int DEFAULT_THRESHOLD = 2048;
+
+    private static final int MIN_CHUNK = 256;
+
+    private final int threshold;
+    private final ForkJoinPool pool;
+    private final LazyGreedyMarketSelector sequential = new LazyGreedyMarketSelector();
+
+    /**
+     * Creates a selector that uses the pool shared by all delivery agents in this JVM.
+     *
+     * @param threshold Market count from which scoring goes parallel
+     */
+    public ParallelGreedyMarketSelector(int threshold) {
+        this(threshold, SharedPool.POOL);
+    }
+
+    /**
+     * @param threshold Market count from which scoring goes parallel
+     * @param pool The pool to score markets on
+     */
+    public ParallelGreedyMarketSelector(int threshold, ForkJoinPool pool) {
+        this.threshold = threshold;
+        this.pool = pool;
+    }
+
+    @Override
+    public String getName() {
+        return MarketSelectionStrategies.PARALLEL;
+    }
+
+    @Override
+    public MarketAssignment select(QuoteSnapshot snapshot) {
+        int marketCount = snapshot.marketCount();
+        if (marketCount < threshold || marketCount == 0) {
+            return sequential.select(snapshot);
+        }
+
+        MarketAssignment assignment = new MarketAssignment();
+        long[] remaining = snapshot.allItems();
+        int remainingCount = snapshot.itemCount();
+        boolean[] selected = new boolean[marketCount];
+
+        int chunkSize = Math.max(MIN_CHUNK, marketCount / (pool.getParallelism() * 4));
+        Scores scores = new Scores(snapshot, remaining, selected, chunkSize);
+
+        while (remainingCount > 0) {
+            pool.invoke(new ScoreTask(scores, 0, scores.chunks));
+
+            // Deterministic reduction in chunk (and therefore market) order
+            int bestMarket = -1;
+            int maxAvailableItems = 0;
+            double lowestTotalPrice = Double.MAX_VALUE;
+            for (int chunk = 0; chunk < scores.chunks; chunk++) {
+                int count = scores.counts[chunk];
+                if (count == 0 || count < maxAvailableItems) {
+                    continue;
+                }
+                if (count > maxAvailableItems || scores.prices[chunk] < lowestTotalPrice) {
+                    maxAvailableItems = count;
+                    lowestTotalPrice = scores.prices[chunk];
+                    bestMarket = scores.markets[chunk];
+                }
+            }
+
+            // If no market has any of the remaining items, stop
+            if (bestMarket < 0) {
+                break;
+            }
+
+            remainingCount -= snapshot.take(bestMarket, remaining, assignment);
+            selected[bestMarket] = true;
+        }
+
+        // Any items still remaining are unavailable
+        snapshot.markUnavailable(remaining, assignment);
+        return assignment;
+    }
+
+    /**
+     * Best market per chunk of the current iteration.
+     */
+    private static final class Scores {
+        final QuoteSnapshot snapshot;
+        final long[] remaining;
+        final boolean[] selected;
+        final int chunkSize;
+        final int chunks;
+        final int[] markets;
+        final int[] counts;
+        final double[] prices;
+
+        Scores(QuoteSnapshot snapshot, long[] remaining, boolean[] selected, int chunkSize) {
+            this.snapshot = snapshot;
+            this.remaining = remaining;
+            this.selected = selected;
+            this.chunkSize = chunkSize;
+            this.chunks = (snapshot.marketCount() + chunkSize - 1) / chunkSize;
+            this.markets = new int[chunks];
+            this.counts = new int[chunks];
+            this.prices = new double[chunks];
+        }
+
+        void score(int chunk) {
+            int from = chunk * chunkSize;
+            int to = Math.min(from + chunkSize, snapshot.marketCount());
+            int bestMarket = -1;
+            int maxAvailableItems = 0;
+            double lowestTotalPrice = Double.MAX_VALUE;
+
+            for (int market = from; market < to; market++) {
+                if (selected[market]) {
+                    continue;
+                }
+                int availableCount = snapshot.coveredCount(market, remaining);
+                if (availableCount == 0 || availableCount < maxAvailableItems) {
+                    continue;
+                }
+                double totalPrice = snapshot.coveredPrice(market, remaining);
+                if (availableCount > maxAvailableItems || totalPrice < lowestTotalPrice) {
+                    maxAvailableItems = availableCount;
+                    lowestTotalPrice = totalPrice;
+                    bestMarket = market;
+                }
+            }
+
+            markets[chunk] = bestMarket;
+            counts[chunk] = maxAvailableItems;
+            prices[chunk] = lowestTotalPrice;
+        }
+    }
+
+    /**
+     * Scores a range of chunks, splitting it in halves until one chunk is left.
+     */
+    private static final class ScoreTask extends RecursiveAction {
+        private final Scores scores;
+        private final int from;
+        private final int to;
+
+        ScoreTask(Scores scores, int from, int to) {
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                scores.score(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ScoreTask(scores, from, middle), new ScoreTask(scores, middle, to));
+        }
+    }
+
+    /**
+     * Pool shared by all delivery agents, created on first use.
+     */
+    private static final class SharedPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.grocerydelivery.selection;
+
+import com.example.grocerydelivery.catalog.ItemDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, parsed view of the market proposals for one basket.
+ *
+ * Basket items are numbered by their position in the basket. For every market the
+ * covered items are stored as a {@code long[]} bitset and the offered prices in a
+ * parallel {@code double[]} column, both flattened into one array per snapshot.
+ * "How many of the remaining items does market M have" is then a popcount of an AND.
+ */
+public final class QuoteSnapshot {
+
+    private final String[] items;
+    private final int[] itemIds;
+    private final String[] markets;
+    private final int words;
+    private final long[] coverage;
+    private final double[] prices;
+
+    private QuoteSnapshot(String[] items, int[] itemIds, String[] markets, long[] coverage, double[] prices) {
+        this.items = items;
+        this.itemIds = itemIds;
+        this.markets = markets;
+        this.words = wordsFor(items.length);
+        this.coverage = coverage;
+        this.prices = prices;
+    }
+
+    /**
+     * Creates a builder for a basket. Duplicate items are only counted once.
+     * Basket items are only looked up in the dictionary: an item is interned once a
+     * market offers it, so arbitrary client item names never grow the dictionary.
+     *
+     * @param dictionary The dictionary of offered item names
+     * @param basket The items the client wants
+     */
+    public static Builder builder(ItemDictionary dictionary, String[] basket) {
+        return new Builder(dictionary, basket);
+    }
+
+    static int wordsFor(int itemCount) {
+        return (itemCount + 63) >>> 6;
+    }
+
+    /**
+     * Gets the number of distinct items in the basket.
+     */
+    public int itemCount() {
+        return items.length;
+    }
+
+    /**
+     * Gets the name of a basket item.
+     */
+    public String item(int item) {
+        return items[item];
+    }
+
+    /**
+     * Gets the dictionary id of a basket item.
+     *
+     * @return The id, or -1 if no market offered the item
+     */
+    public int itemId(int item) {
+        return itemIds[item];
+    }
+
+    /**
+     * Gets the number of markets that made a proposal.
+     */
+    public int marketCount() {
+        return markets.length;
+    }
+
+    /**
+     * Gets the name of a market, in the order proposals were added.
+     */
+    public String market(int market) {
+        return markets[market];
+    }
+
+    /**
+     * Gets the number of 64-bit words in an item bitset of this snapshot.
+     */
+    public int words() {
+        return words;
+    }
+
+    /**
+     * Creates a bitset with every basket item set.
+     */
+    public long[] allItems() {
+        long[] bits = new long[words];
+        for (int i = 0; i < items.length; i++) {
+            bits[i >>> 6] |= 1L << i;
+        }
+        return bits;
+    }
+
+    /**
+     * Whether a market offers a basket item.
+     */
+    public boolean offers(int market, int item) {
+        return (coverage[market * words + (item >>> 6)] & (1L << item)) != 0;
+    }
+
+    /**
+     * Gets the price a market offers for a basket item, or NaN if it does not offer it.
+     */
+    public double price(int market, int item) {
+        return prices[market * items.length + item];
+    }
+
+    /**
+     * Counts how many of the given items a market offers.
+     */
+    public int coveredCount(int market, long[] remaining) {
+        int base = market * words;
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(coverage[base + w] & remaining[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Sums the prices of the given items that a market offers, in basket order.
+     */
+    public double coveredPrice(int market, long[] remaining) {
+        int base = market * words;
+        int priceBase = market * items.length;
+        double total = 0.0;
+        for (int w = 0; w < words; w++) {
+            long bits = coverage[base + w] & remaining[w];
+            while (bits != 0) {
+                total += prices[priceBase + (w << 6) + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Takes the items a market offers out of {@code remaining} and records them
+     * as bought from that market.
+     *
+     * @return The number of items taken
+     */
+    int take(int market, long[] remaining, MarketAssignment assignment) {
+        int base = market * words;
+        int priceBase = market * items.length;
+        List<String> taken = new ArrayList<>();
+        double[] takenPrices = new double[coveredCount(market, remaining)];
+        for (int w = 0; w < words; w++) {
+            long bits = coverage[base + w] & remaining[w];
+            remaining[w] &= ~bits;
+            while (bits != 0) {
+                int item = (w << 6) + Long.numberOfTrailingZeros(bits);
+                takenPrices[taken.size()] = prices[priceBase + item];
+                taken.add(items[item]);
+                bits &= bits - 1;
+            }
+        }
+        assignment.addSelection(markets[market], taken, takenPrices);
+        return taken.size();
+    }
+
+    /**
+     * Records every item still in {@code remaining} as unavailable.
+     */
+    void markUnavailable(long[] remaining, MarketAssignment assignment) {
+        for (int w = 0; w < words; w++) {
+            long bits = remaining[w];
+            while (bits != 0) {
+                assignment.addUnavailable(items[(w << 6) + Long.numberOfTrailingZeros(bits)]);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Collects market proposals into a snapshot.
+     * Prices for items outside the basket are ignored.
+     */
+    public static final class Builder {
+        private final ItemDictionary dictionary;
+        private final String[] items;
+        private final int[] itemIds;
+        private final int words;
+
+        // Open-addressing table from dictionary id to basket position
+        private final int[] slotIds;
+        private final int[] slotPositions;
+        private final int mask;
+        // Basket positions of items not in the dictionary yet, null if there are none
+        private Map<String, Integer> unknownPositions;
+
+        private final List<String> markets = new ArrayList<>();
+        private long[] coverage;
+        private double[] prices;
+        private int current = -1;
+
+        private Builder(ItemDictionary dictionary, String[] basket) {
+            this.dictionary = dictionary;
+
+            int capacity = Integer.highestOneBit(Math.max(basket.length, 1) * 4 - 1) << 1;
+            this.slotIds = new int[capacity];
+            this.slotPositions = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(slotIds, -1);
+
+            String[] names = new String[basket.length];
+            int[] ids = new int[basket.length];
+            int count = 0;
+            for (String item : basket) {
+                int id = dictionary.lookup(item);
+                if (id < 0) {
+                    // Not offered by any market so far, stays unavailable unless one offers it now
+                    if (unknownPositions == null) {
+                        unknownPositions = new HashMap<>();
+                    }
+                    if (unknownPositions.putIfAbsent(item, count) == null) {
+                        names[count] = item;
+                        ids[count] = -1;
+                        count++;
+                    }
+                } else if (position(id) < 0) {
+                    int slot = slot(id);
+                    slotIds[slot] = id;
+                    slotPositions[slot] = count;
+                    names[count] = item;
+                    ids[count] = id;
+                    count++;
+                }
+            }
+            this.items = Arrays.copyOf(names, count);
+            this.itemIds = Arrays.copyOf(ids, count);
+            this.words = wordsFor(count);
+            this.coverage = new long[8 * words];
+            this.prices = new double[8 * count];
+        }
+
+        private int slot(int id) {
+            int slot = (id * 0x9E3779B9) >>> 7 & mask;
+            while (slotIds[slot] != -1 && slotIds[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private int position(int id) {
+            int slot = slot(id);
+            return slotIds[slot] == id ? slotPositions[slot] : -1;
+        }
+
+        /**
+         * Starts the proposal of a new market; following offers belong to it.
+         */
+        public Builder beginMarket(String market) {
+            current = markets.size();
+            markets.add(market);
+            if ((current + 1) * words > coverage.length || (current + 1) * items.length > prices.length) {
+                int capacity = Math.max(markets.size() * 2, 8);
+                coverage = Arrays.copyOf(coverage, capacity * words);
+                prices = Arrays.copyOf(prices, capacity * items.length);
+            }
+            Arrays.fill(prices, current * items.length, (current + 1) * items.length, Double.NaN);
+            return this;
+        }
+
+        /**
+         * Adds an offered item price to the current market.
+         */
+        public Builder offer(String item, double price) {
+            int id = dictionary.lookup(item);
+            int position = id >= 0 ? position(id) : -1;
+            if (position < 0 && unknownPositions != null) {
+                position = internOffered(item);
+            }
+            if (position < 0) {
+                return this;
+            }
+            coverage[current * words + (position >>> 6)] |= 1L << position;
+            prices[current * items.length + position] = price;
+            return this;
+        }
+
+        /**
+         * Interns a basket item the first time a market offers it.
+         *
+         * @return Its basket position, or -1 if it is not in the basket
+         */
+        private int internOffered(String item) {
+            Integer position = unknownPositions.remove(item);
+            if (position == null) {
+                return -1;
+            }
+            int id = dictionary.intern(item);
+            int slot = slot(id);
+            slotIds[slot] = id;
+            slotPositions[slot] = position;
+            itemIds[position] = id;
+            return position;
+        }
+
+        /**
+         * Builds the snapshot.
+         */
+        public QuoteSnapshot build() {
+            int count = markets.size();
+            return new QuoteSnapshot(items, itemIds.clone(), markets.toArray(new String[0]),
+                    Arrays.copyOf(coverage, count * words), Arrays.copyOf(prices, count * items.length));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.grocerydelivery.utils;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Counts, per client, which rule ended each phase of an order and how long the
+ * phase took.
+ */
+public class ClientDecisionMetrics {
+
+    /** The rule that ended a phase of the order. */
+    public enum Rule {
+        /** Every delivery service answered. */
+        ALL_RESPONSES,
+        /** A SUCCESS proposal was priced close to the best SUCCESS proposal before it. */
+        GOOD_ENOUGH,
+        /** The proposal collection deadline passed. */
+        PROPOSAL_DEADLINE,
+        /** The selected delivery service confirmed the order. */
+        CONFIRMED,
+        /** The selected delivery service refused the payment. */
+        REFUSED,
+        /** The confirmation deadline passed. */
+        CONFIRMATION_DEADLINE
+    }
+
+    private final Map<Rule, Long> counts = new EnumMap<>(Rule.class);
+    private final Map<Rule, Long> totalMillis = new EnumMap<>(Rule.class);
+
+    /**
+     * Records that a rule ended a phase.
+     *
+     * @param rule The deciding rule
+     * @param elapsedMillis Time from the start of the phase to the decision
+     */
+    public void record(Rule rule, long elapsedMillis) {
+        counts.merge(rule, 1L, Long::sum);
+        totalMillis.merge(rule, elapsedMillis, Long::sum);
+    }
+
+    /**
+     * Gets how often a rule ended a phase.
+     */
+    public long getCount(Rule rule) {
+        return counts.getOrDefault(rule, 0L);
+    }
+
+    /**
+     * Gets the average time to the decisions taken by a rule.
+     */
+    public double getAverageMillis(Rule rule) {
+        long count = getCount(rule);
+        return count == 0 ? 0.0 : (double) totalMillis.get(rule) / count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (Rule rule : Rule.values()) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(rule).append('=').append(getCount(rule));
+            if (getCount(rule) > 0) {
+                summary.append(String.format(" (avg %.0f ms)", getAverageMillis(rule)));
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.grocerydelivery.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel for many timeouts of similar length.
+ *
+ * Time is divided into ticks, and a timeout lives in the slot of its deadline tick
+ * modulo the wheel size, so scheduling and cancelling are O(1) and advancing the
+ * wheel only looks at the slots of the ticks that passed. Timeouts longer than one
+ * turn of the wheel stay in their slot until their deadline tick is reached.
+ *
+ * Not thread-safe: the owner schedules, cancels and advances from one thread, for an
+ * agent its own thread.
+ *
+ * @param <T> The item that expires
+ */
+public final class HashedTimerWheel<T> {
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Timeout<T>[] slots;
+    private final int mask;
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * @param tickMillis Length of one tick, the resolution of the timeouts
+     * @param wheelSize Number of slots, rounded up to a power of two
+     * @param nowMillis The current time
+     */
+    public HashedTimerWheel(long tickMillis, int wheelSize, long nowMillis) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int slotCount = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.startMillis = nowMillis;
+        @SuppressWarnings("unchecked")
+        Timeout<T>[] slots = (Timeout<T>[]) new Timeout<?>[slotCount];
+        this.slots = slots;
+        this.mask = slotCount - 1;
+    }
+
+    /**
+     * Schedules an item to expire after a delay. The current tick may already be partly
+     * over, so the item expires between the delay and the delay plus one tick.
+     *
+     * @return The handle to cancel the timeout with
+     */
+    public Timeout<T> schedule(T item, long delayMillis) {
+        long ticks = Math.max(0, (delayMillis + tickMillis - 1) / tickMillis) + 1;
+        Timeout<T> timeout = new Timeout<>(this, item, currentTick + ticks);
+        link(timeout);
+        return timeout;
+    }
+
+    /**
+     * Expires every item whose deadline tick has passed at the given time.
+     *
+     * @param nowMillis The current time
+     * @param expired Receives the expired items, oldest deadline slot first
+     * @return The number of expired items
+     */
+    public int advance(long nowMillis, Consumer<? super T> expired) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        if (targetTick <= currentTick) {
+            return 0;
+        }
+
+        // After a long pause every slot is visited once, not once per missed tick
+        long steps = Math.min(targetTick - currentTick, slots.length);
+        int count = 0;
+        for (long tick = targetTick - steps + 1; tick <= targetTick; tick++) {
+            Timeout<T> timeout = slots[(int) (tick & mask)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.deadlineTick <= targetTick) {
+                    unlink(timeout);
+                    count++;
+                    expired.accept(timeout.item);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = targetTick;
+        return count;
+    }
+
+    /**
+     * Gets the number of scheduled timeouts.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void link(Timeout<T> timeout) {
+        int slot = (int) (timeout.deadlineTick & mask);
+        timeout.next = slots[slot];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        slots[slot] = timeout;
+        timeout.scheduled = true;
+        size++;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            slots[(int) (timeout.deadlineTick & mask)] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.scheduled = false;
+        size--;
+    }
+
+    /**
+     * A scheduled timeout, linked into its slot.
+     */
+    public static final class Timeout<T> {
+        private final HashedTimerWheel<T> wheel;
+        private final T item;
+        private final long deadlineTick;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+        private boolean scheduled;
+
+        private Timeout(HashedTimerWheel<T> wheel, T item, long deadlineTick) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Removes the timeout from the wheel.
+         *
+         * @return false if it already expired or was cancelled
+         */
+        public boolean cancel() {
+            if (!scheduled) {
+                return false;
+            }
+            wheel.unlink(this);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.grocerydelivery.utils;
+
+/**
+ * Log-linear latency histogram in microseconds.
+ *
+ * Every power of two is split into 8 buckets, so a percentile is over-estimated by at
+ * most 12.5% and the histogram has a fixed size whatever the range of the values.
+ * Once {@code window} values were recorded all counts are halved, so old observations
+ * fade out and the percentiles follow the recent behaviour.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private final long window;
+    private long count = 0;
+    private long sinceDecay = 0;
+    private long max = 0;
+
+    /**
+     * @param window Number of values after which all counts are halved
+     */
+    public LatencyHistogram(long window) {
+        this.window = window;
+    }
+
+    /**
+     * Records one latency.
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[index(value)]++;
+        count++;
+        max = Math.max(max, value);
+        if (++sinceDecay >= window) {
+            decay();
+        }
+    }
+
+    /**
+     * Gets the number of values currently weighted in the histogram.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the largest value ever recorded.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets an upper bound of the given percentile.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The upper bound of the bucket holding the percentile, 0 when empty
+     */
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    private void decay() {
+        count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] >>= 1;
+            count += counts[i];
+        }
+        sinceDecay = 0;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.grocerydelivery.utils;
+
+/**
+ * Counts, per delivery service, the re-negotiations of items whose market failed and
+ * how long it took from the failure to the updated proposal.
+ */
+public class RecoveryMetrics {
+
+    private long count = 0;
+    private long completeCount = 0;
+    private long recoveredItems = 0;
+    private long totalMillis = 0;
+    private long maxMillis = 0;
+
+    /**
+     * Records a finished recovery round.
+     *
+     * @param items Number of items bought from other markets
+     * @param complete Whether the order is complete again
+     * @param elapsedMillis Time from the market failure to the updated proposal
+     */
+    public void record(int items, boolean complete, long elapsedMillis) {
+        count++;
+        if (complete) {
+            completeCount++;
+        }
+        recoveredItems += items;
+        totalMillis += elapsedMillis;
+        maxMillis = Math.max(maxMillis, elapsedMillis);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getCompleteCount() {
+        return completeCount;
+    }
+
+    /**
+     * Gets the average time from the market failure to the updated proposal.
+     */
+    public double getAverageMillis() {
+        return count == 0 ? 0.0 : (double) totalMillis / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d recoveries, %d complete, %d items re-negotiated, avg %.0f ms, max %d ms",
+                count, completeCount, recoveredItems, getAverageMillis(), maxMillis);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.grocerydelivery.utils;
+
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Startup barrier and timeline of the platform.
+ *
+ * The application announces how many agents of each phase it starts, agents report
+ * when they are registered in the DF, and the application waits for a phase before
+ * starting the next one. The time from platform start to every completed phase and
+ * to the first client order is logged, so cold-start time can be measured.
+ */
+public final class StartupTimeline {
+
+    public static final String MARKETS = "markets";
+    public static final String DELIVERIES = "deliveries";
+
+    private static final StartupTimeline SHARED = new StartupTimeline();
+
+    private final Map<String, Phase> phases = new ConcurrentHashMap<>();
+    private final AtomicBoolean firstOrder = new AtomicBoolean();
+    private volatile long startedAt = System.nanoTime();
+    private Logger logger;
+
+    /**
+     * Gets the timeline of the platform in this JVM.
+     */
+    public static StartupTimeline shared() {
+        return SHARED;
+    }
+
+    /**
+     * Records that the platform is up; times are measured from here.
+     */
+    public void platformStarted() {
+        Logger log = logger();
+        startedAt = System.nanoTime();
+        log.info("Platform up");
+    }
+
+    /**
+     * Announces how many agents of a phase are being started.
+     */
+    public void expect(String phase, int count) {
+        phases.put(phase, new Phase(count));
+        if (count == 0) {
+            logger().info("No {} to register", phase);
+        }
+    }
+
+    /**
+     * Records that one agent of a phase is registered in the DF.
+     * Agents started outside an announced phase are ignored.
+     */
+    public void registered(String phase) {
+        Phase state = phases.get(phase);
+        if (state == null || state.remaining.getCount() == 0) {
+            return;
+        }
+        state.remaining.countDown();
+        if (state.remaining.getCount() == 0) {
+            logger().info("All {} {} registered after {} ms", state.expected, phase, elapsedMillis());
+        }
+    }
+
+    /**
+     * Waits until every agent of a phase is registered.
+     *
+     * @param phase The phase
+     * @param timeoutMillis Maximum time to wait
+     * @return False if the timeout elapsed first
+     */
+    public boolean await(String phase, long timeoutMillis) throws InterruptedException {
+        Phase state = phases.get(phase);
+        if (state == null) {
+            return true;
+        }
+        boolean complete = state.remaining.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (!complete) {
+            logger().warn("Only {} of {} {} registered after {} ms, continuing", 
+                         state.expected - state.remaining.getCount(), state.expected, phase, elapsedMillis());
+        }
+        return complete;
+    }
+
+    /**
+     * Records that a client sent an order; only the first one is logged.
+     */
+    public void firstOrder() {
+        if (firstOrder.compareAndSet(false, true)) {
+            logger().info("First order sent after {} ms", elapsedMillis());
+        }
+    }
+
+    private long elapsedMillis() {
+        return (System.nanoTime() - startedAt) / 1_000_000;
+    }
+
+    private synchronized Logger logger() {
+        if (logger == null) {
+            logger = LoggerUtil.getLogger("StartupTimeline", "Application");
+        }
+        return logger;
+    }
+
+    private static final class Phase {
+        final int expected;
+        final CountDownLatch remaining;
+
+        Phase(int expected) {
+            this.expected = expected;
+            this.remaining = new CountDownLatch(expected);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.grocerydelivery.agents;
+
+import com.example.grocerydelivery.codec.ClientProposal;
+import com.example.grocerydelivery.codec.Quote;
+import jade.lang.acl.ACLMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Early close of the CFP round, with probe agents playing the markets so the test
+ * decides when and how each market answers.
+ */
+class EarlyCloseTest {
+
+    @Test
+    void marketFailureAfterEarlyCloseLosesTheLateQuotedItem() throws Exception {
+        ProbeClient fast = TestPlatform.startClient("EarlyFastMarket");
+        ProbeClient slow = TestPlatform.startClient("EarlySlowMarket");
+        TestPlatform.startDelivery("EarlyDelivery", Map.of("earlyClose", true, "earlyCloseQuorum", 1),
+                                   "EarlyFastMarket", "EarlySlowMarket");
+        ProbeClient client = TestPlatform.startClient("EarlyClient");
+        Thread.sleep(TestPlatform.STARTUP_MS);
+
+        client.order("EarlyDelivery", "order", "milk");
+        ACLMessage slowCfp = slow.await(ACLMessage.CFP);
+        propose(fast, fast.await(ACLMessage.CFP), 2.0);
+        assertEquals(12.0, ClientProposal.from(client.await(ACLMessage.PROPOSE, "order")).getTotalPrice());
+
+        // The round closed with the fast market, the slow one answers too late and cheaper
+        ACLMessage accept = fast.await(ACLMessage.ACCEPT_PROPOSAL);
+        propose(slow, slowCfp, 1.0);
+        slow.await(ACLMessage.REJECT_PROPOSAL);
+
+        // The chosen market fails and the slow one refuses the re-negotiation
+        ACLMessage failure = accept.createReply();
+        failure.setPerformative(ACLMessage.FAILURE);
+        failure.setContent("out-of-stock");
+        fast.reply(failure);
+        refuse(slow, slow.await(ACLMessage.CFP));
+        ClientProposal updated = ClientProposal.from(client.await(ACLMessage.PROPOSE, "order"));
+        assertFalse(updated.isSuccess());
+        assertTrue(updated.getUnavailableItems().contains("milk"));
+
+        // The delivery service survived the early close report and takes the next order
+        client.order("EarlyDelivery", "next", "milk");
+        refuse(fast, fast.await(ACLMessage.CFP));
+        refuse(slow, slow.await(ACLMessage.CFP));
+        assertFalse(ClientProposal.from(client.await(ACLMessage.PROPOSE, "next")).isSuccess());
+    }
+
+    private static void propose(ProbeClient market, ACLMessage cfp, double price) {
+        ACLMessage propose = cfp.createReply();
+        propose.setPerformative(ACLMessage.PROPOSE);
+        new Quote(Map.of("milk", price)).writeTo(propose);
+        market.reply(propose);
+    }
+
+    private static void refuse(ProbeClient market, ACLMessage cfp) {
+        ACLMessage refuse = cfp.createReply();
+        refuse.setPerformative(ACLMessage.REFUSE);
+        market.reply(refuse);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.grocerydelivery.agents;
+
+import com.example.grocerydelivery.behaviours.MarketPriceUpdateBehaviour;
+import com.example.grocerydelivery.codec.ClientProposal;
+import com.example.grocerydelivery.codec.PriceUpdate;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Price changes sent to a running market reach the price book of its delivery
+ * services, so the next local quotes use them.
+ */
+class MarketPriceUpdateTest {
+
+    /** Time for the price feed and the DF to pass a change on. */
+    private static final long PROPAGATION_MS = 500;
+
+    @Test
+    void localQuotesFollowPriceChanges() throws Exception {
+        TestPlatform.startMarket("UpdateMarket", Map.of("milk", 5.0), null);
+        TestPlatform.startDelivery("UpdateDelivery", true, "UpdateMarket");
+        ProbeClient client = TestPlatform.startClient("UpdateClient");
+        Thread.sleep(TestPlatform.STARTUP_MS);
+
+        client.order("UpdateDelivery", "before", "milk");
+        assertEquals(15.0, ClientProposal.from(client.await(ACLMessage.PROPOSE, "before")).getTotalPrice());
+
+        updatePrices(client, "cheaper", Map.of("milk", 4.0));
+        client.order("UpdateDelivery", "after", "milk");
+        assertEquals(14.0, ClientProposal.from(client.await(ACLMessage.PROPOSE, "after")).getTotalPrice());
+
+        // A new item also reaches the catalog the delivery filters markets by
+        updatePrices(client, "added", Map.of("tea", 7.0));
+        client.order("UpdateDelivery", "tea", "tea");
+        ClientProposal tea = ClientProposal.from(client.await(ACLMessage.PROPOSE, "tea"));
+        assertTrue(tea.isSuccess());
+        assertEquals(17.0, tea.getTotalPrice());
+
+        // Separators of text formats are plain characters in item names
+        String oddName = "oat:milk|1=x";
+        updatePrices(client, "odd", Map.of(oddName, 3.0));
+        client.order("UpdateDelivery", "odd", oddName);
+        ClientProposal odd = ClientProposal.from(client.await(ACLMessage.PROPOSE, "odd"));
+        assertEquals(Map.of(oddName, 3.0), odd.getItemPrices());
+    }
+
+    @Test
+    void malformedChangesAreNotUnderstood() throws Exception {
+        TestPlatform.startMarket("MalformedMarket", Map.of("milk", 5.0), null);
+        ProbeClient client = TestPlatform.startClient("MalformedClient");
+
+        // Text content, then a negative price
+        ACLMessage text = priceUpdate("text", null);
+        text.setContent("milk=4.0");
+        client.send(text, "MalformedMarket");
+        client.await(ACLMessage.NOT_UNDERSTOOD, "text");
+
+        ACLMessage negative = priceUpdate("negative", null);
+        byte[] content = new PriceUpdate(Map.of("milk", 4.0)).encode();
+        content[content.length - 8] |= (byte) 0x80; // sign bit of the price
+        negative.setByteSequenceContent(content);
+        client.send(negative, "MalformedMarket");
+        client.await(ACLMessage.NOT_UNDERSTOOD, "negative");
+    }
+
+    private static void updatePrices(ProbeClient client, String conversationId, Map<String, Double> changes) throws InterruptedException {
+        client.send(priceUpdate(conversationId, changes), "UpdateMarket");
+        client.await(ACLMessage.INFORM, conversationId);
+        Thread.sleep(PROPAGATION_MS);
+    }
+
+    private static ACLMessage priceUpdate(String conversationId, Map<String, Double> changes) {
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.setProtocol(FIPANames.InteractionProtocol.FIPA_REQUEST);
+        request.setOntology(MarketPriceUpdateBehaviour.ONTOLOGY);
+        request.setConversationId(conversationId);
+        if (changes != null) {
+            new PriceUpdate(changes).writeTo(request);
+        }
+        return request;
+    }
+}
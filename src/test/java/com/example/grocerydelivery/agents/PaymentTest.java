@@ -0,0 +1,47 @@
+package com.example.grocerydelivery.agents;
+
+import com.example.grocerydelivery.codec.Payment;
+import jade.lang.acl.ACLMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * A delivery service only delivers orders whose proposal is waiting for payment.
+ */
+class PaymentTest {
+
+    @Test
+    void onlyTheFirstPaymentOfAProposalIsDelivered() throws Exception {
+        TestPlatform.startMarket("PaymentMarket", Map.of("milk", 5.0), null);
+        TestPlatform.startDelivery("PaymentDelivery", false, "PaymentMarket");
+        ProbeClient client = TestPlatform.startClient("PaymentClient");
+        Thread.sleep(TestPlatform.STARTUP_MS);
+
+        client.order("PaymentDelivery", "order", "milk");
+        ACLMessage proposal = client.await(ACLMessage.PROPOSE, "order");
+        client.pay(proposal);
+        assertEquals("ORDER-DELIVERED", client.await(ACLMessage.INFORM, "order").getContent());
+
+        // The conversation is closed, so paying again is refused
+        client.pay(proposal);
+        client.await(ACLMessage.FAILURE, "order");
+        assertNull(client.poll(ACLMessage.INFORM, "order"));
+    }
+
+    @Test
+    void paymentWithoutProposalIsRefused() throws Exception {
+        TestPlatform.startDelivery("UnpaidDelivery", false);
+        ProbeClient client = TestPlatform.startClient("UnpaidClient");
+
+        ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+        accept.setConversationId("unknown");
+        new Payment(10.0).writeTo(accept);
+        client.send(accept, "UnpaidDelivery");
+        client.await(ACLMessage.FAILURE, "unknown");
+        assertNull(client.poll(ACLMessage.INFORM, "unknown"));
+    }
+}
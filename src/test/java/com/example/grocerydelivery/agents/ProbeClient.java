@@ -0,0 +1,120 @@
+package com.example.grocerydelivery.agents;
+
+import com.example.grocerydelivery.codec.ClientProposal;
+import com.example.grocerydelivery.codec.Payment;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+/**
+ * Agent driven by a test: it sends the messages the test queues and collects every
+ * message it receives, so the test can play clients and see each reply.
+ */
+final class ProbeClient extends Agent {
+
+    private static final long REPLY_TIMEOUT_MS = 15000;
+
+    private final ConcurrentLinkedQueue<ACLMessage> outbox = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ACLMessage> inbox = new ConcurrentLinkedQueue<>();
+
+    @Override
+    protected void setup() {
+        addBehaviour(new CyclicBehaviour(this) {
+            @Override
+            public void action() {
+                ACLMessage msg;
+                while ((msg = outbox.poll()) != null) {
+                    myAgent.send(msg);
+                }
+                while ((msg = myAgent.receive()) != null) {
+                    inbox.add(msg);
+                }
+                block(10);
+            }
+        });
+    }
+
+    /**
+     * Queues a message for sending.
+     */
+    void send(ACLMessage msg, String receiver) {
+        msg.addReceiver(new AID(receiver, AID.ISLOCALNAME));
+        outbox.add(msg);
+    }
+
+    /**
+     * Orders a shopping list from a delivery service, as a ClientAgent does.
+     */
+    void order(String delivery, String conversationId, String... items) {
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.setContent(String.join(",", items));
+        request.setConversationId(conversationId);
+        send(request, delivery);
+    }
+
+    /**
+     * Accepts a proposal and pays its total price.
+     */
+    void pay(ACLMessage proposal) {
+        ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+        accept.setConversationId(proposal.getConversationId());
+        new Payment(ClientProposal.from(proposal).getTotalPrice()).writeTo(accept);
+        send(accept, proposal.getSender().getLocalName());
+    }
+
+    /**
+     * Queues a reply created with {@link ACLMessage#createReply()}.
+     */
+    void reply(ACLMessage reply) {
+        outbox.add(reply);
+    }
+
+    /**
+     * Waits for the first message with a performative in a conversation that no
+     * earlier wait returned.
+     */
+    ACLMessage await(int performative, String conversationId) throws InterruptedException {
+        return await(performative, msg -> conversationId.equals(msg.getConversationId()), conversationId);
+    }
+
+    /**
+     * Waits for the first message with a performative in any conversation, e.g. a CFP
+     * to a probe that plays a market.
+     */
+    ACLMessage await(int performative) throws InterruptedException {
+        return await(performative, msg -> true, "any conversation");
+    }
+
+    /**
+     * Takes the first message with a performative in a conversation, if one arrived.
+     */
+    ACLMessage poll(int performative, String conversationId) {
+        return poll(performative, msg -> conversationId.equals(msg.getConversationId()));
+    }
+
+    private ACLMessage await(int performative, Predicate<ACLMessage> match, String description) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + REPLY_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            ACLMessage msg = poll(performative, match);
+            if (msg != null) {
+                return msg;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("No " + ACLMessage.getPerformative(performative) + " in " + description);
+    }
+
+    private ACLMessage poll(int performative, Predicate<ACLMessage> match) {
+        for (ACLMessage msg : inbox) {
+            if (msg.getPerformative() == performative && match.test(msg)) {
+                inbox.remove(msg);
+                return msg;
+            }
+        }
+        return null;
+    }
+}
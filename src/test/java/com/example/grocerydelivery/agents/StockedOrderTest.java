@@ -0,0 +1,63 @@
+package com.example.grocerydelivery.agents;
+
+import com.example.grocerydelivery.codec.ClientProposal;
+import jade.lang.acl.ACLMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Orders against markets with limited stock. A probe agent plays the clients, so the
+ * test sees every proposal and confirmation.
+ */
+class StockedOrderTest {
+
+    @Test
+    void quotedOrderIsRecoveredWhenTheQuotedMarketIsSoldOut() throws Exception {
+        TestPlatform.startMarket("QuoteMarket1", Map.of("milk", 5.0), null);
+        TestPlatform.startMarket("QuoteMarket2", Map.of("milk", 2.0), Map.of("milk", 1L));
+        TestPlatform.startDelivery("QuoteDelivery", true, "QuoteMarket1", "QuoteMarket2");
+        ProbeClient client = TestPlatform.startClient("QuoteClient");
+        Thread.sleep(TestPlatform.STARTUP_MS);
+
+        // The price book quotes the single unit of QuoteMarket2
+        client.order("QuoteDelivery", "first", "milk");
+        ACLMessage first = client.await(ACLMessage.PROPOSE, "first");
+        assertEquals(12.0, ClientProposal.from(first).getTotalPrice());
+        client.pay(first);
+        client.await(ACLMessage.INFORM, "first");
+
+        // Quoted from the same price book, but QuoteMarket2 is sold out now
+        client.order("QuoteDelivery", "second", "milk");
+        assertEquals(12.0, ClientProposal.from(client.await(ACLMessage.PROPOSE, "second")).getTotalPrice());
+        ClientProposal updated = ClientProposal.from(client.await(ACLMessage.PROPOSE, "second"));
+        assertTrue(updated.isSuccess());
+        assertEquals(15.0, updated.getTotalPrice());
+    }
+
+    @Test
+    void identicalOrdersDoNotShareTheLastUnit() throws Exception {
+        TestPlatform.startMarket("LastUnitMarket", Map.of("milk", 2.0), Map.of("milk", 1L));
+        TestPlatform.startDelivery("LastUnitDelivery", false, "LastUnitMarket");
+        ProbeClient first = TestPlatform.startClient("LastUnitClient1");
+        ProbeClient second = TestPlatform.startClient("LastUnitClient2");
+        Thread.sleep(TestPlatform.STARTUP_MS);
+
+        // Same basket, same markets and both in flight: the orders would be coalesced
+        first.order("LastUnitDelivery", "milk", "milk");
+        second.order("LastUnitDelivery", "milk", "milk");
+        int delivered = 0;
+        for (ProbeClient client : new ProbeClient[]{first, second}) {
+            ACLMessage proposal = client.await(ACLMessage.PROPOSE, "milk");
+            if (ClientProposal.from(proposal).isSuccess()) {
+                client.pay(proposal);
+                client.await(ACLMessage.INFORM, "milk");
+                delivered++;
+            }
+        }
+        assertEquals(1, delivered);
+    }
+}
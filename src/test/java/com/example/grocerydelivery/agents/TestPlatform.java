@@ -0,0 +1,93 @@
+package com.example.grocerydelivery.agents;
+
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.AgentContainer;
+import jade.wrapper.StaleProxyException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One in-process JADE platform shared by the tests that start agents. It is started
+ * on first use and lives as long as the test JVM, so every test must use its own agent
+ * names.
+ */
+final class TestPlatform {
+
+    /** Time for new agents to register and subscribe before the first order. */
+    static final long STARTUP_MS = 1500;
+
+    private static AgentContainer container;
+
+    private TestPlatform() {
+    }
+
+    static synchronized AgentContainer container() {
+        if (container == null) {
+            Runtime.instance().setCloseVM(false);
+            Profile profile = new ProfileImpl(true);
+            profile.setParameter(Profile.GUI, "false");
+            profile.setParameter(Profile.NO_MTP, "true");
+            profile.setParameter(Profile.MAIN_PORT, String.valueOf(freePort()));
+            container = Runtime.instance().createMainContainer(profile);
+        }
+        return container;
+    }
+
+    /**
+     * Starts a market with the parameters the ConfigLoader would produce.
+     *
+     * @param stock The stocked quantities, or null for unlimited stock
+     */
+    static void startMarket(String name, Map<String, Double> prices, Map<String, Long> stock) throws StaleProxyException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("name", name);
+        params.put("inventory", prices.keySet().toArray(new String[0]));
+        Object[][] pricePairs = new Object[prices.size()][];
+        int i = 0;
+        for (Map.Entry<String, Double> price : prices.entrySet()) {
+            pricePairs[i++] = new Object[]{price.getKey(), price.getValue()};
+        }
+        params.put("prices", pricePairs);
+        if (stock != null) {
+            params.put("stock", stock);
+        }
+        container().createNewAgent(name, MarketAgent.class.getName(), new Object[]{params}).start();
+    }
+
+    static void startDelivery(String name, boolean localQuotes, String... markets) throws StaleProxyException {
+        startDelivery(name, Map.of("localQuotes", localQuotes), markets);
+    }
+
+    /**
+     * Starts a delivery service with a fee of 10.
+     *
+     * @param options Further delivery service parameters, e.g. "earlyClose"
+     */
+    static void startDelivery(String name, Map<String, Object> options, String... markets) throws StaleProxyException {
+        Map<String, Object> params = new HashMap<>(options);
+        params.put("name", name);
+        params.put("fee", 10.0);
+        params.put("connectedMarkets", markets);
+        container().createNewAgent(name, DeliveryAgent.class.getName(), new Object[]{params}).start();
+    }
+
+    static ProbeClient startClient(String name) throws StaleProxyException {
+        ProbeClient client = new ProbeClient();
+        container().acceptNewAgent(name, client).start();
+        return client;
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
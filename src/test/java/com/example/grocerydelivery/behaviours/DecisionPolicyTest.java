@@ -0,0 +1,39 @@
+package com.example.grocerydelivery.behaviours;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The good-enough rule of {@link ClientOrderBehaviour.DecisionPolicy}.
+ */
+class DecisionPolicyTest {
+
+    private final ClientOrderBehaviour.DecisionPolicy policy = new ClientOrderBehaviour.DecisionPolicy(
+        ClientOrderBehaviour.DecisionPolicy.DEFAULT_PROPOSAL_TIMEOUT_MS,
+        ClientOrderBehaviour.DecisionPolicy.DEFAULT_CONFIRMATION_TIMEOUT_MS, 2, 5.0);
+
+    @Test
+    void proposalsWithinTheMarginOnEitherSideAreGoodEnough() {
+        assertTrue(policy.isGoodEnough(2, 100.0, 100.0));
+        assertTrue(policy.isGoodEnough(2, 95.0, 100.0));
+        assertTrue(policy.isGoodEnough(2, 105.0, 100.0));
+    }
+
+    @Test
+    void proposalsOutsideTheMarginAreNot() {
+        assertFalse(policy.isGoodEnough(2, 94.9, 100.0));
+        assertFalse(policy.isGoodEnough(2, 105.1, 100.0));
+        assertFalse(policy.isGoodEnough(2, 1000.0, 100.0));
+    }
+
+    @Test
+    void ruleNeedsEnoughProposalsAndAnEarlierSuccess() {
+        assertFalse(policy.isGoodEnough(1, 100.0, 100.0));
+        assertFalse(policy.isGoodEnough(3, 100.0, Double.MAX_VALUE));
+
+        ClientOrderBehaviour.DecisionPolicy disabled = new ClientOrderBehaviour.DecisionPolicy(1000, 1000, 0, 100.0);
+        assertFalse(disabled.isGoodEnough(5, 100.0, 100.0));
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.grocerydelivery.catalog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The on-disk format of {@link MappedPriceCatalog}: written files read back, colliding
+ * keys, non-ASCII names, the price overlay and files that are not catalogs.
+ */
+class MappedPriceCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writtenPricesAreReadBack() throws IOException {
+        Random random = new Random(23);
+        Map<String, Double> prices = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            prices.put("item-" + random.nextInt(1000000), Math.round(random.nextDouble() * 10000) / 100.0);
+        }
+        Path file = dir.resolve("market.catalog");
+        MappedPriceCatalog.write(file, prices);
+
+        MappedPriceCatalog catalog = MappedPriceCatalog.open(file);
+        assertEquals(prices.size(), catalog.size());
+        for (Map.Entry<String, Double> entry : prices.entrySet()) {
+            assertEquals(entry.getValue(), catalog.price(entry.getKey()), entry.getKey());
+        }
+        assertTrue(Double.isNaN(catalog.price("item-x")));
+        assertTrue(Double.isNaN(catalog.price("")));
+        assertEquals(prices, catalog.toMap());
+    }
+
+    @Test
+    void emptyCatalog() throws IOException {
+        Path file = dir.resolve("empty.catalog");
+        MappedPriceCatalog.write(file, new HashMap<>());
+        MappedPriceCatalog catalog = MappedPriceCatalog.open(file);
+        assertEquals(0, catalog.size());
+        assertTrue(Double.isNaN(catalog.price("milk")));
+        assertTrue(catalog.toMap().isEmpty());
+    }
+
+    @Test
+    void nonAsciiNamesAreFound() throws IOException {
+        Map<String, Double> prices = new LinkedHashMap<>();
+        prices.put("crème brûlée", 4.5);
+        prices.put("日本茶", 7.0);
+        prices.put("🥛", 1.0);
+        prices.put("creme", 2.0);
+        Path file = dir.resolve("names.catalog");
+        MappedPriceCatalog.write(file, prices);
+
+        MappedPriceCatalog catalog = MappedPriceCatalog.open(file);
+        for (Map.Entry<String, Double> entry : prices.entrySet()) {
+            assertEquals(entry.getValue(), catalog.price(entry.getKey()), entry.getKey());
+        }
+        assertTrue(Double.isNaN(catalog.price("crème")));
+        assertTrue(Double.isNaN(catalog.price("日本")));
+        assertEquals(prices, catalog.toMap());
+    }
+
+    @Test
+    void collidingKeysAreTellApartByName() throws IOException {
+        // Three records share the key of "milk", sorted before and after by other keys
+        long milk = MappedPriceCatalog.key("milk");
+        Path file = dir.resolve("collisions.catalog");
+        writeRaw(file, new long[]{milk - 1, milk, milk, milk, milk + 1},
+                 new double[]{1.0, 2.0, 3.0, 4.0, 5.0},
+                 new String[]{"before", "decoy", "crème", "milk", "after"});
+
+        MappedPriceCatalog catalog = MappedPriceCatalog.open(file);
+        assertEquals(4.0, catalog.price("milk"));
+        // Names stored under another item's key are not found by their own key
+        assertTrue(Double.isNaN(catalog.price("decoy")));
+        assertTrue(Double.isNaN(catalog.price("crème")));
+        assertTrue(Double.isNaN(catalog.price("mill")));
+
+        // The scan also finds the first of the colliding records
+        writeRaw(file, new long[]{milk, milk, milk}, new double[]{6.0, 7.0, 8.0}, 
+                 new String[]{"milk", "decoy", "crème"});
+        assertEquals(6.0, MappedPriceCatalog.open(file).price("milk"));
+    }
+
+    @Test
+    void overlayChangesPricesWithoutTouchingTheFile() throws IOException {
+        Map<String, Double> prices = new LinkedHashMap<>();
+        prices.put("milk", 2.0);
+        prices.put("tea", 7.0);
+        Path file = dir.resolve("overlay.catalog");
+        MappedPriceCatalog.write(file, prices);
+        MappedPriceCatalog catalog = MappedPriceCatalog.open(file);
+
+        assertSame(catalog, catalog.with("milk", 2.0));
+        assertSame(catalog, catalog.with("bread", Double.NaN));
+
+        MappedPriceCatalog removed = catalog.with("milk", Double.NaN);
+        assertEquals(1, removed.size());
+        assertTrue(Double.isNaN(removed.price("milk")));
+        assertEquals(Map.of("tea", 7.0), removed.toMap());
+        assertSame(removed, removed.with("milk", Double.NaN));
+
+        MappedPriceCatalog changed = removed.with("milk", 3.0).with("bread", 1.5).with("tea", 6.0);
+        assertEquals(3, changed.size());
+        assertEquals(Map.of("milk", 3.0, "tea", 6.0, "bread", 1.5), changed.toMap());
+
+        // Earlier catalogs and the file are unchanged
+        assertEquals(2, catalog.size());
+        assertEquals(2.0, catalog.price("milk"));
+        assertEquals(prices, MappedPriceCatalog.open(file).toMap());
+    }
+
+    @Test
+    void filesThatAreNotCatalogsAreRejected() throws IOException {
+        Path file = dir.resolve("valid.catalog");
+        MappedPriceCatalog.write(file, Map.of("milk", 2.0, "tea", 7.0));
+        byte[] valid = Files.readAllBytes(file);
+
+        Path broken = dir.resolve("broken.catalog");
+        Files.write(broken, Arrays.copyOf(valid, valid.length - 1));
+        assertThrows(IOException.class, () -> MappedPriceCatalog.open(broken));
+
+        Files.write(broken, Arrays.copyOf(valid, valid.length + 1));
+        assertThrows(IOException.class, () -> MappedPriceCatalog.open(broken));
+
+        Files.write(broken, Arrays.copyOf(valid, 10));
+        assertThrows(IOException.class, () -> MappedPriceCatalog.open(broken));
+
+        byte[] badMagic = valid.clone();
+        badMagic[0] = 'X';
+        Files.write(broken, badMagic);
+        assertThrows(IOException.class, () -> MappedPriceCatalog.open(broken));
+
+        byte[] badVersion = valid.clone();
+        badVersion[7] = 2;
+        Files.write(broken, badVersion);
+        assertThrows(IOException.class, () -> MappedPriceCatalog.open(broken));
+
+        byte[] negativeCount = valid.clone();
+        negativeCount[8] = (byte) 0x80;
+        Files.write(broken, negativeCount);
+        assertThrows(IOException.class, () -> MappedPriceCatalog.open(broken));
+    }
+
+    /**
+     * Writes a catalog file with the given keys, which must be sorted.
+     */
+    private static void writeRaw(Path file, long[] keys, double[] prices, String[] names) throws IOException {
+        byte[][] encoded = new byte[names.length][];
+        int namesLength = 0;
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            namesLength += encoded[i].length;
+        }
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeInt(0x47445043);
+            out.writeInt(1);
+            out.writeInt(keys.length);
+            out.writeInt(namesLength);
+            int offset = 0;
+            for (int i = 0; i < keys.length; i++) {
+                out.writeLong(keys[i]);
+                out.writeDouble(prices[i]);
+                out.writeInt(offset);
+                out.writeInt(encoded[i].length);
+                offset += encoded[i].length;
+            }
+            for (byte[] name : encoded) {
+                out.write(name);
+            }
+        }
+    }
+}
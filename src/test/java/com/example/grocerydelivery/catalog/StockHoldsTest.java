@@ -0,0 +1,142 @@
+package com.example.grocerydelivery.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit accounting of {@link StockHolds}: every unit a hold takes is either used by a
+ * confirmation or given back exactly once.
+ */
+class StockHoldsTest {
+
+    private static final long TTL = 1000;
+    private static final long START = 50000;
+
+    @Test
+    void placeHoldsWhatIsLeft() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 0L, "tea", 1L));
+        StockHolds holds = new StockHolds(ledger, TTL, START);
+
+        assertEquals(Arrays.asList("tea", "jam"), holds.place("a", Arrays.asList("milk", "tea", "jam"), START));
+        assertEquals(0, ledger.available("tea"));
+        assertEquals(1, holds.size());
+
+        // Nothing left to hold: no hold is placed
+        assertEquals(Collections.emptyList(), holds.place("b", Arrays.asList("milk", "tea"), START));
+        assertEquals(1, holds.size());
+        assertFalse(holds.release("b"));
+    }
+
+    @Test
+    void placeWithoutStockedItemsHoldsNothing() {
+        StockHolds holds = new StockHolds(StockLedger.unlimited(), TTL, START);
+        assertEquals(Arrays.asList("milk", "tea"), holds.place("a", Arrays.asList("milk", "tea"), START));
+        assertEquals(0, holds.size());
+        assertTrue(holds.confirm("a", Arrays.asList("milk")));
+    }
+
+    @Test
+    void placingAgainReplacesTheHold() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 1L));
+        StockHolds holds = new StockHolds(ledger, TTL, START);
+        holds.place("a", Arrays.asList("milk"), START);
+        assertEquals(Arrays.asList("milk"), holds.place("a", Arrays.asList("milk"), START));
+        assertEquals(0, ledger.available("milk"));
+        assertTrue(holds.release("a"));
+        assertEquals(1, ledger.available("milk"));
+    }
+
+    @Test
+    void confirmUsesTheHeldUnits() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 2L));
+        StockHolds holds = new StockHolds(ledger, TTL, START);
+        holds.place("a", Arrays.asList("milk"), START);
+
+        assertTrue(holds.confirm("a", Arrays.asList("milk")));
+        assertEquals(1, ledger.available("milk"));
+        assertEquals(0, holds.size());
+        assertFalse(holds.release("a"));
+    }
+
+    @Test
+    void confirmGivesBackHeldItemsThatWereNotAccepted() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 1L, "tea", 1L));
+        StockHolds holds = new StockHolds(ledger, TTL, START);
+        holds.place("a", Arrays.asList("milk", "tea"), START);
+
+        assertTrue(holds.confirm("a", Arrays.asList("milk")));
+        assertEquals(0, ledger.available("milk"));
+        assertEquals(1, ledger.available("tea"));
+    }
+
+    @Test
+    void confirmTakesAcceptedItemsThatWereNotHeld() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 2L, "tea", 1L));
+        StockHolds holds = new StockHolds(ledger, TTL, START);
+        holds.place("a", Arrays.asList("milk"), START);
+
+        // tea was never held, and milk is accepted twice
+        assertTrue(holds.confirm("a", Arrays.asList("milk", "tea", "milk")));
+        assertEquals(0, ledger.available("milk"));
+        assertEquals(0, ledger.available("tea"));
+    }
+
+    @Test
+    void failedTopUpGivesEverythingBack() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 1L, "tea", 0L, "bread", 1L));
+        StockHolds holds = new StockHolds(ledger, TTL, START);
+        holds.place("a", Arrays.asList("milk", "bread"), START);
+
+        assertFalse(holds.confirm("a", Arrays.asList("milk", "tea")));
+        assertEquals(1, ledger.available("milk"));
+        assertEquals(1, ledger.available("bread"));
+        assertEquals(0, ledger.available("tea"));
+        assertEquals(0, holds.size());
+    }
+
+    @Test
+    void confirmAfterExpiryTakesFromTheStockLeft() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 1L));
+        StockHolds holds = new StockHolds(ledger, TTL, START);
+        holds.place("a", Arrays.asList("milk"), START);
+
+        assertTrue(holds.expire(START + TTL - StockHolds.TICK_MS).isEmpty());
+        List<StockHolds.Hold> expired = holds.expire(START + TTL + StockHolds.TICK_MS);
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0).getKey());
+        assertEquals(1, ledger.available("milk"));
+
+        // Someone else holds the unit now, so the late confirmation fails
+        holds.place("b", Arrays.asList("milk"), START + TTL + StockHolds.TICK_MS);
+        assertFalse(holds.confirm("a", Arrays.asList("milk")));
+        assertEquals(0, ledger.available("milk"));
+
+        // Once it is back, a late confirmation takes it
+        holds.release("b");
+        assertTrue(holds.confirm("a", Arrays.asList("milk")));
+        assertEquals(0, ledger.available("milk"));
+    }
+
+    @Test
+    void releasedAndConfirmedHoldsDoNotExpire() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 3L));
+        StockHolds holds = new StockHolds(ledger, TTL, START);
+        holds.place("a", Arrays.asList("milk"), START);
+        holds.place("b", Arrays.asList("milk"), START);
+        holds.place("c", Arrays.asList("milk"), START);
+        holds.release("a");
+        holds.confirm("b", Arrays.asList("milk"));
+
+        assertEquals(1, holds.expire(START + 10 * TTL).size());
+        assertEquals(2, ledger.available("milk"));
+        assertEquals(0, holds.size());
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.grocerydelivery.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * All-or-nothing reservations of {@link StockLedger}, alone and under contention.
+ */
+class StockLedgerTest {
+
+    @Test
+    void reservationTakesEveryUnitOrNone() {
+        StockLedger ledger = new StockLedger(Map.of("milk", 5L, "tea", 0L, "bread", 1L));
+
+        assertFalse(ledger.reserve(Arrays.asList("milk", "bread", "tea", "milk")));
+        assertEquals(5, ledger.available("milk"));
+        assertEquals(1, ledger.available("bread"));
+        assertEquals(1, ledger.getShortageCount());
+
+        assertTrue(ledger.reserve(Arrays.asList("milk", "bread", "milk", "jam")));
+        assertEquals(3, ledger.available("milk"));
+        assertEquals(0, ledger.available("bread"));
+        assertEquals(1, ledger.getReservationCount());
+
+        // The second bread is missing, the first one goes back
+        ledger.release(Arrays.asList("bread"));
+        assertFalse(ledger.reserve(Arrays.asList("bread", "bread")));
+        assertEquals(1, ledger.available("bread"));
+    }
+
+    @Test
+    void unstockedItemsAreUnlimited() {
+        StockLedger ledger = StockLedger.unlimited();
+        assertEquals(0, ledger.size());
+        assertEquals(Long.MAX_VALUE, ledger.available("milk"));
+        assertTrue(ledger.reserve(Arrays.asList("milk", "milk")));
+        ledger.release(Arrays.asList("milk"));
+        assertEquals(Long.MAX_VALUE, ledger.available("milk"));
+    }
+
+    @Test
+    void negativeQuantitiesStartEmpty() {
+        StockLedger ledger = new StockLedger(Map.of("milk", -3L));
+        assertEquals(0, ledger.available("milk"));
+        assertFalse(ledger.reserve(Arrays.asList("milk")));
+    }
+
+    @Test
+    void concurrentReservationsConserveUnits() throws Exception {
+        String[] items = {"milk", "tea", "bread", "jam"};
+        long initial = 2000;
+        Map<String, Long> stock = new HashMap<>();
+        for (String item : items) {
+            stock.put(item, initial);
+        }
+        StockLedger ledger = new StockLedger(stock);
+
+        int threads = 8;
+        AtomicLongArray kept = new AtomicLongArray(items.length);
+        AtomicBoolean negative = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        try {
+            Future<?> watcher = pool.submit(() -> {
+                while (running.get()) {
+                    for (String item : items) {
+                        if (ledger.available(item) < 0) {
+                            negative.set(true);
+                        }
+                    }
+                }
+            });
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                workers.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < 20000; i++) {
+                        // Baskets of one to three items, duplicates included
+                        int[] basket = new int[1 + random.nextInt(3)];
+                        List<String> names = new ArrayList<>();
+                        for (int j = 0; j < basket.length; j++) {
+                            basket[j] = random.nextInt(items.length);
+                            names.add(items[basket[j]]);
+                        }
+                        if (!ledger.reserve(names)) {
+                            continue;
+                        }
+                        // Give some reservations back, keep the rest
+                        if (random.nextInt(3) == 0) {
+                            ledger.release(names);
+                        } else {
+                            for (int index : basket) {
+                                kept.incrementAndGet(index);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+            running.set(false);
+            watcher.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertFalse(negative.get());
+        for (int i = 0; i < items.length; i++) {
+            assertTrue(ledger.available(items[i]) >= 0);
+            assertEquals(initial, ledger.available(items[i]) + kept.get(i), items[i]);
+        }
+        // The stock ran out, so some reservations were refused
+        assertTrue(ledger.getShortageCount() > 0);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.grocerydelivery.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of every message content type, and rejection of malformed content.
+ */
+class MessageContentTest {
+
+    private static final double[] EDGE_PRICES = {
+        Double.NaN, -0.0, 0.0, Double.MIN_VALUE, Double.MIN_NORMAL / 3, Double.MAX_VALUE,
+        1e300, Double.POSITIVE_INFINITY, 0.1 + 0.2
+    };
+
+    private static final String[] ODD_NAMES = {"", "crème brûlée", "日本茶", "🥛", "a,b:c|d=e"};
+
+    @Test
+    void quotePricesRoundTripBitForBit() {
+        Map<String, Double> prices = new LinkedHashMap<>();
+        for (int i = 0; i < EDGE_PRICES.length; i++) {
+            prices.put("item" + i, EDGE_PRICES[i]);
+        }
+        Quote decoded = Quote.decode(new Quote(prices).encode());
+        assertEquals(new ArrayList<>(prices.keySet()), new ArrayList<>(decoded.getPrices().keySet()));
+        for (String item : prices.keySet()) {
+            assertSameBits(prices.get(item), decoded.getPrices().get(item));
+        }
+    }
+
+    @Test
+    void itemNamesRoundTrip() {
+        Map<String, Double> prices = new LinkedHashMap<>();
+        for (String name : ODD_NAMES) {
+            prices.put(name, 1.5);
+        }
+        assertEquals(prices, Quote.decode(new Quote(prices).encode()).getPrices());
+        assertEquals(Arrays.asList(ODD_NAMES), Cfp.decode(Cfp.of(ODD_NAMES).encode()).getItems());
+
+        ClientProposal proposal = new ClientProposal(false, -0.0, prices, Arrays.asList(ODD_NAMES));
+        ClientProposal decoded = ClientProposal.decode(proposal.encode());
+        assertFalse(decoded.isSuccess());
+        assertSameBits(-0.0, decoded.getTotalPrice());
+        assertEquals(prices, decoded.getItemPrices());
+        assertEquals(Arrays.asList(ODD_NAMES), decoded.getUnavailableItems());
+    }
+
+    @Test
+    void paymentAndPriceContentRoundTrip() {
+        for (double amount : EDGE_PRICES) {
+            assertSameBits(amount, Payment.decode(new Payment(amount).encode()).getAmount());
+        }
+
+        Map<String, Double> changes = new LinkedHashMap<>();
+        changes.put("milk", Double.MIN_VALUE);
+        changes.put("日本茶", null);
+        PriceFeed feed = PriceFeed.decode(new PriceFeed(false, Long.MIN_VALUE + 1, changes).encode());
+        assertFalse(feed.isSnapshot());
+        assertEquals(Long.MIN_VALUE + 1, feed.getVersion());
+        assertEquals(changes, feed.getPrices());
+        assertNull(feed.getPrices().get("日本茶"));
+        assertTrue(PriceFeed.decode(new PriceFeed(true, 0, Collections.emptyMap()).encode()).isSnapshot());
+
+        assertEquals(changes, PriceUpdate.decode(new PriceUpdate(changes).encode()).getChanges());
+    }
+
+    @Test
+    void largeCountsUseLongVarints() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            items.add("i" + i);
+        }
+        byte[] content = new Cfp(items).encode();
+        assertEquals(0x80 | (20000 & 0x7F), content[1] & 0xFF);
+        assertEquals(items, Cfp.decode(content).getItems());
+
+        for (int value : new int[]{0, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1}) {
+            byte[] varint = new ContentWriter(Cfp.TYPE, ContentWriter.sizeOf(value)).writeVarint(value).toByteArray();
+            ContentReader reader = new ContentReader(varint, Cfp.TYPE, "CFP");
+            assertEquals(value, reader.readVarint());
+            reader.end();
+        }
+    }
+
+    @Test
+    void truncatedContentIsRejected() {
+        Map<String, Double> prices = new LinkedHashMap<>();
+        prices.put("milk", 2.5);
+        prices.put("日本茶", Double.NaN);
+        assertEveryPrefixRejected(Cfp.of("milk", "日本茶").encode(), Cfp::decode);
+        assertEveryPrefixRejected(new Quote(prices).encode(), Quote::decode);
+        assertEveryPrefixRejected(new ClientProposal(true, 15.0, prices, Arrays.asList("tea")).encode(), 
+                                  ClientProposal::decode);
+        assertEveryPrefixRejected(new Payment(15.0).encode(), Payment::decode);
+        assertEveryPrefixRejected(new PriceFeed(true, 3, prices).encode(), PriceFeed::decode);
+        assertEveryPrefixRejected(new PriceUpdate(Collections.singletonMap("milk", null)).encode(), PriceUpdate::decode);
+    }
+
+    @Test
+    void wrongTypeIsRejected() {
+        byte[] quote = new Quote(Collections.singletonMap("milk", 2.5)).encode();
+        assertThrows(IllegalArgumentException.class, () -> Cfp.decode(quote));
+        assertThrows(IllegalArgumentException.class, () -> ClientProposal.decode(quote));
+        assertThrows(IllegalArgumentException.class, () -> Payment.decode(Cfp.of("milk").encode()));
+        assertThrows(IllegalArgumentException.class, () -> Quote.decode(null));
+        assertThrows(IllegalArgumentException.class, () -> Quote.decode(new byte[0]));
+    }
+
+    @Test
+    void trailingBytesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Cfp.decode(withTrailingByte(Cfp.of("milk").encode())));
+        assertThrows(IllegalArgumentException.class, 
+                     () -> Quote.decode(withTrailingByte(new Quote(Collections.singletonMap("milk", 2.5)).encode())));
+        assertThrows(IllegalArgumentException.class, () -> Payment.decode(withTrailingByte(new Payment(1.0).encode())));
+    }
+
+    @Test
+    void malformedCountsAreRejected() {
+        // A count larger than the remaining bytes, and a varint longer than five bytes
+        assertThrows(IllegalArgumentException.class, () -> Cfp.decode(new byte[]{Cfp.TYPE, 5, 1, 'a'}));
+        byte[] overlong = {Cfp.TYPE, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0};
+        assertThrows(IllegalArgumentException.class, () -> Cfp.decode(overlong));
+        // A negative count
+        byte[] negative = new ContentWriter(Cfp.TYPE, ContentWriter.sizeOf(-1)).writeVarint(-1).toByteArray();
+        assertThrows(IllegalArgumentException.class, () -> Cfp.decode(negative));
+    }
+
+    private static void assertSameBits(double expected, double actual) {
+        assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual), 
+                     () -> expected + " decoded as " + actual);
+    }
+
+    private static void assertEveryPrefixRejected(byte[] content, Function<byte[], ?> decoder) {
+        decoder.apply(content);
+        for (int length = 0; length < content.length; length++) {
+            byte[] prefix = Arrays.copyOf(content, length);
+            assertThrows(IllegalArgumentException.class, () -> decoder.apply(prefix), 
+                         "prefix of " + length + " bytes");
+        }
+    }
+
+    private static byte[] withTrailingByte(byte[] content) {
+        return Arrays.copyOf(content, content.length + 1);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.grocerydelivery.conversation;
+
+import jade.core.AID;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reply windows and slow-market handling of {@link MarketLatencyTracker}.
+ */
+class MarketLatencyTrackerTest {
+
+    private static final long FLOOR = 500;
+    private static final long CEILING = 10000;
+    private static final long COOLDOWN = 30000;
+
+    private final AID market1 = new AID("Market1@test", AID.ISGUID);
+    private final AID market2 = new AID("Market2@test", AID.ISGUID);
+    private final MarketLatencyTracker tracker = new MarketLatencyTracker(99.0, 2.0, FLOOR, CEILING, 3, COOLDOWN);
+
+    @Test
+    void windowStaysAtTheCeilingUntilEnoughSamples() {
+        assertEquals(CEILING, tracker.replyTimeoutMillis(market1));
+
+        for (int i = 0; i < 4; i++) {
+            tracker.recordResponse(market1, 1000000);
+        }
+        assertEquals(CEILING, tracker.replyTimeoutMillis(market1));
+
+        tracker.recordResponse(market1, 1000000);
+        // p99 of 1 s times the multiplier of 2
+        assertEquals(2000, tracker.replyTimeoutMillis(market1));
+    }
+
+    @Test
+    void windowIsClampedToFloorAndCeiling() {
+        for (int i = 0; i < 5; i++) {
+            tracker.recordResponse(market1, 1000);
+            tracker.recordResponse(market2, 20000000);
+        }
+
+        assertEquals(FLOOR, tracker.replyTimeoutMillis(market1));
+        assertEquals(CEILING, tracker.replyTimeoutMillis(market2));
+    }
+
+    @Test
+    void cfpWindowIsTheLongestOfItsReceivers() {
+        for (int i = 0; i < 5; i++) {
+            tracker.recordResponse(market1, 1000);
+            tracker.recordResponse(market2, 1000000);
+        }
+
+        assertEquals(FLOOR, tracker.replyTimeoutMillis(new AID[]{market1}));
+        assertEquals(2000, tracker.replyTimeoutMillis(new AID[]{market1, market2}));
+        assertEquals(CEILING, tracker.replyTimeoutMillis(new AID[]{market1, new AID("Market3@test", AID.ISGUID)}));
+        assertEquals(FLOOR, tracker.replyTimeoutMillis(new AID[0]));
+    }
+
+    @Test
+    void marketIsSlowAfterConsecutiveMisses() {
+        assertFalse(tracker.recordMiss(market1, 0));
+        assertFalse(tracker.recordMiss(market1, 0));
+        tracker.recordResponse(market1, 1000);
+        assertFalse(tracker.recordMiss(market1, 0));
+        assertFalse(tracker.recordMiss(market1, 0));
+        assertFalse(tracker.isSlow(market1, 0));
+
+        assertTrue(tracker.recordLateResponse(market1, 20000000, 1000));
+        assertTrue(tracker.isSlow(market1, 1000));
+        assertEquals(5, tracker.getMissCount());
+        // A miss while already slow does not restart the cooldown
+        assertFalse(tracker.recordMiss(market1, 2000));
+        assertTrue(tracker.isSlow(market1, 1000 + COOLDOWN - 1));
+        assertFalse(tracker.isSlow(market1, 1000 + COOLDOWN));
+    }
+
+    @Test
+    void probeAfterCooldownDecidesAgain() {
+        for (int i = 0; i < 3; i++) {
+            tracker.recordMiss(market1, 0);
+        }
+        assertTrue(tracker.isSlow(market1, 0));
+
+        // The probe misses too: slow again right away
+        assertTrue(tracker.recordMiss(market1, COOLDOWN));
+        assertTrue(tracker.isSlow(market1, COOLDOWN));
+
+        // The next probe answers in time: the misses start over
+        tracker.recordResponse(market1, 1000);
+        assertFalse(tracker.isSlow(market1, 2 * COOLDOWN));
+        assertFalse(tracker.recordMiss(market1, 2 * COOLDOWN));
+        assertFalse(tracker.isSlow(market1, 2 * COOLDOWN));
+    }
+
+    @Test
+    void skipSlowKeepsEveryMarketWhenAllAreSlow() {
+        AID[] candidates = {market1, market2};
+        assertSame(candidates, tracker.skipSlow(candidates, 0));
+
+        for (int i = 0; i < 3; i++) {
+            tracker.recordMiss(market1, 0);
+        }
+        assertArrayEquals(new AID[]{market2}, tracker.skipSlow(candidates, 0));
+        assertEquals(1, tracker.getSkippedCount());
+
+        for (int i = 0; i < 3; i++) {
+            tracker.recordMiss(market2, 0);
+        }
+        assertSame(candidates, tracker.skipSlow(candidates, 0));
+        assertEquals(1, tracker.getSkippedCount());
+    }
+
+    @Test
+    void percentileOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MarketLatencyTracker(0, 2.0, FLOOR, CEILING, 3, COOLDOWN));
+        assertThrows(IllegalArgumentException.class, () -> new MarketLatencyTracker(101, 2.0, FLOOR, CEILING, 3, COOLDOWN));
+    }
+}
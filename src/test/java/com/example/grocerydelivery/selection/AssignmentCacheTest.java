@@ -0,0 +1,114 @@
+package com.example.grocerydelivery.selection;
+
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Hits, misses and eviction of {@link AssignmentCache}, and what its key covers.
+ */
+class AssignmentCacheTest {
+
+    private final ItemDictionary dictionary = new ItemDictionary();
+    private final CountingStrategy strategy = new CountingStrategy();
+
+    @Test
+    void sameQuotesHitAndChangedPricesMiss() {
+        AssignmentCache cache = new AssignmentCache(4);
+
+        MarketAssignment first = cache.select(milkAndBread(2.0, 3.0), strategy);
+        MarketAssignment again = cache.select(milkAndBread(2.0, 3.0), strategy);
+        cache.select(milkAndBread(2.0, 3.5), strategy);
+
+        assertSame(first, again);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, strategy.calls);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void keyDoesNotDependOnProposalOrder() {
+        AssignmentCache cache = new AssignmentCache(4);
+        QuoteSnapshot inOrder = QuoteSnapshot.builder(dictionary, new String[]{"milk", "bread"})
+                .beginMarket("Market1").offer("milk", 2.0).offer("bread", 3.0)
+                .beginMarket("Market2").offer("bread", 2.5)
+                .build();
+        QuoteSnapshot reordered = QuoteSnapshot.builder(dictionary, new String[]{"bread", "milk"})
+                .beginMarket("Market2").offer("bread", 2.5)
+                .beginMarket("Market1").offer("bread", 3.0).offer("milk", 2.0)
+                .build();
+
+        MarketAssignment first = cache.select(inOrder, strategy);
+
+        assertSame(first, cache.select(reordered, strategy));
+        assertEquals(1, strategy.calls);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        AssignmentCache cache = new AssignmentCache(2);
+        cache.select(milkAndBread(1.0, 1.0), strategy);
+        cache.select(milkAndBread(2.0, 2.0), strategy);
+        // Touch the first entry, so the second one is the eldest
+        cache.select(milkAndBread(1.0, 1.0), strategy);
+        cache.select(milkAndBread(3.0, 3.0), strategy);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, strategy.calls);
+
+        cache.select(milkAndBread(1.0, 1.0), strategy);
+        assertEquals(3, strategy.calls);
+        cache.select(milkAndBread(2.0, 2.0), strategy);
+        assertEquals(4, strategy.calls);
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    void basketWithNeverOfferedItemBypassesTheCache() {
+        AssignmentCache cache = new AssignmentCache(4);
+        QuoteSnapshot snapshot = QuoteSnapshot.builder(dictionary, new String[]{"milk", "saffron"})
+                .beginMarket("Market1").offer("milk", 2.0)
+                .build();
+
+        assertNull(AssignmentCache.Key.of(snapshot));
+        cache.select(snapshot, strategy);
+        cache.select(snapshot, strategy);
+
+        assertEquals(2, strategy.calls);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.size());
+    }
+
+    private QuoteSnapshot milkAndBread(double milk, double bread) {
+        return QuoteSnapshot.builder(dictionary, new String[]{"milk", "bread"})
+                .beginMarket("Market1").offer("milk", milk)
+                .beginMarket("Market2").offer("bread", bread)
+                .build();
+    }
+
+    /**
+     * Greedy selection that counts how often it ran.
+     */
+    private static final class CountingStrategy implements MarketSelectionStrategy {
+        private final GreedyMarketSelector greedy = new GreedyMarketSelector();
+        private int calls;
+
+        @Override
+        public String getName() {
+            return "counting";
+        }
+
+        @Override
+        public MarketAssignment select(QuoteSnapshot snapshot) {
+            calls++;
+            return greedy.select(snapshot);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.grocerydelivery.selection;
+
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the lazy-greedy selector makes exactly the choices of the full-rescan
+ * {@link GreedyMarketSelector}, including how ties on item count and price are broken.
+ */
+class LazyGreedyMarketSelectorTest {
+
+    private final GreedyMarketSelector greedy = new GreedyMarketSelector();
+    private final LazyGreedyMarketSelector lazyGreedy = new LazyGreedyMarketSelector();
+
+    @Test
+    void matchesGreedyOnRandomSnapshotsWithPriceTies() {
+        for (long seed = 0; seed < 500; seed++) {
+            Random random = new Random(seed);
+            int markets = random.nextInt(40);
+            // More than 64 items spreads the bitsets over several words
+            int items = 1 + random.nextInt(random.nextBoolean() ? 10 : 150);
+            double density = 0.1 + 0.8 * random.nextDouble();
+            // A handful of whole prices, so markets often tie on count and on price
+            int distinctPrices = 1 + random.nextInt(4);
+            QuoteSnapshot snapshot = randomSnapshot(random, markets, items, density, distinctPrices);
+
+            assertEquals(greedy.select(snapshot), lazyGreedy.select(snapshot), "seed " + seed);
+        }
+    }
+
+    @Test
+    void matchesGreedyOnExampleMarkets() {
+        QuoteSnapshot snapshot = QuoteSnapshot.builder(new ItemDictionary(),
+                        new String[]{"milk", "coffee", "rice", "tea", "potatoes"})
+                .beginMarket("Market1").offer("milk", 5.0).offer("coffee", 30.0)
+                .beginMarket("Market2").offer("coffee", 25.0).offer("rice", 3.0)
+                .beginMarket("Market3").offer("rice", 4.0).offer("tea", 12.0).offer("potatoes", 6.5)
+                .beginMarket("Market4").offer("milk", 2.0).offer("potatoes", 5.0)
+                .build();
+
+        MarketAssignment assignment = lazyGreedy.select(snapshot);
+
+        assertEquals(greedy.select(snapshot), assignment);
+        assertEquals("Market3", assignment.getSelections().get(0).getMarket());
+        assertTrue(assignment.isComplete());
+    }
+
+    @Test
+    void identicalMarketsTieToTheFirstProposal() {
+        QuoteSnapshot snapshot = QuoteSnapshot.builder(new ItemDictionary(), new String[]{"milk", "bread"})
+                .beginMarket("Market1").offer("milk", 2.0).offer("bread", 3.0)
+                .beginMarket("Market2").offer("milk", 3.0).offer("bread", 2.0)
+                .build();
+
+        MarketAssignment assignment = lazyGreedy.select(snapshot);
+
+        assertEquals(greedy.select(snapshot), assignment);
+        assertEquals("Market1", assignment.getSelections().get(0).getMarket());
+    }
+
+    @Test
+    void matchesGreedyWithoutProposals() {
+        QuoteSnapshot snapshot = QuoteSnapshot.builder(new ItemDictionary(), new String[]{"milk", "tea"}).build();
+
+        MarketAssignment assignment = lazyGreedy.select(snapshot);
+
+        assertEquals(greedy.select(snapshot), assignment);
+        assertEquals(2, assignment.getUnavailableItems().size());
+    }
+
+    /**
+     * Builds a snapshot in which every market offers each item with the given
+     * probability, at one of {@code distinctPrices} whole prices.
+     */
+    static QuoteSnapshot randomSnapshot(Random random, int markets, int items, double density, int distinctPrices) {
+        String[] basket = new String[items];
+        for (int item = 0; item < items; item++) {
+            basket[item] = "item-" + item;
+        }
+        QuoteSnapshot.Builder builder = QuoteSnapshot.builder(new ItemDictionary(), basket);
+        for (int market = 0; market < markets; market++) {
+            builder.beginMarket("Market" + market);
+            for (int item = 0; item < items; item++) {
+                if (random.nextDouble() < density) {
+                    builder.offer(basket[item], 1 + random.nextInt(distinctPrices));
+                }
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.grocerydelivery.selection;
+
+import com.example.grocerydelivery.catalog.ItemDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the branch and bound selector against a brute force over every subset of
+ * markets, and its fallback to the greedy assignment when the budget runs out.
+ */
+class OptimalMarketSelectorTest {
+
+    private static final double EPSILON = 1e-6;
+
+    @Test
+    void matchesBruteForceOnRandomSnapshots() {
+        double[] visitCosts = {0.0, 2.5, 10.0};
+        for (long seed = 0; seed < 300; seed++) {
+            Random random = new Random(seed);
+            int markets = random.nextInt(9);
+            int items = 1 + random.nextInt(10);
+            double density = 0.1 + 0.6 * random.nextDouble();
+            QuoteSnapshot snapshot = LazyGreedyMarketSelectorTest.randomSnapshot(
+                    random, markets, items, density, 1 + random.nextInt(20));
+            double visitCost = visitCosts[(int) (seed % visitCosts.length)];
+
+            OptimalMarketSelector optimal = new OptimalMarketSelector(10000, visitCost);
+            MarketAssignment assignment = optimal.select(snapshot);
+
+            assertEquals(0, optimal.getTimedOutCount(), "seed " + seed);
+            assertConsistent(snapshot, assignment, "seed " + seed);
+            assertEquals(bruteForceCost(snapshot, visitCost), cost(assignment, visitCost), EPSILON, "seed " + seed);
+        }
+    }
+
+    @Test
+    void buysCheaperBasketThanGreedy() {
+        // Greedy takes Market1 for having the most items and pays 30.0 for its coffee
+        QuoteSnapshot snapshot = QuoteSnapshot.builder(new ItemDictionary(),
+                        new String[]{"milk", "coffee", "bread"})
+                .beginMarket("Market1").offer("milk", 5.0).offer("coffee", 30.0).offer("bread", 4.5)
+                .beginMarket("Market2").offer("coffee", 25.0)
+                .build();
+
+        MarketAssignment greedy = new GreedyMarketSelector().select(snapshot);
+        MarketAssignment optimal = new OptimalMarketSelector(1000, 0.0).select(snapshot);
+
+        assertEquals(39.5, greedy.getItemsTotal(), EPSILON);
+        assertEquals(34.5, optimal.getItemsTotal(), EPSILON);
+        assertEquals(25.0, optimal.getItemPrices().get("coffee"), EPSILON);
+    }
+
+    @Test
+    void fallsBackToGreedyWhenBudgetRunsOut() {
+        QuoteSnapshot snapshot = LazyGreedyMarketSelectorTest.randomSnapshot(new Random(7), 300, 200, 0.3, 50);
+
+        OptimalMarketSelector optimal = new OptimalMarketSelector(0, 5.0);
+        MarketAssignment assignment = optimal.select(snapshot);
+
+        assertEquals(1, optimal.getTimedOutCount());
+        assertEquals(new LazyGreedyMarketSelector().select(snapshot), assignment);
+    }
+
+    /**
+     * Checks that every item is bought once, at the price its market offered, and that
+     * exactly the items no market offers are unavailable.
+     */
+    private static void assertConsistent(QuoteSnapshot snapshot, MarketAssignment assignment, String message) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int item = 0; item < snapshot.itemCount(); item++) {
+            positions.put(snapshot.item(item), item);
+        }
+        Map<String, Integer> markets = new HashMap<>();
+        for (int market = 0; market < snapshot.marketCount(); market++) {
+            markets.put(snapshot.market(market), market);
+        }
+
+        Set<String> bought = new LinkedHashSet<>();
+        for (MarketAssignment.Selection selection : assignment.getSelections()) {
+            int market = markets.get(selection.getMarket());
+            for (String item : selection.getItems()) {
+                assertTrue(bought.add(item), message);
+                assertTrue(snapshot.offers(market, positions.get(item)), message);
+                assertEquals(snapshot.price(market, positions.get(item)), assignment.getItemPrices().get(item), message);
+            }
+        }
+        for (int item = 0; item < snapshot.itemCount(); item++) {
+            boolean offered = false;
+            for (int market = 0; market < snapshot.marketCount(); market++) {
+                offered |= snapshot.offers(market, item);
+            }
+            assertEquals(offered, bought.contains(snapshot.item(item)), message);
+            assertEquals(!offered, assignment.getUnavailableItems().contains(snapshot.item(item)), message);
+        }
+    }
+
+    private static double cost(MarketAssignment assignment, double visitCost) {
+        return assignment.getItemsTotal() + visitCost * assignment.getSelections().size();
+    }
+
+    /**
+     * Cheapest cost of buying every offered item: over all subsets of markets that
+     * offer all of them, the visit costs plus the cheapest price of each item.
+     */
+    private static double bruteForceCost(QuoteSnapshot snapshot, double visitCost) {
+        double best = Double.MAX_VALUE;
+        for (int subset = 0; subset < 1 << snapshot.marketCount(); subset++) {
+            double cost = visitCost * Integer.bitCount(subset);
+            for (int item = 0; item < snapshot.itemCount() && cost < best; item++) {
+                boolean offered = false;
+                double cheapest = Double.MAX_VALUE;
+                for (int market = 0; market < snapshot.marketCount(); market++) {
+                    if (snapshot.offers(market, item)) {
+                        offered = true;
+                        if ((subset & 1 << market) != 0) {
+                            cheapest = Math.min(cheapest, snapshot.price(market, item));
+                        }
+                    }
+                }
+                if (offered) {
+                    cost += cheapest;
+                }
+            }
+            best = Math.min(best, cost);
+        }
+        return best;
+    }
+}
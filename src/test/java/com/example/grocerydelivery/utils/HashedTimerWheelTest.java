@@ -0,0 +1,114 @@
+package com.example.grocerydelivery.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Expiry, wrap-around, catch-up and cancelling of {@link HashedTimerWheel}.
+ */
+class HashedTimerWheelTest {
+
+    private static final long TICK = 10;
+    private static final long START = 1000;
+
+    private final List<String> expired = new ArrayList<>();
+
+    @Test
+    void timeoutExpiresBetweenItsDelayAndOneTickLater() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, START);
+        wheel.schedule("a", 25);
+        wheel.schedule("now", 0);
+
+        assertEquals(0, wheel.advance(START + TICK - 1, expired::add));
+        assertEquals(1, wheel.advance(START + TICK, expired::add));
+        assertEquals(Arrays.asList("now"), expired);
+
+        assertEquals(0, wheel.advance(START + 39, expired::add));
+        assertEquals(1, wheel.advance(START + 40, expired::add));
+        assertEquals(Arrays.asList("now", "a"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void timeoutLongerThanOneTurnWaitsForItsDeadline() {
+        // 8 slots of 10 ms: a 200 ms timeout passes its slot twice before it is due
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, START);
+        wheel.schedule("long", 200);
+        for (long now = START; now < START + 210; now += TICK) {
+            wheel.advance(now, expired::add);
+            assertTrue(expired.isEmpty(), "expired at " + (now - START));
+        }
+        wheel.advance(START + 210, expired::add);
+        assertEquals(Arrays.asList("long"), expired);
+    }
+
+    @Test
+    void longPauseExpiresEverythingDueInOneAdvance() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 16, START);
+        Set<String> scheduled = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            wheel.schedule("t" + i, i * 7);
+            scheduled.add("t" + i);
+        }
+        wheel.schedule("later", 100000);
+
+        assertEquals(500, wheel.advance(START + 50000, expired::add));
+        assertEquals(scheduled, new HashSet<>(expired));
+        assertEquals(1, wheel.size());
+
+        // New timeouts count from the time the wheel caught up to
+        expired.clear();
+        wheel.schedule("after", 30);
+        wheel.advance(START + 50030, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(START + 50040, expired::add);
+        assertEquals(Arrays.asList("after"), expired);
+    }
+
+    @Test
+    void advancingToThePastDoesNothing() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, START);
+        wheel.advance(START + 100, expired::add);
+        wheel.schedule("a", 0);
+        assertEquals(0, wheel.advance(START + 50, expired::add));
+        assertEquals(0, wheel.advance(START + 100, expired::add));
+        assertEquals(1, wheel.advance(START + 110, expired::add));
+    }
+
+    @Test
+    void cancelledTimeoutsDoNotExpire() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, START);
+        // Same deadline, so all three share one slot
+        HashedTimerWheel.Timeout<String> first = wheel.schedule("first", 50);
+        HashedTimerWheel.Timeout<String> middle = wheel.schedule("middle", 50);
+        HashedTimerWheel.Timeout<String> last = wheel.schedule("last", 50);
+        assertEquals(3, wheel.size());
+
+        assertTrue(middle.cancel());
+        assertFalse(middle.cancel());
+        assertEquals(2, wheel.size());
+        assertTrue(last.cancel());
+
+        wheel.advance(START + 100, expired::add);
+        assertEquals(Arrays.asList("first"), expired);
+        assertFalse(first.cancel());
+        assertEquals(0, wheel.size());
+        assertEquals("first", first.getItem());
+    }
+
+    @Test
+    void invalidSizesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new HashedTimerWheel<String>(0, 8, START));
+        assertThrows(IllegalArgumentException.class, () -> new HashedTimerWheel<String>(TICK, 0, START));
+    }
+}
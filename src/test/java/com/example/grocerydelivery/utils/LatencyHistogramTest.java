@@ -0,0 +1,66 @@
+package com.example.grocerydelivery.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Percentile bounds and decay of {@link LatencyHistogram}.
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    @Test
+    void smallValuesAreExactAndNegativeOnesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(7);
+
+        assertEquals(0, histogram.percentile(30));
+        assertEquals(3, histogram.percentile(60));
+        assertEquals(7, histogram.percentile(100));
+        assertEquals(7, histogram.getMax());
+    }
+
+    @Test
+    void percentilesOverEstimateByAtMostAnEighth() {
+        LatencyHistogram histogram = new LatencyHistogram(1000000);
+        for (long micros = 1; micros <= 100000; micros++) {
+            histogram.record(micros);
+        }
+
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9}) {
+            long exact = (long) Math.ceil(percentile / 100.0 * 100000);
+            long estimate = histogram.percentile(percentile);
+            assertTrue(estimate >= exact && estimate <= exact * 1.125,
+                    "p" + percentile + ": " + estimate + " for " + exact);
+        }
+        assertEquals(100000, histogram.percentile(100));
+    }
+
+    @Test
+    void oldValuesFadeOutAfterTheWindow() {
+        LatencyHistogram histogram = new LatencyHistogram(10);
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000);
+        }
+        assertEquals(5, histogram.getCount());
+
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100000);
+        }
+        // 2 old values are left against 5 recent ones
+        assertEquals(7, histogram.getCount());
+        assertEquals(100000, histogram.percentile(50));
+        assertTrue(histogram.percentile(25) < 1000 * 1.125);
+    }
+}